@@ -0,0 +1,28 @@
+package nexign.task.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubscribersBenchmark - генерация уникальных номеров абонентов (DatabaseInitializer.generatePhoneNumbers).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SubscribersBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int subscribersCount;
+
+    @Benchmark
+    public long[] generatePhoneNumbers() {
+        return DatabaseInitializer.generatePhoneNumbers(subscribersCount, subscribersCount);
+    }
+}
@@ -0,0 +1,114 @@
+package nexign.task.services.cdr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.utilities.SubscriberRegistry;
+import nexign.task.utilities.UtilFunctions;
+
+/**
+ * CDRGenerationBenchmark - генерация CDR записей месяца: полный generateMonthCDR (расписание звонков,
+ * запись файла и индекса, вставка в базу), отдельно расписание звонков и упорядочивание записей по времени.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CDRGenerationBenchmark {
+    private static final long MONTH_START = 1_704_067_200L;
+    private static final long MONTH_RANGE = 31L * 24 * 60 * 60 - 1;
+
+    @Param({"1000", "100000"})
+    public int callsCount;
+
+    @Param({"100", "10000"})
+    public int subscribersCount;
+
+    private Connection connection;
+    private SubscriberRegistry subscribers;
+    private GeneratorCDR generator;
+
+    /** записи месяца в случайном порядке для сортировки */
+    private List<RecordCDR> shuffledRecords;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:cdr_generation_benchmark;DB_CLOSE_DELAY=-1", "sa", "");
+        DatabaseInitializer.initializeSubscribers(connection, subscribersCount, subscribersCount);
+        subscribers = UtilFunctions.getSubscriberRegistry(connection);
+
+        generator = new GeneratorCDR(CDRInsertMode.BATCH, 1000);
+
+        shuffledRecords = new ArrayList<>(callsCount);
+        CallScheduler schedule = new CallScheduler(MONTH_START, MONTH_RANGE, callsCount, 3600,
+                subscribers.size(), new SplittableRandom(1));
+        while (schedule.hasNext()) {
+            String phoneNumber = subscribers.phoneNumber(schedule.next());
+            shuffledRecords.add(new RecordCDR("01", phoneNumber, schedule.getStartTime(), schedule.getEndTime()));
+        }
+        Collections.shuffle(shuffledRecords, new Random(1));
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCDRTable() {
+        DatabaseInitializer.createCDRTable(connection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public File generateMonthCDR() throws Exception {
+        return generator.generateMonthCDR(1, 2024, callsCount, 3600, subscribers, List.of("01", "02"),
+                new SplittableRandom(callsCount), connection);
+    }
+
+    @Benchmark
+    public void scheduleCalls(Blackhole blackhole) {
+        CallScheduler schedule = new CallScheduler(MONTH_START, MONTH_RANGE, callsCount, 3600,
+                subscribersCount, new SplittableRandom(callsCount));
+        while (schedule.hasNext()) {
+            blackhole.consume(schedule.next());
+            blackhole.consume(schedule.getStartTime());
+        }
+    }
+
+    @Benchmark
+    public List<RecordCDR> sortRecordList() {
+        List<RecordCDR> records = new ArrayList<>(shuffledRecords);
+        Collections.sort(records);
+        return records;
+    }
+
+    @Benchmark
+    public CDRBuffer sortRecordBuffer() {
+        CDRBuffer records = new CDRBuffer(shuffledRecords.size());
+        for (RecordCDR record : shuffledRecords) {
+            records.add(record);
+        }
+        records.sortByStartTime();
+        return records;
+    }
+}
@@ -0,0 +1,77 @@
+package nexign.task.services.cdr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.utilities.UtilFunctions;
+
+/**
+ * CDRInsertBenchmark - сохранение CDR записей месяца в таблицу CDR пакетами через JDBC (CDRBatchInserter).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CDRInsertBenchmark {
+
+    @Param({"1000", "100000"})
+    public int callsCount;
+
+    @Param({"100", "10000"})
+    public int subscribersCount;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private Connection connection;
+    private CDRBuffer records;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:cdr_insert_benchmark;DB_CLOSE_DELAY=-1", "sa", "");
+        DatabaseInitializer.initializeSubscribers(connection, subscribersCount, subscribersCount);
+        List<String> subscribers = UtilFunctions.getAllSubscribers(connection);
+
+        records = new CDRBuffer(callsCount);
+        CallScheduler schedule = new CallScheduler(1_704_067_200L, 31L * 24 * 60 * 60 - 1, callsCount, 3600,
+                subscribers.size(), new SplittableRandom(1));
+        while (schedule.hasNext()) {
+            long msisdn = Long.parseLong(subscribers.get(schedule.next()));
+            records.add(CDRBuffer.CALL_TYPE_OUTGOING, msisdn, schedule.getStartTime(), schedule.getEndTime());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCDRTable() {
+        DatabaseInitializer.createCDRTable(connection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long insertBatches() throws SQLException {
+        try (CDRBatchInserter inserter = new CDRBatchInserter(connection, batchSize)) {
+            inserter.accept(records);
+            inserter.flush();
+            return inserter.getInsertedCount();
+        }
+    }
+}
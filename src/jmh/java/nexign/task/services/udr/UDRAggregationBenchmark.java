@@ -0,0 +1,110 @@
+package nexign.task.services.udr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.services.cdr.CDRLineParser;
+import nexign.task.services.cdr.CallScheduler;
+import nexign.task.services.cdr.TextCDRWriter;
+
+/**
+ * UDRAggregationBenchmark - создание UDR отчетов по текстовому CDR файлу месяца:
+ * разбор строк с накоплением длительностей по абонентам и запись JSON отчетов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UDRAggregationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int callsCount;
+
+    @Param({"100", "10000"})
+    public int subscribersCount;
+
+    /** способ размещения отчетов, используется только бенчмарком записи */
+    @State(Scope.Benchmark)
+    public static class ReportLayoutState {
+        @Param({"per_subscriber", "ndjson"})
+        public String layout;
+
+        private UDRReportWriter reportWriter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            reportWriter = new UDRReportWriter(UDRReportLayout.fromString(layout, UDRReportLayout.PER_SUBSCRIBER));
+        }
+    }
+
+    private Path directory;
+    private File cdrFile;
+    private File reportDirectory;
+    private TreeMap<String, RecordUDR> udrMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("udr_benchmark");
+        cdrFile = directory.resolve("cdr_1.txt").toFile();
+        reportDirectory = directory.resolve("reports").toFile();
+        reportDirectory.mkdirs();
+
+        CDRBuffer records = new CDRBuffer(callsCount);
+        CallScheduler schedule = new CallScheduler(1_704_067_200L, 31L * 24 * 60 * 60 - 1, callsCount, 3600,
+                subscribersCount, new SplittableRandom(1));
+        while (schedule.hasNext()) {
+            long msisdn = 79_000_000_000L + schedule.next();
+            byte callType = (schedule.getStartTime() % 2 == 0) ? CDRBuffer.CALL_TYPE_OUTGOING : CDRBuffer.CALL_TYPE_INCOMING;
+            records.add(callType, msisdn, schedule.getStartTime(), schedule.getEndTime());
+        }
+        try (TextCDRWriter writer = new TextCDRWriter(cdrFile)) {
+            writer.accept(records);
+        }
+
+        udrMap = parseCDRFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public TreeMap<String, RecordUDR> parseCDRFile() throws IOException {
+        UDRAccumulator accumulator = new UDRAccumulator(-1);
+        try (FileChannel channel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+            new CDRLineParser().parse(channel, 0, Long.MAX_VALUE, accumulator);
+        }
+        TreeMap<String, RecordUDR> result = new TreeMap<>();
+        accumulator.mergeInto(result);
+        return result;
+    }
+
+    @Benchmark
+    public long writeReports(ReportLayoutState state) {
+        state.reportWriter.writeMonth(reportDirectory, 1, udrMap.values());
+        return state.reportWriter.getFilesCount();
+    }
+}
@@ -1,13 +1,30 @@
 package nexign.task;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
 
 import nexign.task.database.DatabaseConnector;
 import nexign.task.database.DatabaseInitializer;
 
+import nexign.task.metrics.Metrics;
+
+import nexign.task.services.cdr.CDRFileFormat;
 import nexign.task.services.cdr.GeneratorCDR;
+import nexign.task.services.udr.CDRDirectoryWatcher;
 import nexign.task.services.udr.GeneratorUDR;
+import nexign.task.services.udr.RecordUDR;
+import nexign.task.services.udr.SQLUDRAggregator;
+import nexign.task.services.udr.UDREngine;
+import nexign.task.services.udr.UDRQueryServer;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.services.udr.UDRReportWriter;
 
+import nexign.task.utilities.ApplicationProperties;
+import nexign.task.utilities.SubscriberRegistry;
 import nexign.task.utilities.UtilFunctions;
 
 
@@ -17,32 +34,79 @@ public class Main {
             if (connection != null) {
                 // если подключение установлено успешно, выполняем генерацию CDR и UDR
 
-                int subscribersMinCount = 10;
+                int subscribersMinCount = ApplicationProperties.getInt("subscribers.minCount", 10);
+                int subscribersMaxCount = ApplicationProperties.getInt("subscribers.maxCount", subscribersMinCount * 10);
 
                 // если в базе нет таблицы Subscribers, генирируем номера телефонов и добавляем их в базу
-                DatabaseInitializer.initializeSubscribers(connection, subscribersMinCount);
-
-                // обновляем таблицу с CDR в базе, для того чтобы там гарантированно были
-                // только новые сгенерированные CDR-записи
-                DatabaseInitializer.createCDRTable(connection);
+                DatabaseInitializer.initializeSubscribers(connection, subscribersMinCount, subscribersMaxCount);
 
                 final int year = 2024;
                 String reportsDirectory = "reports";
 
+                // номера абонентов загружаются из базы один раз и используются и генерацией CDR, и отчетами
+                SubscriberRegistry subscribers = UtilFunctions.getSubscriberRegistry(connection);
+
+                if (ApplicationProperties.getString("app.mode", "batch").equalsIgnoreCase("watch")) {
+                    // непрерывный режим: отчеты обновляются по мере появления записей в CDR файлах
+                    watchCDRDirectory(subscribers, reportsDirectory);
+                    return;
+                }
+
                 GeneratorCDR generatorCDR = new GeneratorCDR();
-                // сразу передаем резуьтат генерации CDR файлов в конструктор для объекта GeneratorUDR
+                generatorCDR.setSubscriberRegistry(subscribers);
+                List<File> cdrFiles;
+
+                if (ApplicationProperties.getBoolean("cdr.generation.enabled", true)) {
+                    // создаем таблицы CDR месяцев, если их еще нет; каждый генерируемый месяц
+                    // очищает только свою таблицу, поэтому в базе остаются только новые CDR-записи
+                    DatabaseInitializer.createCDRTables(connection);
+
+                    // при одинаковом seed сгенерированные файлы совпадают при любом количестве потоков
+                    long seed = ApplicationProperties.getLong("cdr.generation.seed", new Random().nextLong());
+                    int parallelism = ApplicationProperties.getInt("cdr.generation.parallelism", 1);
+
+                    cdrFiles = parallelism > 1
+                            ? generatorCDR.generateCDRs(DatabaseConnector.getPool(), year, seed, parallelism)
+                            : generatorCDR.generateCDRs(connection, year, seed);
+                    generatorCDR.printInsertStatistics();
+                    generatorCDR.printCompressionStatistics();
+                } else {
+                    // без генерации используем уже существующие (возможно, дописанные) CDR файлы и таблицу CDR
+                    cdrFiles = generatorCDR.findCDRFiles();
+                }
+
+                // передаем результат генерации CDR файлов в конструктор для объекта GeneratorUDR
                 GeneratorUDR generatorUDR = new GeneratorUDR(
-                        generatorCDR.generateCDRs(connection, year),
-                        UtilFunctions.getAllSubscribers(connection),
+                        cdrFiles,
+                        subscribers,
                         reportsDirectory);
 
+                // отчеты строятся по CDR файлам или запросами к таблице CDR (udr.engine)
+                UDREngine udrEngine = UDREngine.fromString(ApplicationProperties.getString("udr.engine", "file"), UDREngine.FILE);
+                if (udrEngine == UDREngine.SQL) {
+                    generatorUDR.setSQLAggregator(new SQLUDRAggregator(connection, year));
+                }
+
+                if (ApplicationProperties.getString("app.mode", "batch").equalsIgnoreCase("server")) {
+                    // агрегаты вычисляются один раз, запросы отчетов обслуживаются из памяти
+                    runQueryServer(generatorUDR);
+                    return;
+                }
+
                 // проверяем количество переданных аргументов командной строки и вызываем соответствующие функции
                 if (args.length > 2) {
                     System.out.println("Ожидаемые аргументы: [msisdn] [month]");
                 } else {
                     switch (args.length) {
                         case 0: //  по умолчанию (без аргументов) вызывается generatorUDR.generateReport()
+                            if (ApplicationProperties.getBoolean("udr.incremental", false)) {
+                                // пересчитываются только новые записи и затронутые отчеты
+                                generatorUDR.updateReport(connection);
+                                break;
+                            }
                             generatorUDR.generateReport();
+                            // время агрегации позволяет сравнить разное количество потоков (udr.parallelism)
+                            System.out.printf("Агрегация CDR файлов: %.1f мс%n", generatorUDR.getLastAggregationMillis());
                             break;
                         case 1:
                             if (UtilFunctions.isValidMobilePhoneNumber(args[0])) {
@@ -59,10 +123,102 @@ public class Main {
                             }
                             break;
                     }
+                    generatorUDR.printReportStatistics();
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            writeMetrics();
+            // соединение уже вернулось в пул, закрываем сам пул
+            DatabaseConnector.shutdown();
+        }
+    }
+
+    /**
+     * Сохраняет снимок метрик в файл metrics.output (JSON для .json, иначе формат Prometheus), если он задан.
+     */
+    private static void writeMetrics() {
+        String metricsOutput = ApplicationProperties.getString("metrics.output", "");
+        if (metricsOutput.isEmpty()) {
+            return;
+        }
+        try {
+            Metrics.writeTo(new File(metricsOutput));
+            System.out.println("Метрики сохранены в " + metricsOutput);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
+
+    /**
+     * Вычисляет агрегаты всех абонентов и отвечает на HTTP запросы отчетов до завершения процесса.
+     *
+     * @param generatorUDR генератор UDR с CDR файлами и списком абонентов
+     */
+    private static void runQueryServer(GeneratorUDR generatorUDR) throws IOException {
+        List<TreeMap<String, RecordUDR>> udrMaps = generatorUDR.aggregateReport();
+        System.out.printf("Агрегация CDR файлов: %.1f мс%n", generatorUDR.getLastAggregationMillis());
+
+        UDRQueryServer server = new UDRQueryServer(udrMaps,
+                ApplicationProperties.getInt("server.port", 8080),
+                ApplicationProperties.getInt("server.threads", 16));
+
+        // по Ctrl+C прекращаем прием запросов и выводим время их обработки
+        Thread serverThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            serverThread.interrupt();
+            try {
+                serverThread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        server.start();
+        System.out.println("Сервер отчетов запущен на порту " + server.getPort() +
+                ": /report?msisdn=N[&month=M], /stats, /metrics; для остановки нажмите Ctrl+C");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            System.out.println("Сервер остановлен, время обработки запросов (нс): " + server.getLatencySnapshot());
+        }
+    }
+
+    /**
+     * Отслеживает директорию CDR файлов и обновляет отчеты затронутых абонентов до завершения процесса.
+     *
+     * @param subscribers реестр абонентов
+     * @param reportsDirectory директория отчетов
+     */
+    private static void watchCDRDirectory(SubscriberRegistry subscribers, String reportsDirectory) throws IOException {
+        CDRFileFormat format = CDRFileFormat.fromString(ApplicationProperties.getString("cdr.file.format", "text"),
+                CDRFileFormat.TEXT);
+        UDRReportLayout layout = UDRReportLayout.fromString(
+                ApplicationProperties.getString("udr.report.layout", "per_subscriber"), UDRReportLayout.PER_SUBSCRIBER);
+
+        CDRDirectoryWatcher watcher = new CDRDirectoryWatcher(
+                new File("cdr_files"),
+                format,
+                subscribers,
+                new File(reportsDirectory),
+                new UDRReportWriter(layout),
+                ApplicationProperties.getLong("watch.flushIntervalMillis", 1000));
+
+        // по Ctrl+C записываем накопленные изменения и дожидаемся завершения обработки
+        Thread watcherThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watcher.stop();
+            try {
+                watcherThread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        System.out.println("Отслеживание CDR файлов в директории cdr_files, для остановки нажмите Ctrl+C");
+        watcher.run();
+        System.out.println("Отслеживание завершено: " + watcher.getStatistics());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package nexign.task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.services.cdr.GeneratorCDR;
+import nexign.task.services.udr.GeneratorUDR;
+import nexign.task.utilities.ApplicationProperties;
+import nexign.task.utilities.SubscriberRegistry;
+import nexign.task.utilities.UtilFunctions;
+
+/**
+ * ScaleBenchmark - замер всего конвейера Main (абоненты, генерация CDR со вставкой в базу,
+ * UDR отчеты и вывод в консоль) при разном количестве абонентов.
+ * Каждый масштаб выполняется в отдельной временной директории с собственной базой H2,
+ * CDR файлами и отчетами, которые удаляются после замера. Для каждого масштаба записываются
+ * время этапов, пиковое использование кучи и памяти процесса (RSS), время сборки мусора
+ * и количество записанных файлов; результаты сохраняются в JSON файл для сравнения между коммитами.
+ * <p>
+ * Параметры (application.properties или -D): benchmark.scales, benchmark.callsPerSubscriber, benchmark.output.
+ * Все масштабы выполняются в одном процессе по возрастанию, поэтому JIT уже прогрет к большим масштабам.
+ */
+public class ScaleBenchmark {
+    private static final int YEAR = 2024;
+    private static final long SEED = 42;
+
+    /**
+     * Результат замера одного масштаба.
+     *
+     * @param subscribers количество абонентов
+     * @param callsPerMonth количество звонков в месяце
+     * @param cdrRecords количество CDR записей, сохраненных в базу
+     * @param stageMillis время этапов (в миллисекундах)
+     * @param peakHeapBytes сумма пиковых размеров занятой памяти пулов кучи
+     * @param peakRssBytes пиковый размер памяти процесса (VmHWM, -1 - недоступно)
+     * @param gcMillis время сборки мусора
+     * @param gcCount количество сборок мусора
+     * @param cdrFiles количество CDR файлов (вместе с индексами)
+     * @param cdrBytes объем CDR файлов
+     * @param reportFiles количество файлов отчетов
+     * @param reportBytes объем файлов отчетов
+     * @param consoleBytes объем вывода отчетов в консоль
+     */
+    public record ScaleResult(int subscribers, int callsPerMonth, long cdrRecords, Map<String, Double> stageMillis,
+                              long peakHeapBytes, long peakRssBytes, long gcMillis, long gcCount,
+                              long cdrFiles, long cdrBytes, long reportFiles, long reportBytes, long consoleBytes) {}
+
+    /**
+     * Результаты всех масштабов с описанием окружения.
+     */
+    public record BenchmarkResults(String commit, String startedAt, String javaVersion, int processors,
+                                   long maxHeapBytes, List<ScaleResult> scales) {}
+
+    public static void main(String[] args) throws Exception {
+        String[] scales = ApplicationProperties.getString("benchmark.scales", "10,100,1000,10000").split(",");
+        int callsPerSubscriber = ApplicationProperties.getInt("benchmark.callsPerSubscriber", 10);
+        File output = new File(ApplicationProperties.getString("benchmark.output", "benchmark_results.json"));
+
+        String startedAt = Instant.now().toString();
+        List<ScaleResult> results = new ArrayList<>();
+        for (String scale : scales) {
+            int subscribers = Integer.parseInt(scale.trim());
+            ScaleResult result = runScale(subscribers, Math.max(1, subscribers * callsPerSubscriber));
+            results.add(result);
+            System.out.println("Абонентов: " + subscribers + ", этапы (мс): " + result.stageMillis() +
+                    ", пик кучи: " + result.peakHeapBytes() / (1024 * 1024) + " МБ, пик RSS: " +
+                    result.peakRssBytes() / (1024 * 1024) + " МБ, сборка мусора: " + result.gcMillis() + " мс");
+        }
+
+        BenchmarkResults benchmarkResults = new BenchmarkResults(readCommit(), startedAt,
+                System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().maxMemory(), results);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, benchmarkResults);
+        System.out.println("Результаты записаны в " + output.getAbsolutePath());
+    }
+
+    /**
+     * Выполняет конвейер для заданного количества абонентов в отдельной временной директории.
+     */
+    private static ScaleResult runScale(int subscribersCount, int callsPerMonth) throws IOException, SQLException {
+        Path workDirectory = Files.createTempDirectory("nexign_scale_" + subscribersCount + "_");
+        File cdrDirectory = workDirectory.resolve("cdr_files").toFile();
+        File reportDirectory = workDirectory.resolve("reports").toFile();
+
+        System.gc();
+        resetPeakMemory();
+        long gcMillisBefore = gcMillis();
+        long gcCountBefore = gcCount();
+        Map<String, Double> stageMillis = new LinkedHashMap<>();
+
+        String url = "jdbc:h2:" + workDirectory.resolve("benchmark").toAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            long start = System.nanoTime();
+            DatabaseInitializer.initializeSubscribers(connection, subscribersCount, subscribersCount);
+            SubscriberRegistry subscribers = UtilFunctions.getSubscriberRegistry(connection);
+            stageMillis.put("subscribers", millisSince(start));
+
+            GeneratorCDR generatorCDR = new GeneratorCDR();
+            generatorCDR.setCDRDirectory(cdrDirectory);
+            generatorCDR.setCallsPerMonth(callsPerMonth);
+            generatorCDR.setSubscriberRegistry(subscribers);
+            start = System.nanoTime();
+            DatabaseInitializer.createCDRTables(connection);
+            List<File> cdrFiles = generatorCDR.generateCDRs(connection, YEAR, SEED);
+            stageMillis.put("cdrGeneration", millisSince(start));
+            stageMillis.put("databaseInsert", generatorCDR.getInsertElapsedNanos() / 1_000_000.0);
+
+            // отчеты в консоль выводятся в поток, который только считает байты
+            GeneratorUDR generatorUDR = new GeneratorUDR(cdrFiles, subscribers, reportDirectory.getPath());
+            CountingOutputStream console = new CountingOutputStream();
+            PrintStream standardOutput = System.out;
+            start = System.nanoTime();
+            System.setOut(new PrintStream(console, false));
+            try {
+                generatorUDR.generateReport();
+            } finally {
+                System.out.flush();
+                System.setOut(standardOutput);
+            }
+            stageMillis.put("udrReports", millisSince(start));
+            stageMillis.put("udrAggregation", generatorUDR.getLastAggregationMillis());
+
+            long[] cdrStatistics = directoryStatistics(cdrDirectory);
+            long[] reportStatistics = directoryStatistics(reportDirectory);
+
+            return new ScaleResult(subscribersCount, callsPerMonth, generatorCDR.getInsertedRecordsCount(), stageMillis,
+                    peakHeapBytes(), peakRssBytes(), gcMillis() - gcMillisBefore, gcCount() - gcCountBefore,
+                    cdrStatistics[0], cdrStatistics[1], reportStatistics[0], reportStatistics[1], console.count);
+        } finally {
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    /**
+     * Сбрасывает пиковые значения пулов кучи и, если это поддерживается (Linux), пиковый RSS процесса.
+     */
+    private static void resetPeakMemory() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // пиковый RSS будет считаться с начала процесса
+        }
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * @return пиковый RSS процесса из /proc/self/status (VmHWM) или -1, если он недоступен
+     */
+    private static long peakRssBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // не Linux
+        }
+        return -1;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * @return количество файлов в директории и их суммарный размер
+     */
+    private static long[] directoryStatistics(File directory) {
+        long[] statistics = new long[2];
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    statistics[0]++;
+                    statistics[1] += file.length();
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * @return хеш текущего коммита из .git рабочей директории или "unknown"
+     */
+    private static String readCommit() {
+        try {
+            String head = Files.readString(Path.of(".git", "HEAD")).trim();
+            if (head.startsWith("ref: ")) {
+                return Files.readString(Path.of(".git", head.substring(5))).trim();
+            }
+            return head;
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    /** поток, который только считает записанные байты */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
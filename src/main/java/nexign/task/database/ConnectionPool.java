@@ -0,0 +1,293 @@
+package nexign.task.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConnectionPool - потокобезопасный пул соединений с базой данных.
+ * Выдает каждому потоку собственное соединение, закрытие выданного соединения возвращает его в пул.
+ * Соединения, простаивавшие дольше idleTimeout, и соединения, не прошедшие проверку при выдаче, закрываются.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    /** разрешения на выдачу соединений, их количество ограничивает размер пула */
+    private final Semaphore permits;
+    /** свободные соединения, последнее возвращенное выдается первым */
+    private final ConcurrentLinkedDeque<IdleConnection> idleConnections = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger peakActiveCount = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    private record IdleConnection(Connection connection, long releasedAtMillis) {}
+
+    /**
+     * Статистика работы пула.
+     *
+     * @param maxSize максимальное количество соединений
+     * @param activeCount количество выданных в данный момент соединений
+     * @param idleCount количество свободных соединений
+     * @param peakActiveCount максимальное количество одновременно выданных соединений
+     * @param borrowCount общее количество выдач соединений
+     * @param totalWaitNanos суммарное время ожидания соединений (в наносекундах)
+     * @param maxWaitNanos максимальное время ожидания соединения (в наносекундах)
+     * @param createdCount количество созданных физических соединений
+     * @param evictedCount количество соединений, закрытых из-за простоя или неудачной проверки
+     */
+    public record Statistics(int maxSize, int activeCount, int idleCount, int peakActiveCount,
+                             long borrowCount, long totalWaitNanos, long maxWaitNanos,
+                             long createdCount, long evictedCount) {
+
+        /**
+         * @return доля выданных соединений от максимального размера пула (от 0 до 1)
+         */
+        public double utilization() {
+            return (double) activeCount / maxSize;
+        }
+
+        /**
+         * @return среднее время ожидания соединения (в миллисекундах)
+         */
+        public double averageWaitMillis() {
+            return borrowCount == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrowCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("выдано %d/%d (пик %d), свободно %d, выдач %d, " +
+                            "ожидание: среднее %.3f мс, макс. %.3f мс, создано %d, закрыто по простою/проверке %d",
+                    activeCount, maxSize, peakActiveCount, idleCount, borrowCount,
+                    averageWaitMillis(), maxWaitNanos / 1_000_000.0, createdCount, evictedCount);
+        }
+    }
+
+    /**
+     * @param url адрес базы данных
+     * @param username имя пользователя
+     * @param password пароль
+     * @param maxSize максимальное количество одновременно выданных соединений
+     * @param idleTimeoutMillis время простоя, после которого свободное соединение закрывается
+     * @param borrowTimeoutMillis максимальное время ожидания свободного соединения
+     * @param validationTimeoutSeconds время на проверку соединения при выдаче
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, int validationTimeoutSeconds) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер пула должен быть положительным");
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Выдает соединение из пула, при необходимости ожидая освобождения одного из соединений.
+     * Выданное соединение нужно закрыть, после этого оно возвращается в пул.
+     *
+     * @return соединение с базой данных
+     *
+     * @throws SQLException если пул закрыт, время ожидания истекло или не удалось установить соединение
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Истекло время ожидания свободного соединения (" + borrowTimeoutMillis + " мс)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения прервано", e);
+        }
+        long waitNanos = System.nanoTime() - waitStart;
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        borrowCount.increment();
+
+        try {
+            Connection physicalConnection = takeValidIdleConnection();
+            if (physicalConnection == null) {
+                physicalConnection = DriverManager.getConnection(url, username, password);
+                createdCount.increment();
+            }
+
+            int active = activeCount.incrementAndGet();
+            peakActiveCount.accumulateAndGet(active, Math::max);
+
+            return wrap(physicalConnection);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Достает из пула свободное соединение, закрывая простаивавшие слишком долго и не прошедшие проверку.
+     *
+     * @return рабочее соединение или null, если свободных соединений нет
+     */
+    private Connection takeValidIdleConnection() {
+        IdleConnection idle;
+        while ((idle = idleConnections.pollFirst()) != null) {
+            boolean expired = System.currentTimeMillis() - idle.releasedAtMillis() > idleTimeoutMillis;
+            if (!expired && isValid(idle.connection())) {
+                return idle.connection();
+            }
+            evictedCount.increment();
+            closeQuietly(idle.connection());
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает соединение в пул после закрытия выданной обертки.
+     * Незафиксированная транзакция откатывается, режим auto-commit восстанавливается.
+     *
+     * @param physicalConnection физическое соединение
+     */
+    private void release(Connection physicalConnection) {
+        activeCount.decrementAndGet();
+        try {
+            if (closed || physicalConnection.isClosed()) {
+                closeQuietly(physicalConnection);
+                return;
+            }
+            if (!physicalConnection.getAutoCommit()) {
+                physicalConnection.rollback();
+                physicalConnection.setAutoCommit(true);
+            }
+            idleConnections.offerFirst(new IdleConnection(physicalConnection, System.currentTimeMillis()));
+
+            // пул мог быть закрыт, пока соединение возвращалось
+            if (closed) {
+                closeIdleConnections();
+            }
+        } catch (SQLException e) {
+            evictedCount.increment();
+            closeQuietly(physicalConnection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Создает обертку над физическим соединением, которая при закрытии возвращает соединение в пул.
+     */
+    private Connection wrap(Connection physicalConnection) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released;
+
+            @Override
+            public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!released) {
+                            released = true;
+                            release(physicalConnection);
+                        }
+                        return null;
+                    case "isClosed":
+                        return released || physicalConnection.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "PooledConnection[" + physicalConnection + "]";
+                    default:
+                        if (released) {
+                            throw new SQLException("Соединение уже возвращено в пул");
+                        }
+                        try {
+                            return method.invoke(physicalConnection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+    }
+
+    /**
+     * @return текущая статистика работы пула
+     */
+    public Statistics getStatistics() {
+        return new Statistics(maxSize, activeCount.get(), idleConnections.size(), peakActiveCount.get(),
+                borrowCount.sum(), totalWaitNanos.sum(), maxWaitNanos.get(),
+                createdCount.sum(), evictedCount.sum());
+    }
+
+    /**
+     * @return максимальное количество одновременно выданных соединений
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Закрывает пул: свободные соединения закрываются сразу, выданные - при возврате.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdleConnections();
+    }
+
+    private void closeIdleConnections() {
+        IdleConnection idle;
+        while ((idle = idleConnections.pollFirst()) != null) {
+            closeQuietly(idle.connection());
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
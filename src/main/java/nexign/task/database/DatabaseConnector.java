@@ -3,42 +3,70 @@ package nexign.task.database;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
 /**
  * Класс для подключения к базе данных, загружает параметры подключения из конфигурационного файла.
+ * Соединения выдаются из общего пула, поэтому разные потоки могут одновременно работать с базой
+ * через собственные соединения.
  */
 public class DatabaseConnector {
-    private static Connection connection;
+    private static ConnectionPool pool;
 
     /**
-     * Получает соединение с базой данных, используя параметры, указанные в файле database.properties
+     * Получает соединение с базой данных из пула, настроенного по файлу database.properties.
+     * Закрытие полученного соединения возвращает его в пул.
      *
      * @return объект Connection – соединение с базой данных
      *
      * @throws RuntimeException в случае ошибки ввода-вывода или при неудачной попытке установить соединение с базой данных
      */
     public static Connection getConnection() {
-        if (connection == null) {
-            try {
-                Properties properties = new Properties();
-                InputStream inputStream = DatabaseConnector.class.getClassLoader().getResourceAsStream("database.properties");
-                properties.load(inputStream);
-
-                String url = properties.getProperty("database.url");
-                String username = properties.getProperty("database.username");
-                String password = properties.getProperty("database.password");
-
-                connection = DriverManager.getConnection(url, username, password);
+        try {
+            return getPool().getConnection();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Не удалось установить соединение с базой данных.");
+        }
+    }
 
-                inputStream.close();
-            } catch (IOException | SQLException e) {
+    /**
+     * Возвращает общий пул соединений, создавая его при первом обращении.
+     *
+     * @return пул соединений
+     *
+     * @throws RuntimeException в случае ошибки чтения файла database.properties
+     */
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = DatabaseConnector.class.getClassLoader().getResourceAsStream("database.properties")) {
+                properties.load(inputStream);
+            } catch (IOException | NullPointerException e) {
                 e.printStackTrace();
-                throw new RuntimeException("Не удалось установить соединение с базой данных.");
+                throw new RuntimeException("Не удалось прочитать параметры подключения к базе данных.");
             }
+
+            pool = new ConnectionPool(
+                    properties.getProperty("database.url"),
+                    properties.getProperty("database.username"),
+                    properties.getProperty("database.password"),
+                    Integer.parseInt(properties.getProperty("database.pool.maxSize", "8")),
+                    Long.parseLong(properties.getProperty("database.pool.idleTimeoutMillis", "60000")),
+                    Long.parseLong(properties.getProperty("database.pool.borrowTimeoutMillis", "30000")),
+                    Integer.parseInt(properties.getProperty("database.pool.validationTimeoutSeconds", "2")));
+        }
+        return pool;
+    }
+
+    /**
+     * Закрывает общий пул соединений.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
-        return connection;
     }
 }
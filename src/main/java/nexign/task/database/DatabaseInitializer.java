@@ -1,9 +1,9 @@
 package nexign.task.database;
 
 import java.sql.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.SplittableRandom;
 
+import nexign.task.utilities.MsisdnBitmap;
 import nexign.task.utilities.UtilFunctions;
 
 /**
@@ -11,6 +11,9 @@ import nexign.task.utilities.UtilFunctions;
  */
 public class DatabaseInitializer {
 
+    private static final int SUBSCRIBERS_INSERT_BATCH_SIZE = 10_000;
+    private static final int MONTHS_IN_YEAR = 12;
+
     /**
      * Инициализирует абонентов в базе данных, если таблица абонентов не существует.
      * Генерирует и вставляет номера телефонов абонентов в базу данных.
@@ -19,11 +22,22 @@ public class DatabaseInitializer {
      * @param subscribersMinCount минимальное количество абонентов для инициализации
      */
     public static void initializeSubscribers(Connection connection, int subscribersMinCount) {
+        initializeSubscribers(connection, subscribersMinCount, subscribersMinCount * 10);
+    }
+
+    /**
+     * Инициализирует абонентов в базе данных, если таблица абонентов не существует.
+     * Количество абонентов выбирается случайно в заданных пределах (при равных пределах - ровно столько).
+     *
+     * @param connection соединение с базой данных
+     * @param subscribersMinCount минимальное количество абонентов
+     * @param subscribersMaxCount максимальное количество абонентов
+     */
+    public static void initializeSubscribers(Connection connection, int subscribersMinCount, int subscribersMaxCount) {
         if (! ifSubscribersTableExists(connection)) {
             createSubscribersTable(connection);
-            int subscribersMaxCount = subscribersMinCount * 10;
 
-            Set<String> phoneNumbers = generatePhoneNumbers(subscribersMinCount, subscribersMaxCount);
+            long[] phoneNumbers = generatePhoneNumbers(subscribersMinCount, subscribersMaxCount);
             insertSubscribers(connection, phoneNumbers);
         }
     }
@@ -66,44 +80,65 @@ public class DatabaseInitializer {
     }
 
     /**
-     * Генерирует набор номеров телефонов в заданном диапазоне.
+     * Генерирует набор уникальных номеров телефонов в заданном диапазоне количества.
+     * Номера генерируются как числа, уникальность проверяется по битовой карте номеров.
      *
      * @param minCount минимальное количество номеров телефонов для генерации
      * @param maxCount максимальное количество номеров телефонов для генерации
      *
-     * @return множество сгенерированных номеров телефонов
+     * @return сгенерированные номера телефонов в порядке возрастания
      */
-    private static Set<String> generatePhoneNumbers(int minCount, int maxCount) {
-        // выбран set, чтобы гарантированно не было дублирующихся номеров
-        Set<String> phoneNumbers = new HashSet<>();
+    static long[] generatePhoneNumbers(int minCount, int maxCount) {
+        // битовая карта, чтобы гарантированно не было дублирующихся номеров
+        MsisdnBitmap phoneNumbers = new MsisdnBitmap();
         try {
-            int count = UtilFunctions.getIntegerInRange(minCount, maxCount);
+            int count = (minCount == maxCount) ? minCount : UtilFunctions.getIntegerInRange(minCount, maxCount);
+            SplittableRandom random = new SplittableRandom();
 
             while (phoneNumbers.size() < count) {
-                String phoneNumber = "79" + UtilFunctions.generateRandomDigits(9);
-                phoneNumbers.add(phoneNumber);
+                phoneNumbers.add(UtilFunctions.generateMsisdn(random));
             }
         } catch (IllegalArgumentException e) {
             e.printStackTrace();
         }
 
-        return phoneNumbers;
+        return phoneNumbers.toSortedArray();
     }
 
     /**
-     * Вставляет номера телефонов абонентов в таблицу абонентов.
+     * Вставляет номера телефонов абонентов в таблицу абонентов пакетами,
+     * фиксируя транзакцию после каждого пакета.
      *
      * @param connection соединение с базой данных
-     * @param phoneNumbers набор номеров телефонов для вставки
+     * @param phoneNumbers номера телефонов для вставки
      */
-    private static void insertSubscribers(Connection connection, Set<String> phoneNumbers) {
+    private static void insertSubscribers(Connection connection, long[] phoneNumbers) {
         try {
+            boolean initialAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
             String sql = "insert into Subscribers (msisdn) values (?)";
             try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                for (String phoneNumber : phoneNumbers) {
-                    statement.setString(1, phoneNumber);
-                    statement.executeUpdate();
+                int pendingCount = 0;
+                for (long phoneNumber : phoneNumbers) {
+                    statement.setString(1, Long.toString(phoneNumber));
+                    statement.addBatch();
+
+                    if (++pendingCount == SUBSCRIBERS_INSERT_BATCH_SIZE) {
+                        statement.executeBatch();
+                        connection.commit();
+                        pendingCount = 0;
+                    }
+                }
+                if (pendingCount > 0) {
+                    statement.executeBatch();
+                    connection.commit();
                 }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(initialAutoCommit);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -111,28 +146,152 @@ public class DatabaseInitializer {
     }
 
     /**
-     * Создаёт таблицу для CDR записей (записей о деталях вызова) в базе данных.
+     * Создаёт таблицы для CDR записей (записей о деталях вызова), если их еще нет: по таблице CDR_01..CDR_12
+     * на каждый месяц начала звонка со своим первичным ключом, и представление CDR, объединяющее все месяцы.
+     * Существующие записи не удаляются, месяц очищается перед повторной генерацией (truncateCDRMonth).
+     * Таблица CDR из прежних версий (одна таблица на все месяцы) удаляется.
      *
      * @param connection соединение с базой данных
      */
-    public static void createCDRTable(Connection connection) {
+    public static void createCDRTables(Connection connection) {
         try {
-            String dropSql = "drop table if exists CDR";
-            try (PreparedStatement dropStatement = connection.prepareStatement(dropSql)) {
-                dropStatement.executeUpdate();
+            if (isCDRBaseTable(connection)) {
+                try (PreparedStatement dropStatement = connection.prepareStatement("drop table CDR")) {
+                    dropStatement.executeUpdate();
+                }
+            }
+
+            StringBuilder viewSql = new StringBuilder("create or replace view CDR as ");
+            for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+                String table = cdrTableName(month);
+                String createSql = "create table if not exists " + table + " (" +
+                        "call_type VARCHAR(2), " +
+                        "msisdn VARCHAR(11), " +
+                        "start_time_unix BIGINT, " +
+                        "end_time_unix BIGINT, " +
+                        "PRIMARY KEY (msisdn, start_time_unix), " +
+                        "FOREIGN KEY (msisdn) REFERENCES Subscribers (msisdn)" +
+                        ")";
+                try (PreparedStatement createStatement = connection.prepareStatement(createSql)) {
+                    createStatement.executeUpdate();
+                }
+
+                if (month > 1) {
+                    viewSql.append(" union all ");
+                }
+                viewSql.append("select call_type, msisdn, start_time_unix, end_time_unix from ").append(table);
             }
 
-            String createSql = "create table CDR (" +
-                    "call_type VARCHAR(2), " +
-                    "msisdn VARCHAR(11), " +
-                    "start_time_unix BIGINT, " +
-                    "end_time_unix BIGINT, " +
-                    "PRIMARY KEY (msisdn, start_time_unix), " +
-                    "FOREIGN KEY (msisdn) REFERENCES Subscribers (msisdn)" +
-                    ")";
-
-            try (PreparedStatement createStatement = connection.prepareStatement(createSql)) {
-                createStatement.executeUpdate();
+            try (PreparedStatement viewStatement = connection.prepareStatement(viewSql.toString())) {
+                viewStatement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Создаёт таблицы для CDR записей и очищает все месяцы, чтобы в них были только новые записи.
+     *
+     * @param connection соединение с базой данных
+     */
+    public static void createCDRTable(Connection connection) {
+        createCDRTables(connection);
+        for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+            truncateCDRMonth(connection, month);
+        }
+    }
+
+    /**
+     * Удаляет все CDR записи одного месяца. Затрагивается только таблица месяца,
+     * поэтому время не зависит от количества записей в остальных месяцах.
+     *
+     * @param connection соединение с базой данных
+     * @param month месяц (1-12)
+     */
+    public static void truncateCDRMonth(Connection connection, int month) {
+        try (PreparedStatement statement = connection.prepareStatement("truncate table " + cdrTableName(month))) {
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param month месяц (1-12)
+     *
+     * @return имя таблицы CDR записей месяца (например, CDR_03)
+     */
+    public static String cdrTableName(int month) {
+        if (month < 1 || month > MONTHS_IN_YEAR) {
+            throw new IllegalArgumentException("Недопустимый номер месяца: " + month);
+        }
+        return (month < 10 ? "CDR_0" : "CDR_") + month;
+    }
+
+    /**
+     * Проверяет, является ли CDR таблицей (прежний способ хранения), а не представлением.
+     */
+    private static boolean isCDRBaseTable(Connection connection) throws SQLException {
+        try (ResultSet resultSet = connection.getMetaData().getTables(null, null, "CDR", null)) {
+            while (resultSet.next()) {
+                if (!"VIEW".equalsIgnoreCase(resultSet.getString("TABLE_TYPE"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Создает таблицы для инкрементального построения отчетов, если их еще нет:
+     * UDR_AGGREGATES - суммарные длительности звонков абонента за месяц,
+     * CDR_FILE_WATERMARKS - до какого места обработан CDR файл каждого месяца.
+     * В отличие от таблицы CDR, эти таблицы сохраняются между запусками.
+     *
+     * @param connection соединение с базой данных
+     */
+    public static void createUDRTables(Connection connection) {
+        String[] createSqls = {
+                "create table if not exists UDR_AGGREGATES (" +
+                        "msisdn VARCHAR(11), " +
+                        "report_month INT, " +
+                        "incoming_seconds BIGINT, " +
+                        "outgoing_seconds BIGINT, " +
+                        "PRIMARY KEY (report_month, msisdn)" +
+                        ")",
+                "create table if not exists CDR_FILE_WATERMARKS (" +
+                        "report_month INT PRIMARY KEY, " +
+                        "file_name VARCHAR(255), " +
+                        "file_size BIGINT, " +
+                        "last_modified BIGINT, " +
+                        "last_offset BIGINT, " +
+                        "checksum BIGINT" +
+                        ")"
+        };
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : createSqls) {
+                statement.executeUpdate(sql);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Создает индексы таблиц CDR месяцев для построения отчетов запросами, если их еще нет.
+     * Запросы по абоненту используют первичный ключ (msisdn, start_time_unix).
+     * Индексы создаются после генерации, чтобы не замедлять вставку записей.
+     *
+     * @param connection соединение с базой данных
+     */
+    public static void createCDRIndexes(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+                String table = cdrTableName(month);
+                statement.executeUpdate("create index if not exists " + table + "_START_TIME_IDX on " + table + " (start_time_unix)");
+                statement.executeUpdate("create index if not exists " + table + "_CALL_TYPE_IDX on " + table + " (call_type)");
             }
         } catch (SQLException e) {
             e.printStackTrace();
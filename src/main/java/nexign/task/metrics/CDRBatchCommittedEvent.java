@@ -0,0 +1,19 @@
+package nexign.task.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR: выполнен и зафиксирован пакет вставки CDR записей в базу.
+ */
+@Name("nexign.task.CDRBatchCommitted")
+@Label("CDR Batch Committed")
+@Category({"Nexign", "Database"})
+@Description("Выполнение JDBC-пакета вставки CDR записей и фиксация транзакции")
+public class CDRBatchCommittedEvent extends Event {
+    @Label("Records")
+    public long recordsCount;
+}
@@ -0,0 +1,38 @@
+package nexign.task.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR: агрегирован CDR файл или его часть при создании UDR отчетов.
+ */
+@Name("nexign.task.CDRFileAggregated")
+@Label("CDR File Aggregated")
+@Category({"Nexign", "UDR"})
+@Description("Разбор CDR файла (или части файла) с накоплением длительностей звонков по абонентам")
+public class CDRFileAggregatedEvent extends Event {
+    @Label("Month")
+    public int month;
+
+    @Label("File")
+    public String fileName;
+
+    @Label("MSISDN")
+    @Description("Номер абонента, звонки которого учитывались (пусто - все абоненты)")
+    public String msisdn;
+
+    @Label("Range Start")
+    @Description("Начало части файла: байт для текстового файла, номер записи для двоичного")
+    public long rangeStart;
+
+    @Label("Records")
+    public long recordsCount;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytesCount;
+}
@@ -0,0 +1,33 @@
+package nexign.task.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR: сгенерирован CDR файл месяца (вместе с сохранением записей в базу).
+ */
+@Name("nexign.task.CDRMonthGenerated")
+@Label("CDR Month Generated")
+@Category({"Nexign", "CDR"})
+@Description("Генерация CDR файла месяца вместе с индексом и сохранением записей в базу")
+public class CDRMonthGeneratedEvent extends Event {
+    @Label("Year")
+    public int year;
+
+    @Label("Month")
+    public int month;
+
+    @Label("File")
+    public String fileName;
+
+    @Label("Records")
+    public long recordsCount;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytesCount;
+}
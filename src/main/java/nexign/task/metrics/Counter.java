@@ -0,0 +1,33 @@
+package nexign.task.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter - монотонно растущий счетчик. Увеличение не блокирует потоки:
+ * LongAdder распределяет конкурирующие обновления по отдельным ячейкам.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * @param amount неотрицательное приращение
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
@@ -0,0 +1,36 @@
+package nexign.task.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Gauge - текущее значение (например, количество абонентов или глубина очереди).
+ * Значение либо задается через set(), либо вычисляется при чтении переданной функцией.
+ */
+public final class Gauge {
+    private volatile long value;
+    private volatile LongSupplier supplier;
+
+    Gauge() {
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @param supplier функция, вычисляющая значение при чтении (null - использовать значение из set())
+     */
+    public void setSupplier(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public long get() {
+        LongSupplier currentSupplier = supplier;
+        return currentSupplier != null ? currentSupplier.getAsLong() : value;
+    }
+
+    void reset() {
+        value = 0;
+        supplier = null;
+    }
+}
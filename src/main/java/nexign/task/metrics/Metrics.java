@@ -0,0 +1,172 @@
+package nexign.task.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import nexign.task.utilities.LatencyHistogram;
+
+/**
+ * Metrics - общий реестр метрик этапов обработки: счетчики, текущие значения и таймеры.
+ * Метрика создается при первом обращении по имени; классы получают ее один раз в статическое поле,
+ * поэтому обновление на горячем пути - только увеличение LongAdder или счетчика гистограммы без блокировок.
+ * Снимок всех метрик выгружается в JSON или в текстовом формате Prometheus.
+ * Таймеры хранят длительности в наносекундах, в формате Prometheus выводятся в секундах (имена с суффиксом _seconds).
+ */
+public class Metrics {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /** метрики упорядочены по имени, чтобы выгрузки разных запусков было удобно сравнивать */
+    private static final Map<String, Object> METRICS = new ConcurrentSkipListMap<>();
+    private static final Map<String, String> DESCRIPTIONS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name имя метрики (например, cdr_generated_records_total)
+     * @param help описание метрики
+     *
+     * @return счетчик с этим именем
+     */
+    public static Counter counter(String name, String help) {
+        return register(name, help, Counter.class, new Counter());
+    }
+
+    /**
+     * @param name имя метрики
+     * @param help описание метрики
+     *
+     * @return текущее значение с этим именем
+     */
+    public static Gauge gauge(String name, String help) {
+        return register(name, help, Gauge.class, new Gauge());
+    }
+
+    /**
+     * @param name имя метрики (с суффиксом _seconds)
+     * @param help описание метрики
+     *
+     * @return гистограмма длительностей в наносекундах с этим именем
+     */
+    public static LatencyHistogram timer(String name, String help) {
+        return register(name, help, LatencyHistogram.class, new LatencyHistogram());
+    }
+
+    private static <T> T register(String name, String help, Class<T> type, T metric) {
+        Object existing = METRICS.putIfAbsent(name, metric);
+        if (existing == null) {
+            DESCRIPTIONS.put(name, help);
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована с другим типом");
+        }
+        return type.cast(existing);
+    }
+
+    /**
+     * Обнуляет все метрики (метрики остаются зарегистрированными).
+     */
+    public static void reset() {
+        for (Object metric : METRICS.values()) {
+            if (metric instanceof Counter counter) {
+                counter.reset();
+            } else if (metric instanceof Gauge gauge) {
+                gauge.reset();
+            } else if (metric instanceof LatencyHistogram histogram) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * @return снимок метрик: для счетчиков и текущих значений - число,
+     * для таймеров - количество, среднее, p50, p99, p99.9 и максимум в наносекундах
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : METRICS.entrySet()) {
+            Object metric = entry.getValue();
+            if (metric instanceof Counter counter) {
+                snapshot.put(entry.getKey(), counter.get());
+            } else if (metric instanceof Gauge gauge) {
+                snapshot.put(entry.getKey(), gauge.get());
+            } else if (metric instanceof LatencyHistogram histogram) {
+                snapshot.put(entry.getKey(), histogram.snapshot());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return снимок метрик в JSON
+     */
+    public static String toJson() {
+        try {
+            return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(snapshot());
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось сериализовать метрики", e);
+        }
+    }
+
+    /**
+     * @return снимок метрик в текстовом формате Prometheus (таймеры - как summary с квантилями)
+     */
+    public static String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Object> entry : METRICS.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            text.append("# HELP ").append(name).append(' ').append(DESCRIPTIONS.getOrDefault(name, name)).append('\n');
+
+            if (metric instanceof Counter counter) {
+                text.append("# TYPE ").append(name).append(" counter\n");
+                text.append(name).append(' ').append(counter.get()).append('\n');
+            } else if (metric instanceof Gauge gauge) {
+                text.append("# TYPE ").append(name).append(" gauge\n");
+                text.append(name).append(' ').append(gauge.get()).append('\n');
+            } else if (metric instanceof LatencyHistogram histogram) {
+                LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+                text.append("# TYPE ").append(name).append(" summary\n");
+                appendQuantile(text, name, "0.5", snapshot.p50());
+                appendQuantile(text, name, "0.99", snapshot.p99());
+                appendQuantile(text, name, "0.999", snapshot.p999());
+                text.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+                text.append(name).append("_count ").append(snapshot.count()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static void appendQuantile(StringBuilder text, String name, String quantile, long nanos) {
+        text.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(seconds(nanos)).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * Записывает снимок метрик в файл: в JSON, если имя файла оканчивается на .json, иначе в формате Prometheus.
+     *
+     * @param file файл снимка
+     *
+     * @throws IOException если запись не удалась
+     */
+    public static void writeTo(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        String content = file.getName().endsWith(".json") ? toJson() : toPrometheus();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,37 @@
+package nexign.task.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR: записаны UDR отчеты месяца (или части месяца).
+ */
+@Name("nexign.task.UDRReportFlush")
+@Label("UDR Report Flush")
+@Category({"Nexign", "UDR"})
+@Description("Запись JSON отчетов абонентов за месяц")
+public class UDRReportFlushEvent extends Event {
+    @Label("Month")
+    public int month;
+
+    @Label("Layout")
+    public String layout;
+
+    @Label("MSISDN")
+    @Description("Номер абонента, если записан отчет одного абонента")
+    public String msisdn;
+
+    @Label("Reports")
+    public long reportsCount;
+
+    @Label("Files")
+    public long filesCount;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytesCount;
+}
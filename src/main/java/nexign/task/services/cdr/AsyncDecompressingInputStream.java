@@ -0,0 +1,170 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * AsyncDecompressingInputStream - поток распакованных данных сжатого CDR файла, который распаковывается
+ * в отдельном потоке. Распаковщик заполняет блоки по 64 КБ и передает их через ограниченную очередь,
+ * поэтому распаковка следующих блоков идет одновременно с разбором строк текущего, а память
+ * ограничена несколькими блоками. Прочитанные блоки возвращаются распаковщику для повторного использования.
+ * Любая ошибка распаковки передается читающему потоку как IOException.
+ */
+public class AsyncDecompressingInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /** количество распакованных блоков, ожидающих разбора */
+    private static final int QUEUE_CAPACITY = 4;
+
+    /** распакованный блок данных, ошибка распаковки или признак конца файла (data == null, error == null) */
+    private record Block(byte[] data, int length, IOException error) {}
+
+    private static final Block END = new Block(null, 0, null);
+
+    private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    /** прочитанные блоки для повторного использования (блоков не больше, чем очередь, текущий блок и заполняемый) */
+    private final BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+    private final Thread decompressor;
+    private volatile boolean closed;
+
+    private byte[] current;
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    /**
+     * Открывает файл и запускает его распаковку.
+     *
+     * @param file сжатый CDR файл
+     * @param codec кодек файла
+     * @param statistics статистика распаковки (null - не учитывать)
+     */
+    public AsyncDecompressingInputStream(File file, CDRCodec codec, CDRCompressionStatistics statistics) {
+        this.decompressor = new Thread(() -> decompress(file, codec, statistics), "cdr-decompressor-" + file.getName());
+        decompressor.setDaemon(true);
+        decompressor.start();
+    }
+
+    private void decompress(File file, CDRCodec codec, CDRCompressionStatistics statistics) {
+        long uncompressedBytes = 0;
+        long elapsedNanos = 0;
+        try (InputStream input = codec.decompress(new FileInputStream(file))) {
+            while (!closed) {
+                byte[] data = freeBlocks.poll();
+                if (data == null) {
+                    data = new byte[BLOCK_SIZE];
+                }
+
+                long start = System.nanoTime();
+                int filled = 0;
+                int read = 0;
+                while (filled < data.length && (read = input.read(data, filled, data.length - filled)) != -1) {
+                    filled += read;
+                }
+                elapsedNanos += System.nanoTime() - start;
+
+                if (filled > 0) {
+                    uncompressedBytes += filled;
+                    blocks.put(new Block(data, filled, null));
+                }
+                if (read == -1) {
+                    break;
+                }
+            }
+            if (statistics != null && !closed) {
+                statistics.record(uncompressedBytes, file.length(), elapsedNanos);
+            }
+            blocks.put(END);
+        } catch (InterruptedException e) {
+            // поток закрыт до конца распаковки
+        } catch (Throwable e) {
+            // любая ошибка (в том числе RuntimeException кодека или Error) передается читающему потоку,
+            // иначе он бесконечно ждал бы следующий блок
+            IOException error = (e instanceof IOException ioException) ? ioException : new IOException(e);
+            try {
+                blocks.put(new Block(null, 0, error));
+            } catch (InterruptedException interrupted) {
+                // поток закрыт, ошибку некому передавать
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Переходит к следующему распакованному блоку, если текущий прочитан.
+     *
+     * @return false, если данные закончились
+     */
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Поток закрыт");
+        }
+        while (current == null || position == limit) {
+            if (finished) {
+                return false;
+            }
+            if (current != null) {
+                freeBlocks.offer(current);
+                current = null;
+            }
+
+            Block block;
+            try {
+                block = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Чтение распакованных данных прервано");
+            }
+            if (block.error() != null) {
+                finished = true;
+                throw new IOException("Не удалось распаковать CDR файл", block.error());
+            }
+            if (block == END) {
+                finished = true;
+                return false;
+            }
+            current = block.data();
+            position = 0;
+            limit = block.length();
+        }
+        return true;
+    }
+
+    /**
+     * Останавливает распаковку, если файл прочитан не полностью.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        decompressor.interrupt();
+        blocks.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package nexign.task.services.cdr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BinaryCDRFormat - описание двоичного формата CDR файлов.
+ *
+ * Файл состоит из заголовка (32 байта) и записей фиксированной длины (25 байт), порядок байт - little-endian.
+ * Заголовок: сигнатура "CDRB" (int), версия формата (short), месяц (short), количество записей (long),
+ * минимальное время начала звонка (long), максимальное время окончания звонка (long).
+ * Запись: тип звонка (byte), номер абонента (long), время начала (long), время окончания (long).
+ */
+public final class BinaryCDRFormat {
+    public static final int MAGIC = 0x42524443; // "CDRB" в порядке little-endian
+    public static final short VERSION = 1;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 25;
+
+    /** смещения полей внутри записи */
+    public static final int CALL_TYPE_OFFSET = 0;
+    public static final int MSISDN_OFFSET = 1;
+    public static final int START_TIME_OFFSET = 9;
+    public static final int END_TIME_OFFSET = 17;
+
+    private BinaryCDRFormat() {
+    }
+
+    /**
+     * Заголовок двоичного CDR файла.
+     *
+     * @param month месяц, за который записаны звонки
+     * @param recordsCount количество записей
+     * @param minStartTime минимальное время начала звонка (Long.MAX_VALUE, если записей нет)
+     * @param maxEndTime максимальное время окончания звонка (Long.MIN_VALUE, если записей нет)
+     */
+    public record Header(int month, long recordsCount, long minStartTime, long maxEndTime) {
+
+        /**
+         * Записывает заголовок в буфер с текущей позиции.
+         *
+         * @param buffer буфер с порядком байт BYTE_ORDER
+         */
+        public void write(ByteBuffer buffer) {
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) month);
+            buffer.putLong(recordsCount);
+            buffer.putLong(minStartTime);
+            buffer.putLong(maxEndTime);
+        }
+
+        /**
+         * Читает заголовок из буфера с текущей позиции.
+         *
+         * @param buffer буфер с порядком байт BYTE_ORDER
+         *
+         * @return заголовок файла
+         *
+         * @throws IOException если сигнатура или версия не совпадают
+         */
+        public static Header read(ByteBuffer buffer) throws IOException {
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Файл не является двоичным CDR файлом");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия двоичного CDR файла: " + version);
+            }
+            int month = buffer.getShort();
+            return new Header(month, buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+    }
+}
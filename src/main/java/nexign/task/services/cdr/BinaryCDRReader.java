@@ -0,0 +1,116 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+/**
+ * BinaryCDRReader - чтение двоичного CDR файла (формат описан в BinaryCDRFormat) через отображение в память.
+ * Файлы больше 2 ГБ отображаются частями, каждая часть содержит целое число записей.
+ */
+public class BinaryCDRReader implements AutoCloseable {
+    /** максимальное количество записей в одной отображаемой части файла */
+    public static final int MAX_SEGMENT_RECORDS = Integer.MAX_VALUE / BinaryCDRFormat.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final BinaryCDRFormat.Header header;
+
+    /**
+     * Открывает файл и проверяет заголовок.
+     *
+     * @param file двоичный CDR файл
+     *
+     * @throws IOException если файл не удалось открыть, заголовок неверный или файл обрезан
+     */
+    public BinaryCDRReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(BinaryCDRFormat.HEADER_SIZE).order(BinaryCDRFormat.BYTE_ORDER);
+            while (headerBuffer.hasRemaining() && channel.read(headerBuffer, headerBuffer.position()) > 0) {
+                // читаем заголовок целиком
+            }
+            headerBuffer.flip();
+            this.header = BinaryCDRFormat.Header.read(headerBuffer);
+
+            long expectedSize = BinaryCDRFormat.HEADER_SIZE + header.recordsCount() * BinaryCDRFormat.RECORD_SIZE;
+            if (channel.size() < expectedSize) {
+                throw new IOException("Двоичный CDR файл " + file + " обрезан: ожидалось " + expectedSize
+                        + " байт, получено " + channel.size());
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public BinaryCDRFormat.Header getHeader() {
+        return header;
+    }
+
+    public long getRecordsCount() {
+        return header.recordsCount();
+    }
+
+    /**
+     * Отображает в память часть файла с записями [firstRecord, firstRecord + count).
+     * Запись с номером i части начинается с позиции i * RECORD_SIZE буфера.
+     *
+     * @param firstRecord номер первой записи
+     * @param count количество записей, не больше MAX_SEGMENT_RECORDS
+     *
+     * @return буфер только для чтения с порядком байт BYTE_ORDER
+     *
+     * @throws IOException если отобразить файл не удалось
+     */
+    public ByteBuffer mapRecords(long firstRecord, int count) throws IOException {
+        if (firstRecord < 0 || count < 0 || count > MAX_SEGMENT_RECORDS || firstRecord + count > header.recordsCount()) {
+            throw new IllegalArgumentException("Неверный диапазон записей: " + firstRecord + " + " + count);
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                BinaryCDRFormat.HEADER_SIZE + firstRecord * BinaryCDRFormat.RECORD_SIZE,
+                (long) count * BinaryCDRFormat.RECORD_SIZE);
+        return mapped.order(BinaryCDRFormat.BYTE_ORDER);
+    }
+
+    /**
+     * Последовательно читает все записи файла блоками.
+     *
+     * @param chunk буфер, в который читается очередной блок (очищается перед каждым блоком)
+     * @param chunkSize количество записей в блоке
+     * @param consumer получатель блоков
+     *
+     * @throws IOException если чтение файла не удалось
+     * @throws SQLException если получатель не смог сохранить записи в базу
+     */
+    public void readChunks(CDRBuffer chunk, int chunkSize, CDRSink consumer) throws IOException, SQLException {
+        long recordsCount = header.recordsCount();
+        for (long first = 0; first < recordsCount; first += MAX_SEGMENT_RECORDS) {
+            int segmentRecords = (int) Math.min(MAX_SEGMENT_RECORDS, recordsCount - first);
+            ByteBuffer segment = mapRecords(first, segmentRecords);
+
+            chunk.clear();
+            for (int i = 0; i < segmentRecords; i++) {
+                int offset = i * BinaryCDRFormat.RECORD_SIZE;
+                chunk.add(segment.get(offset + BinaryCDRFormat.CALL_TYPE_OFFSET),
+                        segment.getLong(offset + BinaryCDRFormat.MSISDN_OFFSET),
+                        segment.getLong(offset + BinaryCDRFormat.START_TIME_OFFSET),
+                        segment.getLong(offset + BinaryCDRFormat.END_TIME_OFFSET));
+                if (chunk.size() >= chunkSize) {
+                    consumer.accept(chunk);
+                    chunk.clear();
+                }
+            }
+            consumer.accept(chunk);
+            chunk.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
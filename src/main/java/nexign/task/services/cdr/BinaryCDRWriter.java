@@ -0,0 +1,96 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BinaryCDRWriter - запись CDR записей в двоичный файл (формат описан в BinaryCDRFormat).
+ * Заголовок с количеством записей и диапазоном времени записывается при закрытии файла.
+ */
+public class BinaryCDRWriter implements CDRSink {
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * BinaryCDRFormat.RECORD_SIZE)
+            .order(BinaryCDRFormat.BYTE_ORDER);
+    private final int month;
+
+    private long recordsCount;
+    private long minStartTime = Long.MAX_VALUE;
+    private long maxEndTime = Long.MIN_VALUE;
+
+    /**
+     * @param file файл, в который будут записаны CDR записи (перезаписывается)
+     * @param month месяц, за который записываются звонки
+     *
+     * @throws IOException если файл не удалось открыть для записи
+     */
+    public BinaryCDRWriter(File file, int month) throws IOException {
+        this.month = month;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // место под заголовок, он будет перезаписан при закрытии
+        channel.position(BinaryCDRFormat.HEADER_SIZE);
+    }
+
+    @Override
+    public void accept(CDRBuffer records) throws IOException {
+        for (int i = 0; i < records.size(); i++) {
+            if (buffer.remaining() < BinaryCDRFormat.RECORD_SIZE) {
+                flushBuffer();
+            }
+            long startTime = records.startTime(i);
+            long endTime = records.endTime(i);
+
+            buffer.put(records.callType(i));
+            buffer.putLong(records.msisdn(i));
+            buffer.putLong(startTime);
+            buffer.putLong(endTime);
+
+            recordsCount++;
+            minStartTime = Math.min(minStartTime, startTime);
+            maxEndTime = Math.max(maxEndTime, endTime);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return количество записанных записей
+     */
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+
+    /**
+     * @return количество записанных байт, включая заголовок
+     */
+    public long getBytesWritten() {
+        return BinaryCDRFormat.HEADER_SIZE + recordsCount * BinaryCDRFormat.RECORD_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+
+            ByteBuffer header = ByteBuffer.allocate(BinaryCDRFormat.HEADER_SIZE).order(BinaryCDRFormat.BYTE_ORDER);
+            new BinaryCDRFormat.Header(month, recordsCount, minStartTime, maxEndTime).write(header);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
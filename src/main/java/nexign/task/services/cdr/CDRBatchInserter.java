@@ -0,0 +1,258 @@
+package nexign.task.services.cdr;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.metrics.CDRBatchCommittedEvent;
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+import nexign.task.utilities.LatencyHistogram;
+
+/**
+ * CDRBatchInserter - пакетная вставка CDR записей в базу данных.
+ * Запись сохраняется в таблицу месяца начала звонка (CDR_01..CDR_12, время в UTC). Для каждого месяца
+ * используется один подготовленный запрос на всё время работы, записи накапливаются в JDBC-пакеты,
+ * и транзакция фиксируется после каждого заполненного пакета.
+ * Записи сохраняются запросом MERGE: повторный звонок абонента с тем же временем начала заменяет прежний.
+ * Если пакет все же не удалось выполнить (например, номера нет в таблице абонентов), пакет откатывается
+ * и его записи сохраняются по одной: некорректные записи пропускаются и подсчитываются, а остальные сохраняются.
+ * После закрытия возвращает соединению исходный режим auto-commit.
+ */
+public class CDRBatchInserter implements CDRSink {
+    private static final int MONTHS_IN_YEAR = 12;
+
+    /** записи, сохраненные в таблицу CDR любым способом (пакетами или по одной) */
+    static final Counter INSERTED_RECORDS = Metrics.counter("cdr_inserted_records_total", "Сохранено CDR записей в базу");
+    private static final Counter REJECTED_RECORDS = Metrics.counter("cdr_rejected_records_total",
+            "CDR записи, которые не удалось сохранить в базу");
+    private static final LatencyHistogram BATCH_COMMIT_TIME =
+            Metrics.timer("cdr_insert_batch_seconds", "Время выполнения и фиксации пакета вставки CDR записей");
+
+    private final Connection connection;
+    /** запросы по месяцам, подготавливаются при первой записи месяца */
+    private final PreparedStatement[] statements = new PreparedStatement[MONTHS_IN_YEAR];
+    private final boolean initialAutoCommit;
+    private final int batchSize;
+
+    /** записи текущего пакета, нужны для сохранения по одной, если пакет не удалось выполнить */
+    private final CDRBuffer pending;
+    private long insertedCount;
+    private long rejectedCount;
+    private long elapsedNanos;
+
+    /**
+     * @param connection соединение с базой данных
+     * @param batchSize количество записей в одном пакете
+     *
+     * @throws SQLException если не удалось отключить auto-commit
+     */
+    public CDRBatchInserter(Connection connection, int batchSize) throws SQLException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.initialAutoCommit = connection.getAutoCommit();
+        this.pending = new CDRBuffer(batchSize);
+
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * @param month месяц (1-12)
+     *
+     * @return запрос сохранения записи в таблицу месяца с заменой записи с тем же ключом
+     */
+    static String upsertSql(int month) {
+        return "merge into " + DatabaseInitializer.cdrTableName(month) +
+                " (call_type, msisdn, start_time_unix, end_time_unix) key (msisdn, start_time_unix) values (?, ?, ?, ?)";
+    }
+
+    /**
+     * @param unixTime время (Unix time)
+     *
+     * @return месяц (1-12) в UTC
+     */
+    static int monthOf(long unixTime) {
+        return LocalDateTime.ofEpochSecond(unixTime, 0, ZoneOffset.UTC).getMonthValue();
+    }
+
+    /**
+     * Добавляет записи блока в текущий пакет, при заполнении пакета отправляет его в базу.
+     *
+     * @param records блок записей о звонках
+     *
+     * @throws SQLException если произошла ошибка при выполнении запроса
+     */
+    @Override
+    public void accept(CDRBuffer records) throws SQLException {
+        for (int i = 0; i < records.size(); i++) {
+            add(records.callType(i), records.msisdn(i), records.startTime(i), records.endTime(i));
+        }
+    }
+
+    /**
+     * Добавляет запись в текущий пакет, при заполнении пакета отправляет его в базу.
+     *
+     * @param record запись о звонке
+     *
+     * @throws SQLException если произошла ошибка при выполнении запроса
+     */
+    public void accept(RecordCDR record) throws SQLException {
+        add(CDRBuffer.parseCallType(record.callType()), Long.parseLong(record.phoneNumber()),
+                record.startTimeUnix(), record.endTimeUnix());
+    }
+
+    private void add(byte callType, long msisdn, long startTime, long endTime) throws SQLException {
+        long start = System.nanoTime();
+
+        setParameters(statement(monthOf(startTime)), callType, msisdn, startTime, endTime).addBatch();
+        pending.add(callType, msisdn, startTime, endTime);
+
+        elapsedNanos += System.nanoTime() - start;
+
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private PreparedStatement statement(int month) throws SQLException {
+        if (statements[month - 1] == null) {
+            statements[month - 1] = connection.prepareStatement(upsertSql(month));
+        }
+        return statements[month - 1];
+    }
+
+    private static PreparedStatement setParameters(PreparedStatement statement, byte callType, long msisdn,
+                                                   long startTime, long endTime) throws SQLException {
+        statement.setString(1, CDRBuffer.callTypeToString(callType));
+        statement.setString(2, Long.toString(msisdn));
+        statement.setLong(3, startTime);
+        statement.setLong(4, endTime);
+        return statement;
+    }
+
+    /**
+     * Отправляет накопленный пакет в базу и фиксирует транзакцию.
+     * Если пакет не удалось выполнить, записи сохраняются по одной, а некорректные пропускаются.
+     *
+     * @throws SQLException если не удалось зафиксировать транзакцию (например, соединение закрыто)
+     */
+    public void flush() throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CDRBatchCommittedEvent event = new CDRBatchCommittedEvent();
+        event.begin();
+
+        int savedCount;
+        try {
+            for (PreparedStatement statement : statements) {
+                if (statement != null) {
+                    statement.executeBatch();
+                }
+            }
+            connection.commit();
+            savedCount = pending.size();
+        } catch (SQLException e) {
+            connection.rollback();
+            savedCount = insertOneByOne(e);
+        }
+        insertedCount += savedCount;
+        INSERTED_RECORDS.add(savedCount);
+        if (event.shouldCommit()) {
+            event.recordsCount = savedCount;
+            event.commit();
+        }
+        pending.clear();
+
+        long batchNanos = System.nanoTime() - start;
+        elapsedNanos += batchNanos;
+        BATCH_COMMIT_TIME.record(batchNanos);
+    }
+
+    /**
+     * Сохраняет записи отмененного пакета по одной, пропуская записи, которые не удалось сохранить.
+     *
+     * @param batchError ошибка выполнения пакета
+     *
+     * @return количество сохраненных записей
+     */
+    private int insertOneByOne(SQLException batchError) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            if (statement != null) {
+                statement.clearBatch();
+            }
+        }
+
+        int rejected = 0;
+        SQLException firstError = null;
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                setParameters(statement(monthOf(pending.startTime(i))), pending.callType(i), pending.msisdn(i),
+                        pending.startTime(i), pending.endTime(i)).executeUpdate();
+            } catch (SQLException e) {
+                rejected++;
+                if (firstError == null) {
+                    firstError = e;
+                }
+            }
+        }
+        connection.commit();
+
+        if (rejected > 0) {
+            rejectedCount += rejected;
+            REJECTED_RECORDS.add(rejected);
+            System.err.println("Не удалось сохранить CDR записей: " + rejected + " из " + pending.size() +
+                    " (" + (firstError != null ? firstError.getMessage() : batchError.getMessage()) + ")");
+        }
+        return pending.size() - rejected;
+    }
+
+    /**
+     * @return количество записей, уже зафиксированных в базе
+     */
+    public long getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * @return количество записей, которые не удалось сохранить и которые были пропущены
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return время, затраченное на работу с базой (в наносекундах)
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Отправляет оставшиеся записи и освобождает запрос.
+     * Если отправить пакет не удалось, незафиксированные изменения откатываются.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            for (PreparedStatement statement : statements) {
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+            connection.setAutoCommit(initialAutoCommit);
+        }
+    }
+}
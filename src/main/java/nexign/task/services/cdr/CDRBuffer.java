@@ -0,0 +1,286 @@
+package nexign.task.services.cdr;
+
+import java.util.Arrays;
+
+/**
+ * CDRBuffer - компактное колоночное хранилище CDR записей.
+ * Каждая запись хранится в параллельных примитивных массивах: тип звонка (byte), номер абонента (long),
+ * время начала и окончания звонка (long), то есть занимает 25 байт без отдельных объектов на запись.
+ * Используется для передачи записей от генератора к приемникам блоками.
+ */
+public class CDRBuffer {
+    /** тип звонка "01" - исходящий */
+    public static final byte CALL_TYPE_OUTGOING = 1;
+    /** тип звонка "02" - входящий */
+    public static final byte CALL_TYPE_INCOMING = 2;
+
+    /** максимальная длина строки CDR файла в байтах, включая перевод строки */
+    public static final int MAX_LINE_LENGTH = 2 + 2 + 20 + 2 + 20 + 2 + 20 + 1;
+
+    private byte[] callTypes;
+    private long[] msisdns;
+    private long[] startTimes;
+    private long[] endTimes;
+    private int size;
+
+    /**
+     * @param initialCapacity начальное количество записей, под которое выделяется память
+     */
+    public CDRBuffer(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        callTypes = new byte[capacity];
+        msisdns = new long[capacity];
+        startTimes = new long[capacity];
+        endTimes = new long[capacity];
+    }
+
+    /**
+     * Добавляет запись в конец буфера, при необходимости увеличивая его.
+     *
+     * @param callType тип звонка
+     * @param msisdn номер абонента
+     * @param startTime время начала звонка (Unix time)
+     * @param endTime время окончания звонка (Unix time)
+     */
+    public void add(byte callType, long msisdn, long startTime, long endTime) {
+        if (size == callTypes.length) {
+            grow();
+        }
+        callTypes[size] = callType;
+        msisdns[size] = msisdn;
+        startTimes[size] = startTime;
+        endTimes[size] = endTime;
+        size++;
+    }
+
+    /**
+     * Добавляет запись в конец буфера.
+     *
+     * @param record запись о звонке
+     */
+    public void add(RecordCDR record) {
+        add(parseCallType(record.callType()), Long.parseLong(record.phoneNumber()),
+                record.startTimeUnix(), record.endTimeUnix());
+    }
+
+    private void grow() {
+        int capacity = callTypes.length * 2;
+        callTypes = Arrays.copyOf(callTypes, capacity);
+        msisdns = Arrays.copyOf(msisdns, capacity);
+        startTimes = Arrays.copyOf(startTimes, capacity);
+        endTimes = Arrays.copyOf(endTimes, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true, если для следующей записи буфер придется увеличивать
+     */
+    public boolean isFull() {
+        return size == callTypes.length;
+    }
+
+    /**
+     * Удаляет все записи, сохраняя выделенную память.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public byte callType(int index) {
+        return callTypes[checkIndex(index)];
+    }
+
+    public long msisdn(int index) {
+        return msisdns[checkIndex(index)];
+    }
+
+    public long startTime(int index) {
+        return startTimes[checkIndex(index)];
+    }
+
+    public long endTime(int index) {
+        return endTimes[checkIndex(index)];
+    }
+
+    /**
+     * @param index номер записи
+     *
+     * @return запись в виде объекта RecordCDR
+     */
+    public RecordCDR get(int index) {
+        checkIndex(index);
+        return new RecordCDR(callTypeToString(callTypes[index]), Long.toString(msisdns[index]),
+                startTimes[index], endTimes[index]);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " вне диапазона [0, " + size + ")");
+        }
+        return index;
+    }
+
+    /**
+     * Сортирует записи по времени начала звонка.
+     * Используется поразрядная сортировка (LSD radix sort) по смещению от минимального времени,
+     * она устойчива (записи с одинаковым временем сохраняют порядок), работает за O(n)
+     * и не создает объектов на каждую запись.
+     */
+    public void sortByStartTime() {
+        if (size < 2) {
+            return;
+        }
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minTime = Math.min(minTime, startTimes[i]);
+            maxTime = Math.max(maxTime, startTimes[i]);
+        }
+        long range = maxTime - minTime;
+        if (range == 0) {
+            return;
+        }
+        int bits = Long.SIZE - Long.numberOfLeadingZeros(range);
+
+        final int radixBits = 16;
+        final int radix = 1 << radixBits;
+        int[] counts = new int[radix + 1];
+
+        byte[] sortedCallTypes = new byte[size];
+        long[] sortedMsisdns = new long[size];
+        long[] sortedStartTimes = new long[size];
+        long[] sortedEndTimes = new long[size];
+
+        for (int shift = 0; shift < bits; shift += radixBits) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[digit(startTimes[i], minTime, shift, radix) + 1]++;
+            }
+            for (int d = 0; d < radix; d++) {
+                counts[d + 1] += counts[d];
+            }
+            for (int i = 0; i < size; i++) {
+                int position = counts[digit(startTimes[i], minTime, shift, radix)]++;
+                sortedCallTypes[position] = callTypes[i];
+                sortedMsisdns[position] = msisdns[i];
+                sortedStartTimes[position] = startTimes[i];
+                sortedEndTimes[position] = endTimes[i];
+            }
+
+            // меняем местами исходные и отсортированные массивы, старые используются на следующем проходе
+            byte[] callTypesSwap = callTypes; callTypes = sortedCallTypes; sortedCallTypes = callTypesSwap;
+            long[] msisdnsSwap = msisdns; msisdns = sortedMsisdns; sortedMsisdns = msisdnsSwap;
+            long[] startTimesSwap = startTimes; startTimes = sortedStartTimes; sortedStartTimes = startTimesSwap;
+            long[] endTimesSwap = endTimes; endTimes = sortedEndTimes; sortedEndTimes = endTimesSwap;
+        }
+    }
+
+    private static int digit(long time, long minTime, int shift, int radix) {
+        return (int) (((time - minTime) >>> shift) & (radix - 1));
+    }
+
+    /**
+     * Записывает запись в виде строки CDR файла ("01, 79996667755, 1710716673, 1710718467\n") в массив байт.
+     * Результат совпадает с RecordCDR.toString() с переводом строки.
+     *
+     * @param index номер записи
+     * @param target массив, в который записывается строка, после offset должно быть не меньше MAX_LINE_LENGTH байт
+     * @param offset позиция, с которой записывается строка
+     *
+     * @return позиция после записанной строки
+     */
+    public int appendLine(int index, byte[] target, int offset) {
+        checkIndex(index);
+        int position = offset;
+        byte callType = callTypes[index];
+        target[position++] = (byte) ('0' + callType / 10);
+        target[position++] = (byte) ('0' + callType % 10);
+        target[position++] = ',';
+        target[position++] = ' ';
+        position = appendLong(msisdns[index], target, position);
+        target[position++] = ',';
+        target[position++] = ' ';
+        position = appendLong(startTimes[index], target, position);
+        target[position++] = ',';
+        target[position++] = ' ';
+        position = appendLong(endTimes[index], target, position);
+        target[position++] = '\n';
+        return position;
+    }
+
+    /**
+     * @param index номер записи
+     *
+     * @return длина строки CDR файла для записи в байтах, включая перевод строки
+     */
+    public int lineLength(int index) {
+        checkIndex(index);
+        return 2 + 2 + digitsCount(msisdns[index]) + 2 + digitsCount(startTimes[index])
+                + 2 + digitsCount(endTimes[index]) + 1;
+    }
+
+    private static int digitsCount(long value) {
+        if (value < 0) {
+            return Long.toString(value).length();
+        }
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int appendLong(long value, byte[] target, int offset) {
+        if (value < 0) {
+            // отрицательные значения в CDR не встречаются, используем общий путь
+            byte[] digits = Long.toString(value).getBytes();
+            System.arraycopy(digits, 0, target, offset, digits.length);
+            return offset + digits.length;
+        }
+        int length = digitsCount(value);
+        int position = offset + length;
+        long rest = value;
+        do {
+            target[--position] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        return offset + length;
+    }
+
+    /**
+     * @param callType тип звонка в виде строки ("01", "02")
+     *
+     * @return тип звонка в виде числа
+     *
+     * @throws IllegalArgumentException если тип звонка не является двузначным числом
+     */
+    public static byte parseCallType(String callType) {
+        if (callType.length() != 2 || !Character.isDigit(callType.charAt(0)) || !Character.isDigit(callType.charAt(1))) {
+            throw new IllegalArgumentException("Неверный тип звонка: " + callType);
+        }
+        return (byte) ((callType.charAt(0) - '0') * 10 + (callType.charAt(1) - '0'));
+    }
+
+    /**
+     * @param callType тип звонка в виде числа
+     *
+     * @return тип звонка в виде двузначной строки
+     */
+    public static String callTypeToString(byte callType) {
+        switch (callType) {
+            case CALL_TYPE_OUTGOING:
+                return "01";
+            case CALL_TYPE_INCOMING:
+                return "02";
+            default:
+                return String.format("%02d", callType);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package nexign.task.services.cdr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * CDRCodec - способ сжатия текстовых CDR файлов. Сжатый файл отличается дополнительным расширением
+ * (например, cdr_1.txt.gz), по которому кодек выбирается при чтении (CDRCodecs.forFile).
+ * Новые кодеки подключаются через CDRCodecs.register.
+ */
+public interface CDRCodec {
+
+    /**
+     * @return название кодека в настройках (например, gzip)
+     */
+    String getName();
+
+    /**
+     * @return расширение сжатых файлов (с точкой), пустая строка - файлы не сжимаются
+     */
+    String getExtension();
+
+    /**
+     * @param out поток файла
+     *
+     * @return поток, сжимающий записываемые данные; его закрытие закрывает поток файла
+     *
+     * @throws IOException если не удалось записать заголовок сжатых данных
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * @param in поток сжатого файла
+     *
+     * @return поток распакованных данных; его закрытие закрывает поток файла
+     *
+     * @throws IOException если заголовок сжатых данных некорректен
+     */
+    InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * @return true, если кодек сжимает данные (позиции в файле не совпадают с позициями строк)
+     */
+    default boolean isCompressing() {
+        return !getExtension().isEmpty();
+    }
+}
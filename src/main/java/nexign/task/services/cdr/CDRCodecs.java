@@ -0,0 +1,68 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CDRCodecs - известные кодеки CDR файлов и выбор кодека по настройке или по имени файла.
+ */
+public class CDRCodecs {
+    /** файлы без сжатия */
+    public static final CDRCodec IDENTITY = new IdentityCDRCodec();
+    /** сжатие gzip */
+    public static final CDRCodec GZIP = new GzipCDRCodec();
+
+    private static final List<CDRCodec> CODECS = new CopyOnWriteArrayList<>(List.of(GZIP));
+
+    private CDRCodecs() {
+    }
+
+    /**
+     * Подключает кодек, после чего файлы с его расширением читаются им, а его название можно указать в настройках.
+     *
+     * @param codec сжимающий кодек с непустым расширением
+     */
+    public static void register(CDRCodec codec) {
+        if (!codec.isCompressing()) {
+            throw new IllegalArgumentException("Кодек должен задавать расширение сжатых файлов");
+        }
+        CODECS.add(0, codec);
+    }
+
+    /**
+     * Определяет кодек по названию из настроек (без учета регистра).
+     *
+     * @param name название кодека (none, gzip или название подключенного кодека)
+     * @param defaultCodec кодек, возвращаемый при неизвестном названии
+     *
+     * @return кодек CDR файлов
+     */
+    public static CDRCodec fromString(String name, CDRCodec defaultCodec) {
+        if (IDENTITY.getName().equalsIgnoreCase(name)) {
+            return IDENTITY;
+        }
+        for (CDRCodec codec : CODECS) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * Определяет кодек по расширению файла, файлы без известного расширения сжатия считаются несжатыми.
+     *
+     * @param file CDR файл
+     *
+     * @return кодек для чтения файла
+     */
+    public static CDRCodec forFile(File file) {
+        for (CDRCodec codec : CODECS) {
+            if (file.getName().endsWith(codec.getExtension())) {
+                return codec;
+            }
+        }
+        return IDENTITY;
+    }
+}
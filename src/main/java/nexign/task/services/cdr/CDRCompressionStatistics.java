@@ -0,0 +1,70 @@
+package nexign.task.services.cdr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CDRCompressionStatistics - статистика сжатия или распаковки CDR файлов: объем данных до и после сжатия
+ * и время работы кодека. Обновляется из нескольких потоков (месяцы и файлы обрабатываются параллельно).
+ */
+public class CDRCompressionStatistics {
+    private final LongAdder filesCount = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+
+    /**
+     * Учитывает один сжатый или распакованный файл.
+     *
+     * @param uncompressed объем данных без сжатия (в байтах)
+     * @param compressed объем сжатого файла (в байтах)
+     * @param nanos время работы кодека (в наносекундах)
+     */
+    public void record(long uncompressed, long compressed, long nanos) {
+        filesCount.increment();
+        uncompressedBytes.add(uncompressed);
+        compressedBytes.add(compressed);
+        elapsedNanos.add(nanos);
+    }
+
+    public long getFilesCount() {
+        return filesCount.sum();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return степень сжатия: во сколько раз сжатые файлы меньше исходных (0, если файлов не было)
+     */
+    public double getRatio() {
+        long compressed = compressedBytes.sum();
+        return compressed > 0 ? (double) uncompressedBytes.sum() / compressed : 0;
+    }
+
+    /**
+     * @return скорость кодека по несжатым данным (МБ/с), время суммируется по всем потокам
+     */
+    public double getThroughputMBps() {
+        long nanos = elapsedNanos.sum();
+        return nanos > 0 ? uncompressedBytes.sum() / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0) : 0;
+    }
+
+    /**
+     * Выводит статистику в консоль, если были сжатые файлы.
+     *
+     * @param operation название операции (например, "Сжатие CDR файлов (gzip)")
+     */
+    public void print(String operation) {
+        if (filesCount.sum() == 0) {
+            return;
+        }
+        System.out.printf("%s: файлов %d, %d -> %d байт, степень сжатия %.2f, %.1f МБ/с%n",
+                operation, filesCount.sum(), uncompressedBytes.sum(), compressedBytes.sum(),
+                getRatio(), getThroughputMBps());
+    }
+}
@@ -0,0 +1,54 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+
+/**
+ * Форматы CDR файлов.
+ */
+public enum CDRFileFormat {
+    /** текстовый формат: строки вида "01, 79996667755, 1710716673, 1710718467" */
+    TEXT(".txt"),
+    /** двоичный формат с записями фиксированной длины, см. BinaryCDRFormat */
+    BINARY(".bin");
+
+    private final String extension;
+
+    CDRFileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return расширение файлов этого формата (с точкой)
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Определяет формат файла по расширению, файлы с неизвестным расширением считаются текстовыми.
+     *
+     * @param file CDR файл
+     *
+     * @return формат файла
+     */
+    public static CDRFileFormat fromFile(File file) {
+        return file.getName().endsWith(BINARY.extension) ? BINARY : TEXT;
+    }
+
+    /**
+     * Определяет формат по названию из настроек (без учета регистра).
+     *
+     * @param name название формата
+     * @param defaultFormat формат, возвращаемый при неизвестном названии
+     *
+     * @return формат CDR файлов
+     */
+    public static CDRFileFormat fromString(String name, CDRFileFormat defaultFormat) {
+        for (CDRFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return defaultFormat;
+    }
+}
@@ -0,0 +1,355 @@
+package nexign.task.services.cdr;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * CDRFileIndex - индекс CDR файла по абонентам, хранится рядом с CDR файлом в файле с расширением .idx.
+ * Для каждого номера индекс хранит позиции (смещения в байтах) всех его записей в CDR файле,
+ * поэтому записи одного абонента читаются без просмотра всего файла.
+ *
+ * Формат индекса: сигнатура "CDRI" (int), версия (int), размер и время изменения CDR файла (long, long),
+ * количество абонентов (int); затем для каждого абонента в порядке возрастания номера - номер (long),
+ * номер первой позиции (long) и количество записей (int); затем все позиции (long).
+ * Если размер или время изменения CDR файла не совпадают с записанными в индексе, индекс считается устаревшим.
+ */
+public class CDRFileIndex {
+    public static final String EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x43445249; // "CDRI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_SIZE = 8 + 8 + 4;
+
+    private final File cdrFile;
+    private final CDRFileFormat format;
+    private final File indexFile;
+
+    private final long[] msisdns;
+    private final long[] firstPositions;
+    private final int[] counts;
+    private final long positionsOffset;
+
+    private CDRFileIndex(File cdrFile, File indexFile, long[] msisdns, long[] firstPositions, int[] counts) {
+        this.cdrFile = cdrFile;
+        this.format = CDRFileFormat.fromFile(cdrFile);
+        this.indexFile = indexFile;
+        this.msisdns = msisdns;
+        this.firstPositions = firstPositions;
+        this.counts = counts;
+        this.positionsOffset = HEADER_SIZE + (long) msisdns.length * ENTRY_SIZE;
+    }
+
+    /**
+     * @param cdrFile CDR файл
+     *
+     * @return файл индекса для CDR файла
+     */
+    public static File indexFileFor(File cdrFile) {
+        return new File(cdrFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Открывает индекс CDR файла. Если индекса нет или он устарел, индекс строится заново по CDR файлу.
+     *
+     * @param cdrFile CDR файл
+     *
+     * @return индекс CDR файла
+     *
+     * @throws IOException если прочитать CDR файл или записать индекс не удалось
+     */
+    public static CDRFileIndex open(File cdrFile) throws IOException {
+        File indexFile = indexFileFor(cdrFile);
+        if (indexFile.exists()) {
+            CDRFileIndex index = read(cdrFile, indexFile);
+            if (index != null) {
+                return index;
+            }
+        }
+        rebuild(cdrFile);
+        CDRFileIndex index = read(cdrFile, indexFile);
+        if (index == null) {
+            throw new IOException("Не удалось построить индекс для " + cdrFile);
+        }
+        return index;
+    }
+
+    /**
+     * Читает каталог индекса (номера и количество записей), сами позиции читаются при поиске.
+     *
+     * @return индекс или null, если индекс поврежден или устарел
+     */
+    private static CDRFileIndex read(File cdrFile, File indexFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION
+                    || input.readLong() != cdrFile.length() || input.readLong() != cdrFile.lastModified()) {
+                return null;
+            }
+            int subscribersCount = input.readInt();
+            long[] msisdns = new long[subscribersCount];
+            long[] firstPositions = new long[subscribersCount];
+            int[] counts = new int[subscribersCount];
+            for (int i = 0; i < subscribersCount; i++) {
+                msisdns[i] = input.readLong();
+                firstPositions[i] = input.readLong();
+                counts[i] = input.readInt();
+            }
+            return new CDRFileIndex(cdrFile, indexFile, msisdns, firstPositions, counts);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Строит индекс заново, просматривая весь CDR файл.
+     *
+     * @param cdrFile CDR файл
+     *
+     * @throws IOException если прочитать CDR файл или записать индекс не удалось
+     */
+    public static void rebuild(File cdrFile) throws IOException {
+        CDRFileFormat format = CDRFileFormat.fromFile(cdrFile);
+        Builder builder = new Builder(format);
+
+        if (format == CDRFileFormat.BINARY) {
+            try (BinaryCDRReader reader = new BinaryCDRReader(cdrFile)) {
+                reader.readChunks(new CDRBuffer(4096), 4096, builder);
+            } catch (SQLException e) {
+                // построитель индекса не работает с базой, сюда выполнение не доходит
+                throw new IOException(e);
+            }
+        } else {
+            try (InputStream input = new BufferedInputStream(new FileInputStream(cdrFile))) {
+                long lineStart = 0;
+                long position = 0;
+                long msisdn = 0;
+                int commas = 0;
+                int b;
+                while ((b = input.read()) != -1) {
+                    if (b == '\n') {
+                        builder.add(msisdn, lineStart);
+                        lineStart = position + 1;
+                        msisdn = 0;
+                        commas = 0;
+                    } else if (b == ',') {
+                        commas++;
+                    } else if (commas == 1 && b >= '0' && b <= '9') {
+                        msisdn = msisdn * 10 + (b - '0');
+                    }
+                    position++;
+                }
+                if (position > lineStart) {
+                    // последняя строка без перевода строки
+                    builder.add(msisdn, lineStart);
+                }
+            }
+        }
+        builder.write(cdrFile);
+    }
+
+    /**
+     * @return количество абонентов в индексе
+     */
+    public int getSubscribersCount() {
+        return msisdns.length;
+    }
+
+    /**
+     * @param msisdn номер абонента
+     *
+     * @return количество записей абонента в CDR файле
+     */
+    public int getRecordsCount(long msisdn) {
+        int entry = Arrays.binarySearch(msisdns, msisdn);
+        return entry < 0 ? 0 : counts[entry];
+    }
+
+    /**
+     * Читает из CDR файла только записи заданного абонента, используя позиции из индекса.
+     *
+     * @param msisdn номер абонента
+     * @param target буфер, в конец которого добавляются записи
+     *
+     * @throws IOException если чтение не удалось
+     */
+    public void readRecords(long msisdn, CDRBuffer target) throws IOException {
+        int entry = Arrays.binarySearch(msisdns, msisdn);
+        if (entry < 0) {
+            return;
+        }
+        int count = counts[entry];
+
+        ByteBuffer positions = ByteBuffer.allocate(count * Long.BYTES);
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+             FileChannel cdrChannel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+            readFully(indexChannel, positions, positionsOffset + firstPositions[entry] * Long.BYTES);
+            positions.flip();
+
+            ByteBuffer record = ByteBuffer.allocate(Math.max(CDRBuffer.MAX_LINE_LENGTH, BinaryCDRFormat.RECORD_SIZE));
+            for (int i = 0; i < count; i++) {
+                long position = positions.getLong();
+                record.clear();
+                if (format == CDRFileFormat.BINARY) {
+                    record.limit(BinaryCDRFormat.RECORD_SIZE);
+                    readFully(cdrChannel, record, position);
+                    record.flip();
+                    record.order(BinaryCDRFormat.BYTE_ORDER);
+                    target.add(record.get(BinaryCDRFormat.CALL_TYPE_OFFSET),
+                            record.getLong(BinaryCDRFormat.MSISDN_OFFSET),
+                            record.getLong(BinaryCDRFormat.START_TIME_OFFSET),
+                            record.getLong(BinaryCDRFormat.END_TIME_OFFSET));
+                } else {
+                    // строка может быть короче максимальной, читаем сколько есть до конца файла
+                    while (record.hasRemaining() && cdrChannel.read(record, position + record.position()) > 0) {
+                        // дочитываем буфер
+                    }
+                    record.flip();
+                    addTextLine(record, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Разбирает строку текстового CDR файла "01, 79996667755, 1710716673, 1710718467" из начала буфера.
+     */
+    private void addTextLine(ByteBuffer line, CDRBuffer target) throws IOException {
+        long[] fields = new long[4];
+        int field = 0;
+        boolean digits = false;
+        while (line.hasRemaining()) {
+            byte b = line.get();
+            if (b >= '0' && b <= '9') {
+                fields[field] = fields[field] * 10 + (b - '0');
+                digits = true;
+            } else if (b == ',') {
+                field++;
+                digits = false;
+                if (field == 4) {
+                    break;
+                }
+            } else if (b == '\n') {
+                break;
+            }
+        }
+        if (field != 3 || !digits) {
+            throw new IOException("Индекс " + indexFile + " указывает на неверную строку CDR файла");
+        }
+        target.add((byte) fields[0], fields[1], fields[2], fields[3]);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new EOFException("Неожиданный конец файла");
+            }
+            current += read;
+        }
+    }
+
+    /**
+     * Builder - построитель индекса, принимает записи в порядке их следования в CDR файле.
+     * Может использоваться как приемник CDR записей при генерации файла.
+     * Хранит номер и позицию каждой записи (16 байт на запись) до записи индекса.
+     */
+    public static class Builder implements CDRSink {
+        private final CDRFileFormat format;
+
+        private long[] recordMsisdns = new long[1024];
+        private long[] recordPositions = new long[1024];
+        private int recordsCount;
+        private long nextPosition;
+
+        /**
+         * @param format формат CDR файла, по нему вычисляются позиции записей
+         */
+        public Builder(CDRFileFormat format) {
+            this.format = format;
+            this.nextPosition = (format == CDRFileFormat.BINARY) ? BinaryCDRFormat.HEADER_SIZE : 0;
+        }
+
+        @Override
+        public void accept(CDRBuffer records) {
+            for (int i = 0; i < records.size(); i++) {
+                add(records.msisdn(i), nextPosition);
+                nextPosition += (format == CDRFileFormat.BINARY) ? BinaryCDRFormat.RECORD_SIZE : records.lineLength(i);
+            }
+        }
+
+        private void add(long msisdn, long position) {
+            if (recordsCount == recordMsisdns.length) {
+                recordMsisdns = Arrays.copyOf(recordMsisdns, recordsCount * 2);
+                recordPositions = Arrays.copyOf(recordPositions, recordsCount * 2);
+            }
+            recordMsisdns[recordsCount] = msisdn;
+            recordPositions[recordsCount] = position;
+            recordsCount++;
+        }
+
+        /**
+         * Записывает индекс для CDR файла. Вызывается после того, как CDR файл полностью записан и закрыт,
+         * так как в индекс сохраняются его размер и время изменения.
+         *
+         * @param cdrFile CDR файл
+         *
+         * @throws IOException если записать индекс не удалось
+         */
+        public void write(File cdrFile) throws IOException {
+            // уникальные номера в порядке возрастания
+            long[] msisdns = Arrays.copyOf(recordMsisdns, recordsCount);
+            Arrays.sort(msisdns);
+            int subscribersCount = 0;
+            for (int i = 0; i < msisdns.length; i++) {
+                if (i == 0 || msisdns[i] != msisdns[i - 1]) {
+                    msisdns[subscribersCount++] = msisdns[i];
+                }
+            }
+            msisdns = Arrays.copyOf(msisdns, subscribersCount);
+
+            // раскладываем позиции по абонентам, внутри абонента позиции остаются в порядке файла
+            int[] counts = new int[subscribersCount];
+            int[] recordEntries = new int[recordsCount];
+            for (int i = 0; i < recordsCount; i++) {
+                recordEntries[i] = Arrays.binarySearch(msisdns, recordMsisdns[i]);
+                counts[recordEntries[i]]++;
+            }
+            long[] firstPositions = new long[subscribersCount];
+            int[] nextSlots = new int[subscribersCount];
+            for (int entry = 1; entry < subscribersCount; entry++) {
+                firstPositions[entry] = firstPositions[entry - 1] + counts[entry - 1];
+            }
+            long[] positions = new long[recordsCount];
+            for (int i = 0; i < recordsCount; i++) {
+                int entry = recordEntries[i];
+                positions[(int) firstPositions[entry] + nextSlots[entry]++] = recordPositions[i];
+            }
+
+            File indexFile = indexFileFor(cdrFile);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(cdrFile.length());
+                output.writeLong(cdrFile.lastModified());
+                output.writeInt(subscribersCount);
+                for (int entry = 0; entry < subscribersCount; entry++) {
+                    output.writeLong(msisdns[entry]);
+                    output.writeLong(firstPositions[entry]);
+                    output.writeInt(counts[entry]);
+                }
+                for (long position : positions) {
+                    output.writeLong(position);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package nexign.task.services.cdr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * CDRFormatConverter - преобразование CDR файлов между текстовым и двоичным форматами.
+ *
+ * Запуск из командной строки: CDRFormatConverter входной_файл выходной_файл [месяц],
+ * направление определяется по расширению входного файла (.txt или .bin).
+ */
+public class CDRFormatConverter {
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Преобразует текстовый CDR файл в двоичный.
+     *
+     * @param textFile текстовый CDR файл
+     * @param binaryFile двоичный CDR файл (перезаписывается)
+     * @param month месяц, записываемый в заголовок
+     *
+     * @return количество преобразованных записей
+     *
+     * @throws IOException если чтение или запись не удались
+     * @throws IllegalArgumentException если в текстовом файле есть строка неверного формата
+     */
+    public static long textToBinary(File textFile, File binaryFile, int month) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(textFile));
+             BinaryCDRWriter writer = new BinaryCDRWriter(binaryFile, month)) {
+            CDRBuffer chunk = new CDRBuffer(CHUNK_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    chunk.add(RecordCDR.fromString(line));
+                }
+                if (chunk.isFull()) {
+                    writer.accept(chunk);
+                    chunk.clear();
+                }
+            }
+            writer.accept(chunk);
+            return writer.getRecordsCount();
+        }
+    }
+
+    /**
+     * Преобразует двоичный CDR файл в текстовый.
+     *
+     * @param binaryFile двоичный CDR файл
+     * @param textFile текстовый CDR файл (перезаписывается)
+     *
+     * @return количество преобразованных записей
+     *
+     * @throws IOException если чтение или запись не удались
+     */
+    public static long binaryToText(File binaryFile, File textFile) throws IOException {
+        try (BinaryCDRReader reader = new BinaryCDRReader(binaryFile);
+             TextCDRWriter writer = new TextCDRWriter(textFile)) {
+            reader.readChunks(new CDRBuffer(CHUNK_SIZE), CHUNK_SIZE, writer);
+            return writer.getRecordsCount();
+        } catch (SQLException e) {
+            // текстовый приемник не работает с базой, сюда выполнение не доходит
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Определяет месяц по имени файла вида cdr_N.txt.
+     *
+     * @param file CDR файл
+     *
+     * @return номер месяца или 0, если имя файла не соответствует шаблону
+     */
+    public static int monthFromFileName(File file) {
+        String name = file.getName();
+        int start = name.indexOf('_');
+        int end = name.indexOf('.');
+        if (start < 0 || end <= start + 1) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(start + 1, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Ожидаемые аргументы: входной_файл выходной_файл [месяц]");
+            return;
+        }
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+
+        try {
+            long converted;
+            if (CDRFileFormat.fromFile(input) == CDRFileFormat.BINARY) {
+                converted = binaryToText(input, output);
+            } else {
+                int month = args.length == 3 ? Integer.parseInt(args[2]) : monthFromFileName(input);
+                converted = textToBinary(input, output, month);
+            }
+            System.out.println("Преобразовано записей: " + converted);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package nexign.task.services.cdr;
+
+/**
+ * Режимы сохранения CDR записей в базу данных.
+ */
+public enum CDRInsertMode {
+    /** каждая запись вставляется отдельным запросом в режиме auto-commit */
+    ROW,
+    /** записи вставляются пакетами через один переиспользуемый запрос, с фиксацией транзакции после каждого пакета */
+    BATCH,
+    /** сначала записывается CDR файл, затем он целиком загружается в таблицу пакетами */
+    FILE;
+
+    /**
+     * Определяет режим по названию из настроек (без учета регистра).
+     *
+     * @param name название режима
+     * @param defaultMode режим, возвращаемый при неизвестном названии
+     *
+     * @return режим сохранения записей
+     */
+    public static CDRInsertMode fromString(String name, CDRInsertMode defaultMode) {
+        for (CDRInsertMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+}
@@ -0,0 +1,295 @@
+package nexign.task.services.cdr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+
+/**
+ * CDRLineParser - разбор строк текстового CDR файла на уровне байт.
+ * Файл читается в переиспользуемый буфер, тип звонка, номер и время разбираются прямо из байт,
+ * поэтому на строку не создается ни одного объекта. Некорректные строки пропускаются и подсчитываются.
+ * Объект не потокобезопасен: каждый поток использует собственный парсер.
+ */
+public class CDRLineParser {
+    /** размер буфера чтения по умолчанию */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Counter PARSED_LINES = Metrics.counter("cdr_parsed_lines_total", "Разобрано строк текстовых CDR файлов");
+    private static final Counter MALFORMED_LINES = Metrics.counter("cdr_malformed_lines_total", "Пропущено некорректных строк CDR файлов");
+
+    /**
+     * Получатель разобранных записей.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * @param callType тип звонка (CDRBuffer.CALL_TYPE_OUTGOING или CDRBuffer.CALL_TYPE_INCOMING)
+         * @param msisdn номер абонента
+         * @param startTime время начала звонка (Unix time)
+         * @param endTime время окончания звонка (Unix time)
+         */
+        void accept(byte callType, long msisdn, long startTime, long endTime);
+    }
+
+    /** источник байт: канал файла (чтение с позиции) или последовательный поток (позиция не используется) */
+    @FunctionalInterface
+    private interface ByteSource {
+        int read(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+
+    private long linesCount;
+    private long malformedLinesCount;
+
+    /** результат разбора последнего числа и позиция после него, чтобы не возвращать пару значений объектом */
+    private long parsedNumber;
+    private int parsedEnd;
+
+    public CDRLineParser() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize размер буфера чтения в байтах (не меньше максимальной длины строки CDR)
+     */
+    public CDRLineParser(int bufferSize) {
+        this.bytes = new byte[Math.max(bufferSize, CDRBuffer.MAX_LINE_LENGTH)];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Разбирает строки файла, которые начинаются в диапазоне байт [start, end).
+     * Строка, начатая до start, относится к предыдущему диапазону, а строка, начатая до end,
+     * дочитывается до конца, поэтому соседние диапазоны покрывают файл без пересечений.
+     *
+     * @param channel канал CDR файла
+     * @param start начало диапазона (в байтах)
+     * @param end конец диапазона (в байтах), Long.MAX_VALUE - до конца файла
+     * @param consumer получатель разобранных записей
+     *
+     * @throws IOException если чтение файла не удалось
+     */
+    public void parse(FileChannel channel, long start, long end, RecordConsumer consumer) throws IOException {
+        // если диапазон начинается не с начала строки, пропускаем ее остаток
+        boolean skipLine = start > 0 && readByte(channel, start - 1) != '\n';
+        parseCounted(channel::read, start, end, skipLine, consumer);
+    }
+
+    /**
+     * Разбирает все строки потока, например распакованного сжатого CDR файла.
+     * Поток читается последовательно и не закрывается.
+     *
+     * @param input поток текстового CDR файла
+     * @param consumer получатель разобранных записей
+     *
+     * @throws IOException если чтение потока не удалось
+     */
+    public void parse(InputStream input, RecordConsumer consumer) throws IOException {
+        parseCounted((target, position) -> {
+            int read = input.read(bytes, target.position(), target.remaining());
+            if (read > 0) {
+                target.position(target.position() + read);
+            }
+            return read;
+        }, 0, Long.MAX_VALUE, false, consumer);
+    }
+
+    private void parseCounted(ByteSource source, long start, long end, boolean skipLine,
+                              RecordConsumer consumer) throws IOException {
+        long linesBefore = linesCount;
+        long malformedBefore = malformedLinesCount;
+        try {
+            parseRange(source, start, end, skipLine, consumer);
+        } finally {
+            // общие счетчики обновляются один раз на диапазон, а не на строку
+            PARSED_LINES.add(linesCount - linesBefore);
+            MALFORMED_LINES.add(malformedLinesCount - malformedBefore);
+        }
+    }
+
+    private void parseRange(ByteSource source, long start, long end, boolean skipLine,
+                            RecordConsumer consumer) throws IOException {
+        long position = start;
+        // строка длиннее буфера не может быть корректной CDR записью
+        boolean overlongLine = false;
+
+        buffer.clear();
+        int filled = 0;
+        int lineStart = 0;
+        // позиция в файле, соответствующая началу буфера
+        long bufferPosition = position;
+        boolean eof = false;
+
+        while (true) {
+            int newline = -1;
+            for (int i = lineStart; i < filled; i++) {
+                if (bytes[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if (newline == -1) {
+                if (eof) {
+                    // последняя строка файла без перевода строки
+                    if (lineStart < filled && !skipLine && bufferPosition + lineStart < end) {
+                        if (overlongLine) {
+                            linesCount++;
+                            malformedLinesCount++;
+                        } else {
+                            parseLine(bytes, lineStart, filled, consumer);
+                        }
+                    }
+                    return;
+                }
+                if (lineStart == 0 && filled == bytes.length) {
+                    if (!skipLine && !overlongLine && bufferPosition >= end) {
+                        return;
+                    }
+                    // буфер заполнен одной строкой: отбрасываем прочитанное до конца строки
+                    overlongLine = !skipLine;
+                    bufferPosition += filled;
+                    filled = 0;
+                } else if (lineStart > 0) {
+                    // переносим незавершенную строку в начало буфера
+                    System.arraycopy(bytes, lineStart, bytes, 0, filled - lineStart);
+                    bufferPosition += lineStart;
+                    filled -= lineStart;
+                    lineStart = 0;
+                }
+
+                buffer.limit(bytes.length).position(filled);
+                int read = source.read(buffer, bufferPosition + filled);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+                continue;
+            }
+
+            long lineFilePosition = bufferPosition + lineStart;
+            if (skipLine) {
+                skipLine = false;
+            } else if (!overlongLine && lineFilePosition >= end) {
+                return;
+            } else if (overlongLine) {
+                overlongLine = false;
+                linesCount++;
+                malformedLinesCount++;
+            } else if (newline > lineStart) {
+                parseLine(bytes, lineStart, newline, consumer);
+            }
+            lineStart = newline + 1;
+        }
+    }
+
+    /**
+     * Разбирает одну строку вида "01, 79123456789, 1709798657, 1709799601" (без перевода строки).
+     *
+     * @param line байты строки
+     * @param from индекс первого байта строки
+     * @param to индекс, следующий за последним байтом строки
+     * @param consumer получатель записи
+     *
+     * @return true, если строка корректна и передана получателю
+     */
+    public boolean parseLine(byte[] line, int from, int to, RecordConsumer consumer) {
+        linesCount++;
+        if (to > from && line[to - 1] == '\r') {
+            to--;
+        }
+
+        byte callType;
+        if (to - from < 2 || line[from] != '0') {
+            malformedLinesCount++;
+            return false;
+        }
+        if (line[from + 1] == '1') {
+            callType = CDRBuffer.CALL_TYPE_OUTGOING;
+        } else if (line[from + 1] == '2') {
+            callType = CDRBuffer.CALL_TYPE_INCOMING;
+        } else {
+            malformedLinesCount++;
+            return false;
+        }
+
+        int position = from + 2;
+        if (!parseField(line, position, to, false)) {
+            malformedLinesCount++;
+            return false;
+        }
+        long msisdn = parsedNumber;
+        if (!parseField(line, parsedEnd, to, false)) {
+            malformedLinesCount++;
+            return false;
+        }
+        long startTime = parsedNumber;
+        if (!parseField(line, parsedEnd, to, true)) {
+            malformedLinesCount++;
+            return false;
+        }
+        long endTime = parsedNumber;
+
+        if (endTime < startTime) {
+            malformedLinesCount++;
+            return false;
+        }
+        consumer.accept(callType, msisdn, startTime, endTime);
+        return true;
+    }
+
+    /**
+     * Разбирает поле ", <число>" начиная с позиции from.
+     * Результат сохраняется в parsedNumber, позиция после числа - в parsedEnd.
+     *
+     * @param last true, если поле последнее в строке и после числа не должно быть других символов
+     */
+    private boolean parseField(byte[] line, int from, int to, boolean last) {
+        if (to - from < 3 || line[from] != ',' || line[from + 1] != ' ') {
+            return false;
+        }
+        int position = from + 2;
+        long value = 0;
+        int digits = 0;
+        while (position < to && line[position] >= '0' && line[position] <= '9') {
+            // 18 цифр гарантированно помещаются в long
+            if (++digits > 18) {
+                return false;
+            }
+            value = value * 10 + (line[position] - '0');
+            position++;
+        }
+        if (digits == 0 || (last && position != to) || (!last && (position == to || line[position] != ','))) {
+            return false;
+        }
+        parsedNumber = value;
+        parsedEnd = position;
+        return true;
+    }
+
+    private byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer single = ByteBuffer.wrap(bytes, 0, 1);
+        return channel.read(single, position) == 1 ? bytes[0] : (byte) '\n';
+    }
+
+    /**
+     * @return количество разобранных строк (включая некорректные)
+     */
+    public long getLinesCount() {
+        return linesCount;
+    }
+
+    /**
+     * @return количество пропущенных некорректных строк
+     */
+    public long getMalformedLinesCount() {
+        return malformedLinesCount;
+    }
+}
@@ -0,0 +1,28 @@
+package nexign.task.services.cdr;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * CDRSink - приемник CDR записей (файл, база данных и т.п.).
+ * Записи передаются в приемник блоками (CDRBuffer) по мере генерации в хронологическом порядке.
+ */
+public interface CDRSink extends AutoCloseable {
+
+    /**
+     * Принимает очередной блок записей о звонках. После возврата блок может быть переиспользован,
+     * поэтому приемник не должен сохранять ссылку на него.
+     *
+     * @param records блок записей о звонках
+     *
+     * @throws IOException если произошла ошибка записи в файл
+     * @throws SQLException если произошла ошибка записи в базу данных
+     */
+    void accept(CDRBuffer records) throws IOException, SQLException;
+
+    /**
+     * Дописывает оставшиеся данные и освобождает ресурсы приемника.
+     */
+    @Override
+    void close() throws IOException, SQLException;
+}
@@ -0,0 +1,156 @@
+package nexign.task.services.cdr;
+
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * CallScheduler - расписание звонков месяца, в котором звонки одного абонента никогда не пересекаются,
+ * а количество звонков всегда равно заданному.
+ *
+ * Звонки распределяются между абонентами случайно (каждый звонок - равновероятно любому абоненту).
+ * Для абонента с n звонками длительностями d_1..d_n сумма пауз F = range - (d_1 + ... + d_n)
+ * делится n упорядоченными равномерными точками p_1 <= ... <= p_n на [0, F), и i-й звонок начинается в
+ * p_i + d_1 + ... + d_(i-1), то есть сразу после всех предыдущих звонков абонента и паузы перед ним.
+ * Поэтому звонок заканчивается не позже начала следующего, и ни один звонок не отбрасывается.
+ * Чтобы звонки абонента поместились в месяц при любой плотности, длительность ограничивается range / n.
+ *
+ * Расписания абонентов строятся лениво (длительности воспроизводятся по собственному генератору абонента)
+ * и сливаются по времени начала через очередь с приоритетом: O(log S) на звонок и O(S) памяти,
+ * где S - количество абонентов, независимо от количества звонков.
+ */
+public class CallScheduler {
+
+    /** расписание звонков одного абонента */
+    private static final class SubscriberTimeline {
+        private final int subscriberIndex;
+        private final int callsCount;
+        private final int maxDuration;
+        private final SplittableRandom durations;
+        private final CallStartTimeSequence pauses;
+
+        private int scheduledCount;
+        /** суммарная длительность уже выданных звонков */
+        private long busySeconds;
+        private long startTime;
+        private long endTime;
+
+        private SubscriberTimeline(int subscriberIndex, long start, long range, int callsCount,
+                                   int callsMaxDuration, long seed) {
+            this.subscriberIndex = subscriberIndex;
+            this.callsCount = callsCount;
+            this.maxDuration = (int) Math.max(1, Math.min(callsMaxDuration, range / callsCount));
+
+            // первый проход по длительностям нужен только для суммы пауз, второй выдает сами звонки
+            SplittableRandom durationsPass = new SplittableRandom(seed);
+            long totalDuration = 0;
+            for (int i = 0; i < callsCount; i++) {
+                totalDuration += durationsPass.nextInt(maxDuration) + 1;
+            }
+            this.durations = new SplittableRandom(seed);
+            this.pauses = new CallStartTimeSequence(start, Math.max(1, range - totalDuration), callsCount,
+                    new SplittableRandom(seed ^ 0x5DEECE66DL));
+            advance();
+        }
+
+        /** вычисляет следующий звонок абонента */
+        private void advance() {
+            long duration = durations.nextInt(maxDuration) + 1;
+            startTime = pauses.next() + busySeconds;
+            endTime = startTime + duration;
+            busySeconds += duration;
+            scheduledCount++;
+        }
+
+        private boolean hasMore() {
+            return scheduledCount < callsCount;
+        }
+    }
+
+    private final PriorityQueue<SubscriberTimeline> timelines = new PriorityQueue<>((a, b) -> {
+        int byStart = Long.compare(a.startTime, b.startTime);
+        return byStart != 0 ? byStart : Integer.compare(a.subscriberIndex, b.subscriberIndex);
+    });
+
+    private int subscriberIndex = -1;
+    private long startTime;
+    private long endTime;
+
+    /**
+     * @param start начало месяца (Unix time)
+     * @param range длина месяца (в секундах), все звонки заканчиваются не позже start + range
+     * @param callsCount количество звонков
+     * @param callsMaxDuration максимальная продолжительность звонка (в секундах)
+     * @param subscribersCount количество абонентов
+     * @param random генератор случайных чисел
+     */
+    public CallScheduler(long start, long range, int callsCount, int callsMaxDuration,
+                         int subscribersCount, RandomGenerator random) {
+        if (range < 1 || callsCount < 0 || callsMaxDuration < 1 || subscribersCount < 0) {
+            throw new IllegalArgumentException("Длина месяца и продолжительность звонка должны быть положительными, " +
+                    "а количество звонков и абонентов - неотрицательным");
+        }
+        if (callsCount > 0 && subscribersCount == 0) {
+            throw new IllegalArgumentException("Нет абонентов для звонков");
+        }
+
+        // случайное распределение звонков по абонентам (полиномиальное)
+        int[] callsPerSubscriber = new int[subscribersCount];
+        for (int i = 0; i < callsCount; i++) {
+            callsPerSubscriber[random.nextInt(subscribersCount)]++;
+        }
+
+        for (int i = 0; i < subscribersCount; i++) {
+            long seed = random.nextLong();
+            if (callsPerSubscriber[i] > range) {
+                throw new IllegalArgumentException("Звонки абонента не помещаются в месяц: " + callsPerSubscriber[i]);
+            }
+            if (callsPerSubscriber[i] > 0) {
+                timelines.add(new SubscriberTimeline(i, start, range, callsPerSubscriber[i], callsMaxDuration, seed));
+            }
+        }
+    }
+
+    /**
+     * @return true, если в расписании остались звонки
+     */
+    public boolean hasNext() {
+        return !timelines.isEmpty();
+    }
+
+    /**
+     * Переходит к следующему звонку в порядке времени начала.
+     *
+     * @return индекс абонента, совершающего звонок
+     */
+    public int next() {
+        SubscriberTimeline timeline = timelines.poll();
+        if (timeline == null) {
+            throw new NoSuchElementException();
+        }
+        subscriberIndex = timeline.subscriberIndex;
+        startTime = timeline.startTime;
+        endTime = timeline.endTime;
+
+        if (timeline.hasMore()) {
+            timeline.advance();
+            timelines.add(timeline);
+        }
+        return subscriberIndex;
+    }
+
+    /**
+     * @return время начала текущего звонка (Unix time)
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return время окончания текущего звонка (Unix time)
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+}
@@ -0,0 +1,63 @@
+package nexign.task.services.cdr;
+
+import java.util.NoSuchElementException;
+import java.util.random.RandomGenerator;
+
+/**
+ * CallStartTimeSequence - последовательность случайных времен начала звонков, равномерно распределенных
+ * на отрезке [start, start + range) и выдаваемых сразу в порядке возрастания.
+ *
+ * Каждое следующее время - минимум из оставшихся равномерно распределенных точек,
+ * он вычисляется за O(1) без хранения и сортировки всех точек:
+ * если k точек уже выдано и последняя равна u, то минимум из оставшихся n - k точек равен
+ * u + (1 - u) * (1 - v^(1 / (n - k))), где v - равномерно распределенное число на (0, 1].
+ */
+public class CallStartTimeSequence {
+    private final long start;
+    private final long range;
+    private final int count;
+    private final RandomGenerator random;
+
+    private int generatedCount;
+    private double current;
+
+    /**
+     * @param start начало отрезка (Unix time)
+     * @param range длина отрезка (в секундах)
+     * @param count количество времен в последовательности
+     * @param random генератор случайных чисел
+     */
+    public CallStartTimeSequence(long start, long range, int count, RandomGenerator random) {
+        if (range < 1 || count < 0) {
+            throw new IllegalArgumentException("Длина отрезка должна быть положительной, а количество - неотрицательным");
+        }
+        this.start = start;
+        this.range = range;
+        this.count = count;
+        this.random = random;
+    }
+
+    /**
+     * @return true, если в последовательности остались времена
+     */
+    public boolean hasNext() {
+        return generatedCount < count;
+    }
+
+    /**
+     * @return следующее время начала звонка, не меньше предыдущего
+     */
+    public long next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int remaining = count - generatedCount;
+        // 1 - nextDouble() лежит в (0, 1], поэтому степень всегда определена
+        double v = 1.0 - random.nextDouble();
+        current += (1.0 - current) * (1.0 - Math.pow(v, 1.0 / remaining));
+        generatedCount++;
+
+        long offset = Math.min((long) (current * range), range - 1);
+        return start + offset;
+    }
+}
@@ -1,8 +1,10 @@
 package nexign.task.services.cdr;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,7 +14,21 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
 
+import nexign.task.database.ConnectionPool;
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.metrics.CDRMonthGeneratedEvent;
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+import nexign.task.utilities.LatencyHistogram;
+import nexign.task.utilities.ApplicationProperties;
+import nexign.task.utilities.SubscriberRegistry;
 import nexign.task.utilities.UtilFunctions;
 
 /**
@@ -21,11 +37,92 @@ import nexign.task.utilities.UtilFunctions;
  *
  */
 public class GeneratorCDR {
+    private static final int MONTHS_IN_YEAR = 12;
+
+    private static final int CALLS_MIN_COUNT = 20;
+    private static final int CALLS_MAX_COUNT = 1000;
+    private static final int CALLS_MAX_DURATION = 3600;
+
+    private static final List<String> CALL_TYPES = List.of("01", "02");
+
+    /** количество записей в блоке, передаваемом приемникам */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** директория CDR файлов */
+    private static final String CDR_DIRECTORY = "cdr_files";
+
+    private static final Counter GENERATED_RECORDS = Metrics.counter("cdr_generated_records_total", "Сгенерировано CDR записей");
+    private static final LatencyHistogram MONTH_GENERATION_TIME =
+            Metrics.timer("cdr_month_generation_seconds", "Время генерации CDR файла месяца вместе с сохранением в базу");
+
+    private final CDRInsertMode insertMode;
+    private final int batchSize;
+    private final CDRFileFormat fileFormat;
+    /** кодек сжатия текстовых CDR файлов */
+    private final CDRCodec codec;
+    /** статистика сжатия CDR файлов */
+    private final CDRCompressionStatistics compressionStatistics = new CDRCompressionStatistics();
+
+    /** директория, в которую записываются и в которой ищутся CDR файлы */
+    private File cdrDirectory = new File(CDR_DIRECTORY);
+    /** количество звонков в месяце (0 - случайное количество от CALLS_MIN_COUNT до CALLS_MAX_COUNT) */
+    private int callsPerMonth;
+    /** реестр абонентов, загруженный заранее (null - реестр загружается из базы при генерации) */
+    private SubscriberRegistry subscriberRegistry;
+
+    /** статистика сохранения записей в базу за все сгенерированные месяцы, месяцы могут генерироваться параллельно */
+    private final LongAdder insertedRecordsCount = new LongAdder();
+    private final LongAdder insertElapsedNanos = new LongAdder();
+    private final LongAdder rejectedRecordsCount = new LongAdder();
+
+    /**
+     * Создает генератор с режимом сохранения в базу, форматом и сжатием файлов, заданными в application.properties
+     * (cdr.insert.mode, cdr.insert.batchSize, cdr.file.format и cdr.file.compression).
+     */
+    public GeneratorCDR() {
+        this(CDRInsertMode.fromString(ApplicationProperties.getString("cdr.insert.mode", "batch"), CDRInsertMode.BATCH),
+                ApplicationProperties.getInt("cdr.insert.batchSize", 1000),
+                CDRFileFormat.fromString(ApplicationProperties.getString("cdr.file.format", "text"), CDRFileFormat.TEXT),
+                CDRCodecs.fromString(ApplicationProperties.getString("cdr.file.compression", "none"), CDRCodecs.IDENTITY));
+    }
+
+    /**
+     * Создает генератор, записывающий CDR файлы в текстовом формате.
+     *
+     * @param insertMode режим сохранения CDR записей в базу
+     * @param batchSize количество записей в одном пакете (для режимов BATCH и FILE)
+     */
+    public GeneratorCDR(CDRInsertMode insertMode, int batchSize) {
+        this(insertMode, batchSize, CDRFileFormat.TEXT);
+    }
+
     /**
-     * activeCalls - хранит активные звонки в виде отображения между номером телефона и временем завершения звонка.
-     * Добавлен для предотвращения ситуаций, когда абонент совершает одновременно 2 звонка
+     * @param insertMode режим сохранения CDR записей в базу
+     * @param batchSize количество записей в одном пакете (для режимов BATCH и FILE)
+     * @param fileFormat формат CDR файлов
      */
-    private Map<String, Long> activeCalls = new HashMap<>();
+    public GeneratorCDR(CDRInsertMode insertMode, int batchSize, CDRFileFormat fileFormat) {
+        this(insertMode, batchSize, fileFormat, CDRCodecs.IDENTITY);
+    }
+
+    /**
+     * @param insertMode режим сохранения CDR записей в базу
+     * @param batchSize количество записей в одном пакете (для режимов BATCH и FILE)
+     * @param fileFormat формат CDR файлов
+     * @param codec кодек сжатия файлов (поддерживается только текстовым форматом)
+     */
+    public GeneratorCDR(CDRInsertMode insertMode, int batchSize, CDRFileFormat fileFormat, CDRCodec codec) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        if (fileFormat == CDRFileFormat.BINARY && codec.isCompressing()) {
+            throw new IllegalArgumentException("Сжатие поддерживается только для текстовых CDR файлов");
+        }
+        this.insertMode = insertMode;
+        this.batchSize = batchSize;
+        this.fileFormat = fileFormat;
+        this.codec = codec;
+    }
 
     /**
      * Генерирует CDR файлы для всех месяцев в указанном году
@@ -37,28 +134,140 @@ public class GeneratorCDR {
      * @return список сгенерированных файлов CDR
      */
     public List<File> generateCDRs(Connection connection, int year){
-        Random random = new Random();
+        return generateCDRs(connection, year, new Random().nextLong());
+    }
+
+    /**
+     * Последовательно генерирует CDR файлы для всех месяцев в указанном году.
+     * Результат совпадает с результатом параллельной генерации с тем же начальным значением.
+     *
+     * @param connection соединение с базой данных для сохранения записей о звонках
+     * @param year год, за который генерируются CDR файлы
+     * @param seed начальное значение генератора случайных чисел
+     *
+     * @return список сгенерированных файлов CDR в порядке месяцев
+     */
+    public List<File> generateCDRs(Connection connection, int year, long seed) {
         List<File> reportsCDR = new ArrayList<>();
 
-        final int monthsInYear = 12;
+        SubscriberRegistry subscribers = subscriberRegistry(connection);
+        List<SplittableRandom> monthRandoms = createMonthRandoms(seed);
+
+        for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+            reportsCDR.add(generateMonthCDR(month, year, subscribers, monthRandoms.get(month - 1), connection));
+        }
+
+        return reportsCDR;
+    }
+
+    /**
+     * Находит уже сгенерированные CDR файлы текущего формата без повторной генерации.
+     *
+     * @return список CDR файлов в порядке месяцев (до первого отсутствующего месяца)
+     */
+    public List<File> findCDRFiles() {
+        List<File> cdrFiles = new ArrayList<>();
+        for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+            File file = new File(cdrDirectory, cdrFileName(month));
+            if (!file.isFile()) {
+                break;
+            }
+            cdrFiles.add(file);
+        }
+        return cdrFiles;
+    }
+
+    /**
+     * Генерирует CDR файлы для всех месяцев в указанном году параллельно.
+     * Каждый месяц генерируется в отдельной задаче с собственным генератором случайных чисел
+     * и собственным соединением из пула, поэтому при одном и том же начальном значении
+     * файлы получаются одинаковыми при любом количестве потоков.
+     *
+     * @param pool пул соединений с базой данных, размер пула должен быть больше количества потоков
+     * @param year год, за который генерируются CDR файлы
+     * @param seed начальное значение генератора случайных чисел
+     * @param parallelism количество потоков для генерации
+     *
+     * @return список сгенерированных файлов CDR в порядке месяцев
+     */
+    public List<File> generateCDRs(ConnectionPool pool, int year, long seed, int parallelism) {
+        SubscriberRegistry subscribers;
+        try (Connection connection = pool.getConnection()) {
+            subscribers = subscriberRegistry(connection);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
 
-        final int callsMinCount = 20;
-        final int callsMaxCount = 1000;
-        final int callsMaxDuration = 3600;
+        List<SplittableRandom> monthRandoms = createMonthRandoms(seed);
+        List<Callable<File>> tasks = new ArrayList<>();
 
-        List<String> subscribers = UtilFunctions.getAllSubscribers(connection);
-        List<String> callTypes = List.of("01", "02");
+        for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+            final int currentMonth = month;
+            tasks.add(() -> {
+                try (Connection connection = pool.getConnection()) {
+                    return generateMonthCDR(currentMonth, year, subscribers, monthRandoms.get(currentMonth - 1), connection);
+                }
+            });
+        }
 
-        for (int month = 1; month <= monthsInYear; month++) {
-            int callsCount = UtilFunctions.getIntegerInRange(callsMinCount, callsMaxCount);
-            File monthCDR = generateMonthCDR(month, year, callsCount,
-                    callsMaxDuration, subscribers, callTypes, random, connection);
-            reportsCDR.add(monthCDR);
+        List<File> reportsCDR = new ArrayList<>();
+        ForkJoinPool executor = new ForkJoinPool(Math.max(1, Math.min(parallelism, MONTHS_IN_YEAR)));
+        try {
+            // invokeAll возвращает результаты в порядке задач, то есть в порядке месяцев
+            for (Future<File> monthCDR : executor.invokeAll(tasks)) {
+                reportsCDR.add(monthCDR.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            e.printStackTrace();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            executor.shutdown();
         }
 
         return reportsCDR;
     }
 
+    /**
+     * @return заданный реестр абонентов или реестр, загруженный из базы
+     */
+    private SubscriberRegistry subscriberRegistry(Connection connection) {
+        return subscriberRegistry != null ? subscriberRegistry : UtilFunctions.getSubscriberRegistry(connection);
+    }
+
+    /**
+     * Создает независимые генераторы случайных чисел для каждого месяца.
+     * Генераторы получаются последовательно из одного корневого генератора,
+     * поэтому зависят только от начального значения, но не от порядка выполнения месяцев.
+     *
+     * @param seed начальное значение корневого генератора
+     *
+     * @return генераторы для месяцев с 1 по 12
+     */
+    private List<SplittableRandom> createMonthRandoms(long seed) {
+        SplittableRandom rootRandom = new SplittableRandom(seed);
+        List<SplittableRandom> monthRandoms = new ArrayList<>();
+        for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+            monthRandoms.add(rootRandom.split());
+        }
+        return monthRandoms;
+    }
+
+    /**
+     * Генерирует CDR файл для месяца со случайным количеством звонков.
+     */
+    private File generateMonthCDR(int month, int year, SubscriberRegistry subscribers,
+                                  RandomGenerator random, Connection connection) {
+        // случайное количество выбирается всегда, чтобы остальные случайные значения месяца от него не зависели
+        int callsCount = random.nextInt(CALLS_MIN_COUNT, CALLS_MAX_COUNT + 1);
+        if (callsPerMonth > 0) {
+            callsCount = callsPerMonth;
+        }
+        return generateMonthCDR(month, year, callsCount, CALLS_MAX_DURATION, subscribers, CALL_TYPES, random, connection);
+    }
+
     /**
      * Генерирует CDR файл для конкретного месяца указанного года на основе случайных данных о звонках.
      *
@@ -76,64 +285,260 @@ public class GeneratorCDR {
     private File generateMonthCDR(int month, int year, int callsCount, int callsMaxDuration,
                                              List<String> subscribers, List<String> callTypes,
                                              Random random, Connection connection){
-        // очищаем список активных звонков с прошлого месяца
-        activeCalls.clear();
-        List<RecordCDR> monthCDR = new ArrayList<>();
+        return generateMonthCDR(month, year, callsCount, callsMaxDuration, SubscriberRegistry.of(subscribers), callTypes,
+                (RandomGenerator) random, connection);
+    }
+
+    // доступен в пакете для бенчмарка генерации CDR
+    File generateMonthCDR(int month, int year, int callsCount, int callsMaxDuration,
+                          SubscriberRegistry subscribers, List<String> callTypes,
+                          RandomGenerator random, Connection connection) {
+        long generationStart = System.nanoTime();
+        CDRMonthGeneratedEvent event = new CDRMonthGeneratedEvent();
+        event.begin();
+        // типы звонков переводим в числа один раз на месяц, номера абонентов уже хранятся в реестре числами
+        byte[] callTypeCodes = new byte[callTypes.size()];
+        for (int i = 0; i < callTypeCodes.length; i++) {
+            callTypeCodes[i] = CDRBuffer.parseCallType(callTypes.get(i));
+        }
 
-        File directory = new File("cdr_files");
-        if (!directory.exists()) { directory.mkdir(); }
+        File directory = cdrDirectory;
+        directory.mkdirs();
 
-        File file = new File(directory, "cdr_" + month + ".txt");
+        File file = new File(directory, cdrFileName(month));
 
+        // месяц генерируется заново: очищается только его таблица, остальные месяцы не затрагиваются
+        DatabaseInitializer.truncateCDRMonth(connection, month);
 
-        try (FileWriter writer = new FileWriter(file)) {
-            // определяем начало и конец месяца в Unix time
-            LocalDateTime startOfMonth = LocalDateTime.of(year, month, 1, 0, 0);
-            LocalDateTime endOfMonth = startOfMonth.plusMonths(1).minusSeconds(1);
+        // определяем начало и конец месяца в Unix time
+        LocalDateTime startOfMonth = LocalDateTime.of(year, month, 1, 0, 0);
+        LocalDateTime endOfMonth = startOfMonth.plusMonths(1).minusSeconds(1);
 
-            long startUnixTime = startOfMonth.toInstant(ZoneOffset.UTC).getEpochSecond();
-            long endUnixTime = endOfMonth.toInstant(ZoneOffset.UTC).getEpochSecond();
-            long unixTimeRange = endUnixTime - startUnixTime;
+        long startUnixTime = startOfMonth.toInstant(ZoneOffset.UTC).getEpochSecond();
+        long endUnixTime = endOfMonth.toInstant(ZoneOffset.UTC).getEpochSecond();
+        long unixTimeRange = endUnixTime - startUnixTime;
 
-            // генерируем записи о звонках до нужного количества
-            for (int i = 0; i <= callsCount; i++) {
-                String callingPhoneNumber = subscribers.get(random.nextInt(subscribers.size()));
-                String callType = callTypes.get(random.nextInt(2));
+        // звонки выдаются сразу в хронологическом порядке, звонки одного абонента не пересекаются,
+        // и их ровно callsCount - отбрасывать пересекающиеся звонки не нужно
+        CallScheduler schedule = new CallScheduler(startUnixTime, unixTimeRange, callsCount, callsMaxDuration,
+                subscribers.size(), random);
+        // записи накапливаются в небольшом блоке и передаются приемникам по мере его заполнения
+        CDRBuffer chunk = new CDRBuffer(CHUNK_SIZE);
+        // индекс позиций записей по абонентам для отчетов по одному абоненту
+        // (позиции в сжатом файле не соответствуют позициям строк, поэтому для него индекс не строится)
+        CDRFileIndex.Builder indexBuilder = codec.isCompressing() ? null : new CDRFileIndex.Builder(fileFormat);
 
-                long startTime = startUnixTime + random.nextInt((int) unixTimeRange);
-                long endTime = startTime + random.nextInt(callsMaxDuration) + 1;
+        try (CDRSink fileSink = createFileSink(file, month);
+             CDRSink databaseSink = createDatabaseSink(connection)) {
 
-                // проверяем, не находится ли абонент в активном звонке в это время
-                if (activeCalls.containsKey(callingPhoneNumber)) {
-                    long activeCallEndTime = activeCalls.get(callingPhoneNumber);
-                    if (startTime < activeCallEndTime) {
-                        // если абонент во время нового сгенерированного звонка уже говорит с кем-то - пропускаем этот звонок
-                        continue;
+            // генерируем записи о звонках до нужного количества и сразу передаем их в файл и в базу
+            // ошибка базы данных не прерывает запись CDR файла: после нее записи месяца в базу не передаются
+            boolean databaseAvailable = true;
+            while (schedule.hasNext()) {
+                int subscriberIndex = schedule.next();
+                byte callType = callTypeCodes[random.nextInt(callTypeCodes.length)];
+
+                chunk.add(callType, subscribers.msisdn(subscriberIndex), schedule.getStartTime(), schedule.getEndTime());
+
+                if (chunk.isFull()) {
+                    fileSink.accept(chunk);
+                    databaseAvailable = databaseAvailable && acceptIntoDatabase(databaseSink, chunk, month);
+                    if (indexBuilder != null) {
+                        indexBuilder.accept(chunk);
                     }
+                    chunk.clear();
                 }
+            }
+            fileSink.accept(chunk);
+            if (databaseAvailable) {
+                acceptIntoDatabase(databaseSink, chunk, month);
+            }
+            if (indexBuilder != null) {
+                indexBuilder.accept(chunk);
+            }
+            GENERATED_RECORDS.add(callsCount);
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+        }
 
-                RecordCDR record = new RecordCDR(callType, callingPhoneNumber, startTime, endTime);
-                monthCDR.add(record);
-                activeCalls.put(callingPhoneNumber, endTime);
+        // индекс по абонентам записывается после закрытия CDR файла, так как в нем сохраняются размер и время изменения файла
+        if (indexBuilder != null) {
+            try {
+                indexBuilder.write(file);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
 
-            // сортируем (по времени начала звонка), чтобы сгенерированные записи шли в CDR файле в хронологическом порядке
-            Collections.sort(monthCDR);
+        // в режиме FILE загружаем в базу уже закрытый и полностью записанный файл
+        if (insertMode == CDRInsertMode.FILE) {
+            loadCDRFileIntoDatabase(file, connection);
+        }
 
-            // записываем каждую запись CDR в файл и вставляем её в базу данных
-            for (RecordCDR record : monthCDR) {
-                writer.write(record + "\n");
-                insertTransactionIntoDatabase(record, connection);
-            }
+        MONTH_GENERATION_TIME.record(System.nanoTime() - generationStart);
+        if (event.shouldCommit()) {
+            event.year = year;
+            event.month = month;
+            event.fileName = file.getName();
+            event.recordsCount = callsCount;
+            event.bytesCount = file.length();
+            event.commit();
+        }
+        return file;
+    }
+
+    /**
+     * Передает блок записей в базу данных.
+     *
+     * @return false, если сохранить записи не удалось (ошибка выводится в консоль)
+     */
+    private static boolean acceptIntoDatabase(CDRSink databaseSink, CDRBuffer chunk, int month) {
+        try {
+            databaseSink.accept(chunk);
+            return true;
         } catch (IOException | SQLException e) {
+            System.err.println("Записи месяца " + month + " не сохраняются в базу, CDR файл записывается дальше");
             e.printStackTrace();
+            return false;
         }
+    }
 
-        return file;
+    /**
+     * @return имя CDR файла месяца с учетом формата и сжатия (например, cdr_1.txt.gz)
+     */
+    private String cdrFileName(int month) {
+        return "cdr_" + month + fileFormat.getExtension() + codec.getExtension();
+    }
+
+    /**
+     * Создает приемник, записывающий записи в CDR файл в формате генератора.
+     *
+     * @param file CDR файл
+     * @param month месяц, за который записываются звонки
+     *
+     * @return приемник CDR записей
+     *
+     * @throws IOException если файл не удалось открыть для записи
+     */
+    private CDRSink createFileSink(File file, int month) throws IOException {
+        if (fileFormat == CDRFileFormat.BINARY) {
+            return new BinaryCDRWriter(file, month);
+        }
+        return new TextCDRWriter(file, codec, compressionStatistics);
     }
 
     /**
-     * Вставляет запись о звонке в базу данных.
+     * Создает приемник, сохраняющий записи в базу данных в соответствии с режимом генератора.
+     * В режиме FILE записи сохраняются после записи файла, поэтому приемник ничего не делает.
+     *
+     * @param connection соединение с базой данных
+     *
+     * @return приемник CDR записей
+     *
+     * @throws SQLException если не удалось подготовить запрос
+     */
+    private CDRSink createDatabaseSink(Connection connection) throws SQLException {
+        switch (insertMode) {
+            case ROW:
+                return new CDRSink() {
+                    @Override
+                    public void accept(CDRBuffer records) throws SQLException {
+                        for (int i = 0; i < records.size(); i++) {
+                            RecordCDR record = records.get(i);
+                            long start = System.nanoTime();
+                            try {
+                                insertTransactionIntoDatabase(record, connection);
+                                insertedRecordsCount.increment();
+                                CDRBatchInserter.INSERTED_RECORDS.increment();
+                            } catch (SQLException e) {
+                                // некорректная запись пропускается, остальные записи сохраняются
+                                rejectedRecordsCount.increment();
+                                System.err.println("Не удалось сохранить CDR запись " + record + ": " + e.getMessage());
+                            }
+                            insertElapsedNanos.add(System.nanoTime() - start);
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            case BATCH:
+                return new CDRBatchInserter(connection, batchSize) {
+                    @Override
+                    public void close() throws SQLException {
+                        try {
+                            super.close();
+                        } finally {
+                            insertedRecordsCount.add(getInsertedCount());
+                            rejectedRecordsCount.add(getRejectedCount());
+                            insertElapsedNanos.add(getElapsedNanos());
+                        }
+                    }
+                };
+            default:
+                return new CDRSink() {
+                    @Override
+                    public void accept(CDRBuffer records) {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+        }
+    }
+
+    /**
+     * Загружает готовый CDR файл в таблицу CDR пакетами.
+     * Формат файла (текстовый или двоичный) и сжатие определяются по расширению.
+     *
+     * @param cdrFile CDR файл
+     * @param connection соединение с базой данных
+     *
+     * @return количество загруженных записей
+     */
+    public long loadCDRFileIntoDatabase(File cdrFile, Connection connection) {
+        long loadedCount = 0;
+
+        try (CDRBatchInserter inserter = new CDRBatchInserter(connection, batchSize)) {
+            CDRBuffer chunk = new CDRBuffer(CHUNK_SIZE);
+
+            if (CDRFileFormat.fromFile(cdrFile) == CDRFileFormat.BINARY) {
+                try (BinaryCDRReader reader = new BinaryCDRReader(cdrFile)) {
+                    reader.readChunks(chunk, CHUNK_SIZE, inserter);
+                }
+            } else {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        CDRCodecs.forFile(cdrFile).decompress(new FileInputStream(cdrFile))))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty()) {
+                            chunk.add(RecordCDR.fromString(line));
+                        }
+                        if (chunk.isFull()) {
+                            inserter.accept(chunk);
+                            chunk.clear();
+                        }
+                    }
+                    inserter.accept(chunk);
+                }
+            }
+            inserter.flush();
+
+            loadedCount = inserter.getInsertedCount();
+            insertedRecordsCount.add(loadedCount);
+            rejectedRecordsCount.add(inserter.getRejectedCount());
+            insertElapsedNanos.add(inserter.getElapsedNanos());
+        } catch (IOException | SQLException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+
+        return loadedCount;
+    }
+
+    /**
+     * Вставляет запись о звонке в таблицу месяца начала звонка (с заменой записи с тем же ключом).
      *
      * @param record запись о звонке (RecordCDR)
      * @param connection соединение с базой данных
@@ -141,10 +546,8 @@ public class GeneratorCDR {
      * @throws SQLException если произошла ошибка при выполнении SQL-запроса
      */
     private void insertTransactionIntoDatabase(RecordCDR record, Connection connection) throws SQLException {
-        String sql = "insert into cdr (call_type, msisdn, start_time_unix, end_time_unix) " +
-                "values (?, ?, ?, ?)";
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = connection.prepareStatement(
+                CDRBatchInserter.upsertSql(CDRBatchInserter.monthOf(record.startTimeUnix())))) {
             statement.setString(1, record.callType());
             statement.setString(2, record.phoneNumber());
             statement.setLong(3, record.startTimeUnix());
@@ -154,4 +557,93 @@ public class GeneratorCDR {
         }
     }
 
+    /**
+     * Выводит в консоль степень и скорость сжатия CDR файлов, если файлы сжимаются.
+     */
+    public void printCompressionStatistics() {
+        compressionStatistics.print("Сжатие CDR файлов (" + codec.getName() + ")");
+    }
+
+    /**
+     * @return статистика сжатия CDR файлов этим генератором
+     */
+    public CDRCompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /**
+     * Задает директорию CDR файлов вместо cdr_files (например, временную директорию для замеров).
+     *
+     * @param cdrDirectory директория CDR файлов
+     */
+    public void setCDRDirectory(File cdrDirectory) {
+        this.cdrDirectory = cdrDirectory;
+    }
+
+    /**
+     * Задает одинаковое количество звонков во всех месяцах вместо случайного.
+     *
+     * @param callsPerMonth количество звонков в месяце (0 - случайное количество)
+     */
+    public void setCallsPerMonth(int callsPerMonth) {
+        if (callsPerMonth < 0) {
+            throw new IllegalArgumentException("Количество звонков не может быть отрицательным");
+        }
+        this.callsPerMonth = callsPerMonth;
+    }
+
+    /**
+     * Задает реестр абонентов, уже загруженный из базы, чтобы не загружать его повторно при генерации.
+     *
+     * @param subscriberRegistry реестр абонентов (null - загружать из базы)
+     */
+    public void setSubscriberRegistry(SubscriberRegistry subscriberRegistry) {
+        this.subscriberRegistry = subscriberRegistry;
+    }
+
+    /**
+     * @return время, затраченное на сохранение записей в базу (в наносекундах, суммарно по всем потокам)
+     */
+    public long getInsertElapsedNanos() {
+        return insertElapsedNanos.sum();
+    }
+
+    /**
+     * @return количество CDR записей, сохраненных в базу этим генератором
+     */
+    public long getInsertedRecordsCount() {
+        return insertedRecordsCount.sum();
+    }
+
+    /**
+     * @return количество CDR записей, которые не удалось сохранить в базу и которые были пропущены
+     */
+    public long getRejectedRecordsCount() {
+        return rejectedRecordsCount.sum();
+    }
+
+    /**
+     * @return скорость сохранения записей в базу (записей в секунду)
+     */
+    public double getInsertRate() {
+        long elapsedNanos = insertElapsedNanos.sum();
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+        return insertedRecordsCount.sum() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Выводит в консоль статистику сохранения CDR записей в базу.
+     * При параллельной генерации время суммируется по всем потокам.
+     */
+    public void printInsertStatistics() {
+        System.out.printf("Сохранено CDR записей: %d за %d мс (%.0f записей/с, режим %s)%n",
+                insertedRecordsCount.sum(), insertElapsedNanos.sum() / 1_000_000, getInsertRate(),
+                insertMode.name().toLowerCase());
+        if (rejectedRecordsCount.sum() > 0) {
+            System.err.println("Не удалось сохранить CDR записей: " + rejectedRecordsCount.sum());
+        }
+    }
+
 }
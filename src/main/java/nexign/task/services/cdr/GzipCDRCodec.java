@@ -0,0 +1,34 @@
+package nexign.task.services.cdr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GzipCDRCodec - сжатие CDR файлов в формате gzip (cdr_N.txt.gz), файлы читаются стандартными утилитами.
+ */
+public class GzipCDRCodec implements CDRCodec {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,30 @@
+package nexign.task.services.cdr;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * IdentityCDRCodec - CDR файлы без сжатия.
+ */
+public class IdentityCDRCodec implements CDRCodec {
+
+    @Override
+    public String getName() {
+        return "none";
+    }
+
+    @Override
+    public String getExtension() {
+        return "";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
@@ -3,6 +3,28 @@ package nexign.task.services.cdr;
 public record RecordCDR(String callType, String phoneNumber, long startTimeUnix, long endTimeUnix)
         implements Comparable<RecordCDR> {
 
+    /**
+     * Создает запись по строке CDR файла в формате "01, 79996667755, 1710716673, 1710718467".
+     *
+     * @param line строка CDR файла
+     *
+     * @return запись о звонке
+     *
+     * @throws IllegalArgumentException если строка не соответствует формату CDR
+     */
+    public static RecordCDR fromString(String line) {
+        String[] dataParts = line.split(", ");
+        if (dataParts.length != 4) {
+            throw new IllegalArgumentException("Неверный формат CDR записи: " + line);
+        }
+        try {
+            return new RecordCDR(dataParts[0], dataParts[1],
+                    Long.parseLong(dataParts[2]), Long.parseLong(dataParts[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверный формат CDR записи: " + line, e);
+        }
+    }
+
     @Override
     public int compareTo(RecordCDR other) {
         // Сравнение CDR записей по времени начала звонка
@@ -0,0 +1,105 @@
+package nexign.task.services.cdr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * TextCDRWriter - запись CDR записей в текстовый файл, по одной записи в строке
+ * в формате "01, 79996667755, 1710716673, 1710718467".
+ * Строки формируются сразу в байтовый буфер из примитивных полей, без промежуточных строк.
+ * Файл может сжиматься кодеком (CDRCodec), тогда время сжатия и объем файла учитываются в статистике.
+ */
+public class TextCDRWriter implements CDRSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final OutputStream outputStream;
+    private final CDRCodec codec;
+    private final CDRCompressionStatistics compressionStatistics;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+
+    private long recordsCount;
+    private long bytesWritten;
+    /** время записи в сжимающий поток (в наносекундах) */
+    private long compressionNanos;
+
+    /**
+     * @param file файл, в который будут записаны CDR записи (перезаписывается)
+     *
+     * @throws IOException если файл не удалось открыть для записи
+     */
+    public TextCDRWriter(File file) throws IOException {
+        this(file, CDRCodecs.IDENTITY, null);
+    }
+
+    /**
+     * @param file файл, в который будут записаны CDR записи (перезаписывается)
+     * @param codec кодек сжатия файла
+     * @param compressionStatistics статистика сжатия (null - не учитывать)
+     *
+     * @throws IOException если файл не удалось открыть для записи
+     */
+    public TextCDRWriter(File file, CDRCodec codec, CDRCompressionStatistics compressionStatistics) throws IOException {
+        this.file = file;
+        this.codec = codec;
+        this.compressionStatistics = compressionStatistics;
+        FileOutputStream fileStream = new FileOutputStream(file);
+        try {
+            this.outputStream = codec.compress(fileStream);
+        } catch (IOException e) {
+            fileStream.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void accept(CDRBuffer records) throws IOException {
+        for (int i = 0; i < records.size(); i++) {
+            if (buffer.length - bufferPosition < CDRBuffer.MAX_LINE_LENGTH) {
+                flushBuffer();
+            }
+            int lineStart = bufferPosition;
+            bufferPosition = records.appendLine(i, buffer, bufferPosition);
+            bytesWritten += bufferPosition - lineStart;
+            recordsCount++;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        long start = System.nanoTime();
+        outputStream.write(buffer, 0, bufferPosition);
+        compressionNanos += System.nanoTime() - start;
+        bufferPosition = 0;
+    }
+
+    /**
+     * @return количество записанных записей
+     */
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+
+    /**
+     * @return количество записанных байт (до сжатия)
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            long start = System.nanoTime();
+            outputStream.close();
+            compressionNanos += System.nanoTime() - start;
+        }
+        if (compressionStatistics != null && codec.isCompressing()) {
+            compressionStatistics.record(bytesWritten, file.length(), compressionNanos);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package nexign.task.services.udr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AsyncUDRReportWriter - асинхронная запись UDR отчетов.
+ * Задания на запись помещаются в ограниченную очередь и выполняются отдельными потоками записи,
+ * поэтому агрегация не ждет диск. Если очередь заполнена, отправитель ждет (обратное давление),
+ * и количество подготовленных, но не записанных отчетов в памяти ограничено.
+ * Метод flush() ждет завершения всех отправленных заданий, close() дополнительно останавливает потоки.
+ * Ошибка записи не останавливает поток записи: остальные задания выполняются, а первая ошибка
+ * выбрасывается из flush() и close().
+ */
+public class AsyncUDRReportWriter implements AutoCloseable {
+    /** количество записей одного задания при записи отдельных файлов абонентов */
+    static final int RECORDS_PER_TASK = 1024;
+
+    /**
+     * Задание на запись отчетов за месяц.
+     *
+     * @param directory директория для сохранения отчетов
+     * @param month месяц
+     * @param udrs UDR записи
+     * @param submitNanos время постановки в очередь
+     */
+    private record WriteTask(File directory, int month, Collection<RecordUDR> udrs, long submitNanos) {}
+
+    /** задание, по которому поток записи завершает работу */
+    private static final WriteTask STOP = new WriteTask(null, 0, List.of(), 0);
+
+    private final UDRReportWriter reportWriter;
+    private final BlockingQueue<WriteTask> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+
+    /** количество отправленных, но еще не записанных заданий */
+    private final AtomicLong pendingTasks = new AtomicLong();
+    private final Object pendingLock = new Object();
+    private volatile boolean closed;
+    /** первая ошибка записи */
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private final LongAdder tasksCount = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAccumulator maxWriteNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder backpressureNanos = new LongAdder();
+    private final LongAccumulator peakQueueDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param reportWriter запись отчетов, которую выполняют потоки
+     * @param threadsCount количество потоков записи
+     * @param queueCapacity максимальное количество заданий в очереди
+     */
+    public AsyncUDRReportWriter(UDRReportWriter reportWriter, int threadsCount, int queueCapacity) {
+        if (threadsCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Количество потоков и размер очереди должны быть положительными");
+        }
+        this.reportWriter = reportWriter;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (int i = 0; i < threadsCount; i++) {
+            Thread thread = new Thread(this::runWriter, "udr-report-writer-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            writerThreads.add(thread);
+        }
+    }
+
+    /**
+     * Отправляет отчеты за месяц на запись. Если очередь заполнена, ждет освобождения места.
+     * Коллекция не должна изменяться до завершения записи.
+     *
+     * @param directory директория для сохранения отчетов
+     * @param month месяц
+     * @param udrs UDR записи абонентов
+     */
+    public void submit(File directory, int month, Collection<RecordUDR> udrs) {
+        if (closed) {
+            throw new IllegalStateException("Запись отчетов уже завершена");
+        }
+        if (reportWriter.getLayout() == UDRReportLayout.NDJSON || udrs.size() <= RECORDS_PER_TASK) {
+            enqueue(new WriteTask(directory, month, udrs, System.nanoTime()));
+        } else {
+            // отдельные файлы абонентов записываются частями, чтобы их писали все потоки
+            List<RecordUDR> records = new ArrayList<>(udrs);
+            for (int from = 0; from < records.size(); from += RECORDS_PER_TASK) {
+                List<RecordUDR> part = records.subList(from, Math.min(records.size(), from + RECORDS_PER_TASK));
+                enqueue(new WriteTask(directory, month, part, System.nanoTime()));
+            }
+        }
+    }
+
+    private void enqueue(WriteTask task) {
+        pendingTasks.incrementAndGet();
+        try {
+            if (!queue.offer(task)) {
+                long waitStart = System.nanoTime();
+                queue.put(task);
+                backpressureNanos.add(System.nanoTime() - waitStart);
+            }
+            peakQueueDepth.accumulate(queue.size());
+        } catch (InterruptedException e) {
+            taskDone();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Отправка отчетов на запись прервана", e);
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            WriteTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                reportWriter.writeMonth(task.directory(), task.month(), task.udrs());
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                long end = System.nanoTime();
+                tasksCount.increment();
+                queueWaitNanos.add(start - task.submitNanos());
+                writeNanos.add(end - start);
+                maxWriteNanos.accumulate(end - start);
+                taskDone();
+            }
+        }
+    }
+
+    private void taskDone() {
+        if (pendingTasks.decrementAndGet() == 0) {
+            synchronized (pendingLock) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Ждет, пока все отправленные отчеты будут записаны.
+     *
+     * @throws IllegalStateException если запись какого-либо задания не удалась
+     */
+    public void flush() {
+        awaitPendingTasks();
+        throwIfFailed();
+    }
+
+    private void awaitPendingTasks() {
+        synchronized (pendingLock) {
+            while (pendingTasks.get() > 0) {
+                try {
+                    pendingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ожидание записи отчетов прервано", e);
+                }
+            }
+        }
+    }
+
+    private void throwIfFailed() {
+        RuntimeException error = failure.get();
+        if (error != null) {
+            throw new IllegalStateException("Не удалось записать отчеты", error);
+        }
+    }
+
+    /**
+     * Дожидается записи всех отчетов и останавливает потоки записи.
+     *
+     * @throws IllegalStateException если запись какого-либо задания не удалась
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            awaitPendingTasks();
+        } finally {
+            closed = true;
+            try {
+                for (int i = 0; i < writerThreads.size(); i++) {
+                    queue.put(STOP);
+                }
+                for (Thread thread : writerThreads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * @return текущее количество заданий в очереди
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return наибольшее количество заданий в очереди
+     */
+    public long getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * Выводит статистику асинхронной записи: задания, глубину очереди, задержки записи и ожидания.
+     */
+    public void printStatistics() {
+        long tasks = tasksCount.sum();
+        double averageWriteMillis = tasks > 0 ? writeNanos.sum() / 1_000_000.0 / tasks : 0;
+        double averageQueueMillis = tasks > 0 ? queueWaitNanos.sum() / 1_000_000.0 / tasks : 0;
+
+        System.out.printf("Асинхронная запись отчетов: %d заданий, очередь до %d, запись %.2f мс (макс. %.2f мс), " +
+                        "ожидание в очереди %.2f мс, ожидание места в очереди %.1f мс%n",
+                tasks, getPeakQueueDepth(), averageWriteMillis, maxWriteNanos.get() / 1_000_000.0,
+                averageQueueMillis, backpressureNanos.sum() / 1_000_000.0);
+    }
+}
@@ -0,0 +1,325 @@
+package nexign.task.services.udr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import nexign.task.services.cdr.BinaryCDRFormat;
+import nexign.task.services.cdr.CDRFileFormat;
+import nexign.task.services.cdr.CDRFormatConverter;
+import nexign.task.utilities.SubscriberRegistry;
+
+/**
+ * CDRDirectoryWatcher - непрерывная обработка CDR файлов, которые появляются и дописываются в директории.
+ * Директория отслеживается через WatchService, для каждого файла запоминается позиция, до которой он прочитан,
+ * и при изменении разбираются только новые полные записи. Агрегаты абонентов хранятся в памяти,
+ * а отчеты затронутых абонентов перезаписываются не реже чем раз в flushIntervalMillis.
+ * Вся обработка выполняется в одном потоке, который вызвал run(), поэтому блокировки не нужны.
+ */
+public class CDRDirectoryWatcher {
+
+    /**
+     * Статистика обработки.
+     *
+     * @param recordsCount количество учтенных звонков
+     * @param recordsPerSecond средняя скорость обработки звонков с момента запуска
+     * @param lastLagMillis задержка последнего обновления отчетов: от обнаружения изменения файла до записи отчетов
+     * @param maxLagMillis наибольшая задержка обновления отчетов
+     * @param pendingBytes количество байт в отслеживаемых файлах, еще не учтенных в агрегатах
+     * @param rewrittenReports количество перезаписанных отчетов абонентов
+     */
+    public record Statistics(long recordsCount, double recordsPerSecond, long lastLagMillis, long maxLagMillis,
+                             long pendingBytes, long rewrittenReports) {
+        @Override
+        public String toString() {
+            return String.format("звонков: %d (%.0f/с), задержка отчетов: %d мс (макс. %d мс), " +
+                            "не обработано байт: %d, перезаписано отчетов: %d",
+                    recordsCount, recordsPerSecond, lastLagMillis, maxLagMillis, pendingBytes, rewrittenReports);
+        }
+    }
+
+    /** позиция, до которой прочитан файл, и признаки, по которым замена файла отличается от дописывания */
+    private static final class TailState {
+        private long offset;
+        private long size;
+        private long lastModified;
+        /** CRC32 данных перед offset (как IncrementalUDRUpdater.checksum) */
+        private long checksum;
+        /** сообщение о том, что файл пока не читается, уже выведено */
+        private boolean unreadableReported;
+    }
+
+    private final File cdrDirectory;
+    private final CDRFileFormat format;
+    private final SubscriberRegistry subscribers;
+    private final File reportDirectory;
+    private final UDRReportWriter reportWriter;
+    private final long flushIntervalMillis;
+
+    private final Map<String, TailState> tails = new HashMap<>();
+    /** агрегаты по месяцам */
+    private final Map<Integer, TreeMap<String, RecordUDR>> aggregates = new HashMap<>();
+    /** абоненты, отчеты которых нужно перезаписать, по месяцам */
+    private final Map<Integer, TreeSet<String>> dirtySubscribers = new HashMap<>();
+    /** месяцы, отчеты которых нужно перезаписать целиком */
+    private final TreeSet<Integer> dirtyMonths = new TreeSet<>();
+    /** время обнаружения самого раннего изменения, еще не отраженного в отчетах (0 - изменений нет) */
+    private long oldestPendingChangeMillis;
+
+    private volatile boolean running;
+    private volatile WatchService watchService;
+
+    private long startMillis;
+    private long recordsCount;
+    private long malformedLinesCount;
+    private long rewrittenReports;
+    private long lastLagMillis;
+    private long maxLagMillis;
+
+    /**
+     * @param cdrDirectory директория с CDR файлами cdr_N
+     * @param format формат отслеживаемых CDR файлов (файлы другого формата и индексы игнорируются)
+     * @param subscribers реестр всех абонентов
+     * @param reportDirectory директория отчетов
+     * @param reportWriter запись отчетов
+     * @param flushIntervalMillis наибольшая задержка между изменением файла и обновлением отчетов
+     */
+    public CDRDirectoryWatcher(File cdrDirectory, CDRFileFormat format, SubscriberRegistry subscribers,
+                               File reportDirectory, UDRReportWriter reportWriter, long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Интервал обновления отчетов должен быть положительным");
+        }
+        this.cdrDirectory = cdrDirectory;
+        this.format = format;
+        this.subscribers = subscribers;
+        this.reportDirectory = reportDirectory;
+        this.reportWriter = reportWriter;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Обрабатывает уже существующие файлы, затем отслеживает директорию до вызова stop() или прерывания потока.
+     *
+     * @throws IOException если директорию не удалось отслеживать
+     */
+    public void run() throws IOException {
+        cdrDirectory.mkdirs();
+        reportDirectory.mkdirs();
+        startMillis = System.currentTimeMillis();
+        running = true;
+
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            watchService = service;
+            cdrDirectory.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            // файлы, появившиеся до запуска
+            scanDirectory();
+            long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+
+            while (running) {
+                long timeout = Math.max(0, nextFlush - System.currentTimeMillis());
+                WatchKey key = service.poll(timeout, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // события потеряны - проверяем все файлы
+                            scanDirectory();
+                        } else {
+                            ingest(cdrDirectory.toPath().resolve((Path) event.context()).toFile());
+                        }
+                    }
+                    key.reset();
+                }
+
+                if (System.currentTimeMillis() >= nextFlush) {
+                    // на случай файловых систем, где события приходят не всегда, проверяем все файлы
+                    scanDirectory();
+                    flush();
+                    nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // остановка через stop()
+        } finally {
+            running = false;
+            flush();
+        }
+    }
+
+    /**
+     * Останавливает отслеживание; run() записывает накопленные изменения и возвращается.
+     */
+    public void stop() {
+        running = false;
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void scanDirectory() {
+        File[] files = cdrDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                ingest(file);
+            }
+        }
+    }
+
+    /**
+     * Учитывает новые полные записи файла, если это CDR файл отслеживаемого формата.
+     */
+    private void ingest(File file) {
+        if (!file.isFile() || !file.getName().startsWith("cdr_") || !file.getName().endsWith(format.getExtension())) {
+            return;
+        }
+        int month = CDRFormatConverter.monthFromFileName(file);
+        if (month < 1 || month > 12) {
+            return;
+        }
+
+        TailState tail = tails.computeIfAbsent(file.getName(), name -> new TailState());
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (size == tail.size && lastModified == tail.lastModified) {
+            return;
+        }
+
+        try {
+            long dataStart = (format == CDRFileFormat.BINARY) ? BinaryCDRFormat.HEADER_SIZE : 0;
+            long dataEnd = IncrementalUDRUpdater.findDataEnd(file, format);
+
+            // дописанный файл сохраняет прочитанные данные; если файл усечен или прочитанная часть изменилась,
+            // файл заменен (в том числе файлом того же или большего размера) - месяц считается заново
+            if (tail.offset > 0 && (dataEnd < tail.offset
+                    || IncrementalUDRUpdater.checksum(file, dataStart, tail.offset) != tail.checksum)) {
+                aggregates.remove(month);
+                dirtySubscribers.remove(month);
+                tail.offset = 0;
+            }
+            if (tail.offset == 0) {
+                tail.offset = dataStart;
+                dirtyMonths.add(month);
+            }
+
+            UDRAccumulator accumulator = new UDRAccumulator(-1);
+            malformedLinesCount += IncrementalUDRUpdater.scan(file, format, tail.offset, dataEnd, accumulator);
+            tail.offset = dataEnd;
+            tail.size = size;
+            tail.lastModified = lastModified;
+            tail.checksum = IncrementalUDRUpdater.checksum(file, dataStart, dataEnd);
+
+            TreeMap<String, RecordUDR> deltas = new TreeMap<>();
+            accumulator.mergeInto(deltas);
+            accumulator.mergeInto(aggregates.computeIfAbsent(month, m -> new TreeMap<>()));
+            recordsCount += accumulator.getRecordsCount();
+
+            if (!deltas.isEmpty() || dirtyMonths.contains(month)) {
+                dirtySubscribers.computeIfAbsent(month, m -> new TreeSet<>()).addAll(deltas.keySet());
+                if (oldestPendingChangeMillis == 0) {
+                    oldestPendingChangeMillis = System.currentTimeMillis();
+                }
+            }
+            tail.unreadableReported = false;
+        } catch (IOException e) {
+            // двоичный файл, заголовок которого еще не записан, будет прочитан при следующем изменении
+            if (!tail.unreadableReported) {
+                System.err.println("CDR файл " + file.getName() + " пока не удалось прочитать: " + e.getMessage());
+                tail.unreadableReported = true;
+            }
+        }
+    }
+
+    /**
+     * Перезаписывает отчеты затронутых абонентов (или целых месяцев) и обновляет задержку.
+     * Месяцы, отчеты которых не удалось записать, остаются в очереди и записываются при следующем обновлении.
+     */
+    private void flush() {
+        if (oldestPendingChangeMillis == 0) {
+            return;
+        }
+
+        Iterator<Map.Entry<Integer, TreeSet<String>>> entries = dirtySubscribers.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, TreeSet<String>> entry = entries.next();
+            int month = entry.getKey();
+            try {
+                writeDirtyReports(month, entry.getValue());
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            entries.remove();
+            dirtyMonths.remove(month);
+        }
+        if (!dirtySubscribers.isEmpty()) {
+            return;
+        }
+
+        lastLagMillis = System.currentTimeMillis() - oldestPendingChangeMillis;
+        maxLagMillis = Math.max(maxLagMillis, lastLagMillis);
+        oldestPendingChangeMillis = 0;
+
+        System.out.println("Обновлены отчеты по CDR файлам: " + getStatistics());
+        if (malformedLinesCount > 0) {
+            System.err.println("Пропущено некорректных строк CDR файлов: " + malformedLinesCount);
+        }
+    }
+
+    /**
+     * Перезаписывает отчеты месяца: целиком (после пересчета или в NDJSON файле) или только затронутых абонентов.
+     */
+    private void writeDirtyReports(int month, TreeSet<String> phoneNumbers) {
+        TreeMap<String, RecordUDR> monthAggregates = aggregates.computeIfAbsent(month, m -> new TreeMap<>());
+
+        if (dirtyMonths.contains(month) || reportWriter.getLayout() == UDRReportLayout.NDJSON) {
+            // абоненты без записей дополняются пустыми по идентификаторам реестра
+            List<RecordUDR> records = UDRMonth.of(subscribers, monthAggregates).records();
+            reportWriter.writeMonth(reportDirectory, month, records);
+            rewrittenReports += records.size();
+        } else {
+            List<RecordUDR> affected = new ArrayList<>();
+            for (String phoneNumber : phoneNumbers) {
+                affected.add(monthAggregates.get(phoneNumber));
+            }
+            reportWriter.writeMonth(reportDirectory, month, affected);
+            rewrittenReports += affected.size();
+        }
+    }
+
+    /**
+     * @return статистика обработки (значения обновляются потоком run(), чтение из другого потока приблизительное)
+     */
+    public Statistics getStatistics() {
+        long pendingBytes = 0;
+        for (TailState tail : tails.values()) {
+            pendingBytes += Math.max(0, tail.size - tail.offset);
+        }
+        double seconds = (System.currentTimeMillis() - startMillis) / 1000.0;
+        double recordsPerSecond = seconds > 0 ? recordsCount / seconds : 0;
+        return new Statistics(recordsCount, recordsPerSecond, lastLagMillis, maxLagMillis, pendingBytes, rewrittenReports);
+    }
+}
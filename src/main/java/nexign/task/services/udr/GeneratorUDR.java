@@ -1,14 +1,35 @@
 package nexign.task.services.udr;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
 import java.io.*;
-import java.time.Duration;
-import java.time.Instant;
-import java.time.temporal.Temporal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import nexign.task.services.cdr.AsyncDecompressingInputStream;
+import nexign.task.services.cdr.BinaryCDRFormat;
+import nexign.task.services.cdr.BinaryCDRReader;
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.services.cdr.CDRCodec;
+import nexign.task.services.cdr.CDRCodecs;
+import nexign.task.services.cdr.CDRCompressionStatistics;
+import nexign.task.services.cdr.CDRFileFormat;
+import nexign.task.services.cdr.CDRFileIndex;
+import nexign.task.services.cdr.CDRFormatConverter;
+import nexign.task.services.cdr.CDRLineParser;
+import nexign.task.metrics.CDRFileAggregatedEvent;
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+import nexign.task.utilities.ApplicationProperties;
+import nexign.task.utilities.LatencyHistogram;
+import nexign.task.utilities.SubscriberRegistry;
 import nexign.task.utilities.UtilFunctions;
 
 /**
@@ -17,11 +38,49 @@ import nexign.task.utilities.UtilFunctions;
  Обрабатывает CDR файлы для извлечения деталей звонков и создает отчеты по абонентам.
  */
 public class GeneratorUDR {
+    private static final Counter AGGREGATED_RECORDS = Metrics.counter("cdr_aggregated_records_total",
+            "Учтено CDR записей при создании UDR отчетов");
+    private static final Counter AGGREGATED_BYTES = Metrics.counter("cdr_aggregated_bytes_total",
+            "Обработано байт CDR файлов при создании UDR отчетов");
+    private static final LatencyHistogram FILE_AGGREGATION_TIME = Metrics.timer("cdr_file_aggregation_seconds",
+            "Время агрегации CDR файла или его части");
+    private static final LatencyHistogram CONSOLE_RENDER_TIME = Metrics.timer("udr_console_render_seconds",
+            "Время вывода отчета абонента в консоль");
 
     private List<File> cdrFiles;
-    private List<String> subscribers;
+    /** реестр всех абонентов: номера и их идентификаторы для агрегации по массивам */
+    private final SubscriberRegistry subscribers;
     private final String reportDirectory;
 
+    /** количество потоков для обработки CDR файлов в generateReport() */
+    private final int parallelism;
+    /** размер части файла (в байтах), начиная с которого большие файлы обрабатываются по частям в разных потоках */
+    private final long chunkSizeBytes;
+
+    /** время последней агрегации CDR файлов в generateReport() (в наносекундах) */
+    private long lastAggregationNanos;
+    /** запись JSON отчетов, общая для всех потоков */
+    private final UDRReportWriter reportWriter;
+    /** количество потоков асинхронной записи отчетов в generateReport() */
+    private final int writerThreads;
+    /** максимальное количество заданий в очереди записи отчетов */
+    private final int writerQueueCapacity;
+    /** асинхронная запись последнего вызова generateReport() (для статистики) */
+    private AsyncUDRReportWriter lastAsyncWriter;
+    /** если задан, данные для отчетов берутся из таблицы CDR, а не из CDR файлов */
+    private SQLUDRAggregator sqlAggregator;
+    /** количество пропущенных некорректных строк CDR файлов */
+    private final LongAdder malformedLinesCount = new LongAdder();
+    /** статистика распаковки сжатых CDR файлов */
+    private final CDRCompressionStatistics decompressionStatistics = new CDRCompressionStatistics();
+    /** объем памяти для агрегатов в generateReport() (0 - все агрегаты в памяти, иначе агрегаты выгружаются на диск) */
+    private long memoryBudgetBytes;
+    /** директория временных файлов агрегатов, выгруженных на диск */
+    private File spillDirectory;
+    /** количество серий агрегатов, выгруженных на диск при последнем вызове generateReport() */
+    private long lastSpilledRunsCount;
+    private long lastSpilledBytes;
+
     /**
      * Конструктор объекта GeneratorUDR
      * При создании сохраняет список CDR файлов, список всех абонентов, по которым будут создаваться отчеты
@@ -32,9 +91,93 @@ public class GeneratorUDR {
      * @param directory директория для сохранения отчетов
      */
     public GeneratorUDR(List<File> cdrFiles, List<String> subscribers, String directory) {
+        this(cdrFiles, SubscriberRegistry.of(subscribers), directory);
+    }
+
+    /**
+     * Конструктор объекта GeneratorUDR с реестром абонентов, уже загруженным из базы.
+     *
+     * @param cdrFiles список CDR файлов с записями о деталях вызовов
+     * @param subscribers реестр всех абонентов
+     * @param directory директория для сохранения отчетов
+     */
+    public GeneratorUDR(List<File> cdrFiles, SubscriberRegistry subscribers, String directory) {
+        this(cdrFiles, subscribers, directory,
+                ApplicationProperties.getInt("udr.parallelism", Runtime.getRuntime().availableProcessors()),
+                ApplicationProperties.getLong("udr.chunkSizeBytes", 64L * 1024 * 1024));
+    }
+
+    /**
+     * Конструктор объекта GeneratorUDR с заданными параметрами параллельной обработки.
+     *
+     * @param cdrFiles список CDR файлов с записями о деталях вызовов
+     * @param subscribers список телефонных номеров всех абонентов
+     * @param directory директория для сохранения отчетов
+     * @param parallelism количество потоков для обработки CDR файлов (1 - последовательная обработка)
+     * @param chunkSizeBytes размер части, на которые делятся большие CDR файлы при параллельной обработке
+     */
+    public GeneratorUDR(List<File> cdrFiles, List<String> subscribers, String directory,
+                        int parallelism, long chunkSizeBytes) {
+        this(cdrFiles, SubscriberRegistry.of(subscribers), directory, parallelism, chunkSizeBytes);
+    }
+
+    /**
+     * Конструктор объекта GeneratorUDR с реестром абонентов и заданными параметрами параллельной обработки.
+     *
+     * @param cdrFiles список CDR файлов с записями о деталях вызовов
+     * @param subscribers реестр всех абонентов
+     * @param directory директория для сохранения отчетов
+     * @param parallelism количество потоков для обработки CDR файлов (1 - последовательная обработка)
+     * @param chunkSizeBytes размер части, на которые делятся большие CDR файлы при параллельной обработке
+     */
+    public GeneratorUDR(List<File> cdrFiles, SubscriberRegistry subscribers, String directory,
+                        int parallelism, long chunkSizeBytes) {
+        this(cdrFiles, subscribers, directory, parallelism, chunkSizeBytes,
+                UDRReportLayout.fromString(ApplicationProperties.getString("udr.report.layout", "per_subscriber"),
+                        UDRReportLayout.PER_SUBSCRIBER));
+    }
+
+    /**
+     * Конструктор объекта GeneratorUDR с заданными параметрами параллельной обработки и размещения отчетов.
+     *
+     * @param cdrFiles список CDR файлов с записями о деталях вызовов
+     * @param subscribers список телефонных номеров всех абонентов
+     * @param directory директория для сохранения отчетов
+     * @param parallelism количество потоков для обработки CDR файлов (1 - последовательная обработка)
+     * @param chunkSizeBytes размер части, на которые делятся большие CDR файлы при параллельной обработке
+     * @param reportLayout способ размещения отчетов: отдельные файлы абонентов или NDJSON файл на месяц
+     */
+    public GeneratorUDR(List<File> cdrFiles, List<String> subscribers, String directory,
+                        int parallelism, long chunkSizeBytes, UDRReportLayout reportLayout) {
+        this(cdrFiles, SubscriberRegistry.of(subscribers), directory, parallelism, chunkSizeBytes, reportLayout);
+    }
+
+    /**
+     * Конструктор объекта GeneratorUDR с реестром абонентов, параметрами параллельной обработки и размещения отчетов.
+     *
+     * @param cdrFiles список CDR файлов с записями о деталях вызовов
+     * @param subscribers реестр всех абонентов
+     * @param directory директория для сохранения отчетов
+     * @param parallelism количество потоков для обработки CDR файлов (1 - последовательная обработка)
+     * @param chunkSizeBytes размер части, на которые делятся большие CDR файлы при параллельной обработке
+     * @param reportLayout способ размещения отчетов: отдельные файлы абонентов или NDJSON файл на месяц
+     */
+    public GeneratorUDR(List<File> cdrFiles, SubscriberRegistry subscribers, String directory,
+                        int parallelism, long chunkSizeBytes, UDRReportLayout reportLayout) {
+        if (parallelism < 1 || chunkSizeBytes < 1) {
+            throw new IllegalArgumentException("Количество потоков и размер части должны быть положительными");
+        }
         this.cdrFiles = cdrFiles;
         this.subscribers = subscribers;
         this.reportDirectory = directory;
+        this.parallelism = parallelism;
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.reportWriter = new UDRReportWriter(reportLayout, ApplicationProperties.getBoolean("udr.report.fsync", false));
+        this.writerThreads = ApplicationProperties.getInt("udr.report.writerThreads", 2);
+        this.writerQueueCapacity = ApplicationProperties.getInt("udr.report.queueCapacity", 16);
+        this.memoryBudgetBytes = ApplicationProperties.getLong("udr.memoryBudgetBytes", 0);
+        String spillPath = ApplicationProperties.getString("udr.spillDirectory", "");
+        this.spillDirectory = new File(spillPath.isEmpty() ? System.getProperty("java.io.tmpdir") : spillPath);
     }
 
     /**
@@ -46,25 +189,143 @@ public class GeneratorUDR {
         File directory = new File(reportDirectory);
         UtilFunctions.updateReportDirectory(directory);
 
-        List < TreeMap<String, RecordUDR> > udrMaps = new ArrayList<>();
+        lastSpilledRunsCount = 0;
+        lastSpilledBytes = 0;
+        if (memoryBudgetBytes > 0 && sqlAggregator == null) {
+            generateReportOutOfCore(directory);
+            return;
+        }
 
-        for (int i = 0; i < cdrFiles.size(); i++) {
-            File cdrFile = cdrFiles.get(i);
-            TreeMap<String, RecordUDR> udrMapThisMonth = processCDRFile(cdrFile, i + 1, null, directory);
-            udrMaps.add(udrMapThisMonth);
+        ForkJoinPool executor = new ForkJoinPool(parallelism);
+        List<UDRMonth> udrMonths;
+        // отчеты готового месяца записываются отдельными потоками, пока агрегируются следующие месяцы
+        AsyncUDRReportWriter asyncWriter = new AsyncUDRReportWriter(reportWriter, writerThreads, writerQueueCapacity);
+        lastAsyncWriter = asyncWriter;
+        // при выходе из блока close() дожидается записи всех отчетов
+        try (asyncWriter) {
+            BiConsumer<Integer, UDRMonth> saveMonth =
+                    (month, udrMonth) -> asyncWriter.submit(directory, month, udrMonth.records());
+
+            long aggregationStart = System.nanoTime();
+            udrMonths = (sqlAggregator != null)
+                    ? aggregateFromDatabase(saveMonth)
+                    : aggregateCDRFiles(executor, saveMonth);
+            lastAggregationNanos = System.nanoTime() - aggregationStart;
+        } finally {
+            executor.shutdown();
+        }
+
+        // записи абонентов берутся из месяцев по идентификаторам реестра, без поиска по строковому номеру
+        for (int id = 0; id < subscribers.size(); id++) {
+            List<RecordUDR> recordsForSubscriber = new ArrayList<>(udrMonths.size());
+            for (UDRMonth udrMonth : udrMonths) {
+                recordsForSubscriber.add(udrMonth.get(id));
+            }
+
+            printReport(subscribers.phoneNumber(id), recordsForSubscriber, null);
         }
+        System.out.println();
+    }
 
-        for (String subscriber : subscribers) {
-            List<RecordUDR> recordsForSubscriber = udrMaps.stream()
-                    .map(udrMap -> udrMap.getOrDefault(subscriber, null))
-                    .filter(Objects::nonNull)
-                    .toList();
+    /**
+     * Генерирует отчеты всех абонентов с ограниченным объемом памяти для агрегатов (memoryBudgetBytes).
+     * CDR файлы обрабатываются последовательно в SpillingUDRAggregator, который при превышении бюджета
+     * выгружает отсортированные агрегаты на диск. Затем агрегаты объединяются слиянием в порядке номеров
+     * и сопоставляются с реестром абонентов, отчеты записываются и выводятся по одному абоненту,
+     * поэтому в памяти одновременно находятся только записи одного абонента за все месяцы.
+     *
+     * @param directory директория отчетов
+     */
+    private void generateReportOutOfCore(File directory) {
+        int monthsCount = cdrFiles.size();
+        long aggregationStart = System.nanoTime();
+        lastAsyncWriter = null;
+
+        try (SpillingUDRAggregator aggregator = new SpillingUDRAggregator(memoryBudgetBytes, spillDirectory);
+             UDRReportWriter.StreamingWriter writer = reportWriter.openStream(directory, monthsCount)) {
+            for (int i = 0; i < monthsCount; i++) {
+                File cdrFile = cdrFiles.get(i);
+                aggregator.setMonth(i + 1);
+                if (CDRFileFormat.fromFile(cdrFile) == CDRFileFormat.BINARY) {
+                    aggregateBinaryCDRFile(cdrFile, 0, Long.MAX_VALUE, null, aggregator);
+                } else {
+                    aggregateTextCDRFile(cdrFile, 0, Long.MAX_VALUE, null, aggregator);
+                }
+            }
 
-            printReport(subscriber, recordsForSubscriber, null);
+            try (SpillingUDRAggregator.Cursor cursor = aggregator.merge()) {
+                lastAggregationNanos = System.nanoTime() - aggregationStart;
+                lastSpilledRunsCount = aggregator.getSpilledRunsCount();
+                lastSpilledBytes = aggregator.getSpilledBytes();
+
+                RecordUDR[] udrs = new RecordUDR[monthsCount];
+                boolean hasAggregate = cursor.next();
+                int subscriberId = 0;
+                while (subscriberId < subscribers.size() || hasAggregate) {
+                    // следующий номер - наименьший из реестра и агрегатов (номера, которых нет в реестре,
+                    // получают отчеты, но не выводятся в консоль, как и при агрегации в памяти)
+                    long msisdn = (subscriberId < subscribers.size()) ? subscribers.msisdn(subscriberId) : Long.MAX_VALUE;
+                    boolean registered = !hasAggregate || msisdn <= cursor.msisdn();
+                    if (!registered) {
+                        msisdn = cursor.msisdn();
+                    } else {
+                        subscriberId++;
+                    }
+
+                    String phoneNumber = Long.toString(msisdn);
+                    for (int i = 0; i < monthsCount; i++) {
+                        udrs[i] = new RecordUDR(phoneNumber);
+                    }
+                    while (hasAggregate && cursor.msisdn() == msisdn) {
+                        RecordUDR udr = udrs[cursor.month() - 1];
+                        udr.getOutgoingCall().addSeconds(cursor.outgoingSeconds());
+                        udr.getIncomingCall().addSeconds(cursor.incomingSeconds());
+                        hasAggregate = cursor.next();
+                    }
+
+                    for (int i = 0; i < monthsCount; i++) {
+                        writer.write(i + 1, udrs[i]);
+                    }
+                    if (registered) {
+                        printReport(phoneNumber, Arrays.asList(udrs), null);
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
         }
         System.out.println();
     }
 
+    /**
+     * Агрегирует данные всех абонентов за все месяцы без записи и вывода отчетов
+     * (по CDR файлам или по таблице CDR, если задан SQLUDRAggregator).
+     * Используется, когда агрегаты нужно вычислить один раз и затем многократно отдавать из памяти.
+     *
+     * @return отображения UDR по месяцам в порядке CDR файлов, с записями для всех абонентов
+     */
+    public List<TreeMap<String, RecordUDR>> aggregateReport() {
+        BiConsumer<Integer, UDRMonth> completeMonth = (month, udrMonth) -> { };
+
+        ForkJoinPool executor = new ForkJoinPool(parallelism);
+        try {
+            long aggregationStart = System.nanoTime();
+            List<UDRMonth> udrMonths = (sqlAggregator != null)
+                    ? aggregateFromDatabase(completeMonth)
+                    : aggregateCDRFiles(executor, completeMonth);
+            lastAggregationNanos = System.nanoTime() - aggregationStart;
+
+            // отображения по номерам нужны только получателям, которые ищут записи по номеру абонента
+            List<TreeMap<String, RecordUDR>> udrMaps = new ArrayList<>(udrMonths.size());
+            for (UDRMonth udrMonth : udrMonths) {
+                udrMaps.add(udrMonth.toUDRMap());
+            }
+            return udrMaps;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Генерирует UDR отчет для заданного абонента за весь период тарификации (12 месяцев).
      * Отчет сохраняется в формате JSON в указанной директории.
@@ -143,87 +404,415 @@ public class GeneratorUDR {
         TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
 
         try {
-            BufferedReader br = new BufferedReader(new FileReader(cdrFile));
-            String line;
+            UDRAccumulator accumulator = (msisdn == null)
+                    ? new UDRAccumulator(subscribers)
+                    : new UDRAccumulator(Long.parseLong(msisdn));
+            // для одного абонента читаем по индексу только его записи, иначе просматриваем весь файл
+            // (для сжатых файлов индекс не строится)
+            if (sqlAggregator != null) {
+                udrMap = sqlAggregator.aggregateMonth(month, msisdn);
+            } else if (msisdn == null || CDRCodecs.forFile(cdrFile).isCompressing()
+                    || !aggregateIndexedCDRFile(cdrFile, msisdn, udrMap)) {
+                if (CDRFileFormat.fromFile(cdrFile) == CDRFileFormat.BINARY) {
+                    aggregateBinaryCDRFile(cdrFile, 0, Long.MAX_VALUE, msisdn, accumulator);
+                } else {
+                    aggregateTextCDRFile(cdrFile, 0, Long.MAX_VALUE, msisdn, accumulator);
+                }
+                udrMap = (msisdn == null) ? accumulator.toUDRMonth().toUDRMap() : toUDRMap(accumulator);
+            }
 
-            while ((line = br.readLine()) != null) {
-                String[] dataParts = line.split(", ");
+            completeUDRMap(udrMap, msisdn);
+            saveUDRMap(directory, udrMap, month);
+        } catch (IOException | SQLException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
 
-                String callType = dataParts[0];
-                String phoneNumber = dataParts[1];
+        return udrMap;
+    }
 
-                // проверяем, нужно ли обработать строку из данных для конкретного абонента
-                if (msisdn == null || msisdn.equals(phoneNumber)) {
-                    Temporal startTime = Instant.ofEpochSecond(Long.parseLong(dataParts[2]));
-                    Temporal endTime = Instant.ofEpochSecond(Long.parseLong(dataParts[3]));
+    /**
+     * Переносит записи накопителя одного абонента в новое отображение UDR.
+     */
+    private static TreeMap<String, RecordUDR> toUDRMap(UDRAccumulator accumulator) {
+        TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
+        accumulator.mergeInto(udrMap);
+        return udrMap;
+    }
 
-                    // вычисляем продолжительность вызова
-                    Duration callDuration = Duration.between(startTime, endTime);
+    /**
+     * Добавляет в отображение UDR пустые записи для абонентов, которые не встретились в CDR файле.
+     *
+     * @param udrMap отображение UDR за месяц
+     * @param msisdn номер абонента, для которого создается отчет (если null - все абоненты)
+     */
+    private void completeUDRMap(TreeMap<String, RecordUDR> udrMap, String msisdn) {
+        Set<String> udrKeys = udrMap.keySet();
+
+        if (msisdn == null) {
+            // добавляем пустые UDR-записи для номеров, которые не встретились в исходных данных
+            for (String phoneNumber : subscribers.asList()) {
+                if (!udrKeys.contains(phoneNumber)) {
+                    udrMap.put(phoneNumber, new RecordUDR(phoneNumber));
+                }
+            }
+        } else {
+            if (!udrKeys.contains(msisdn)) {
+                // если вызвана перегрузка по конкретному абоненту, добавляем только его
+                udrMap.put(msisdn, new RecordUDR(msisdn));
+            }
+        }
+    }
 
-                    // создаем объект UDR записи по текущему абоненту и месяцу
-                    RecordUDR udr = udrMap.getOrDefault(phoneNumber, new RecordUDR(phoneNumber));
+    /**
+     * Сохраняет отчеты за месяц для всех номеров из отображения UDR (в отдельные файлы или один NDJSON файл).
+     *
+     * @param directory директория для сохранения отчетов
+     * @param udrMap отображение UDR за месяц
+     * @param month месяц, за который создается отчет
+     */
+    private void saveUDRMap(File directory, TreeMap<String, RecordUDR> udrMap, int month) {
+        reportWriter.writeMonth(directory, month, udrMap.values());
+    }
 
-                    // обновляем информацию о длительности вызова этого типа в объекте UDR
-                    if (callType.equals("01")) {
-                        udr.getOutgoingCall().addDuration(callDuration);
-                    } else if (callType.equals("02")) {
-                        udr.getIncomingCall().addDuration(callDuration);
-                    }
-                    udrMap.put(phoneNumber, udr);
+    /**
+     * Часть CDR файла для параллельной обработки: диапазон байт для текстового файла
+     * или диапазон номеров записей для двоичного.
+     *
+     * @param monthIndex номер файла в списке CDR файлов
+     * @param file CDR файл
+     * @param start начало диапазона (включительно)
+     * @param end конец диапазона (не включительно)
+     */
+    private record CDRFileChunk(int monthIndex, File file, long start, long end) {}
 
+    /**
+     * Агрегирует все CDR файлы для всех абонентов. Файлы (а большие файлы - по частям) обрабатываются параллельно,
+     * каждая часть собирает собственное отображение UDR без общих блокировок,
+     * затем отображения частей одного месяца складываются. Результат совпадает с последовательной обработкой.
+     * Месяцы передаются получателю по порядку, как только обработаны все их части.
+     *
+     * @param executor пул потоков для обработки
+     * @param onMonthReady получатель записей UDR готового месяца (номер месяца, записи)
+     *
+     * @return записи UDR по месяцам в порядке CDR файлов
+     */
+    private List<UDRMonth> aggregateCDRFiles(ForkJoinPool executor, BiConsumer<Integer, UDRMonth> onMonthReady) {
+        List<CDRFileChunk> chunks = splitCDRFiles();
+
+        List<Future<UDRAccumulator>> partialAccumulators = new ArrayList<>();
+        for (CDRFileChunk chunk : chunks) {
+            partialAccumulators.add(executor.submit(() -> {
+                UDRAccumulator accumulator = new UDRAccumulator(subscribers);
+                if (CDRFileFormat.fromFile(chunk.file()) == CDRFileFormat.BINARY) {
+                    aggregateBinaryCDRFile(chunk.file(), chunk.start(), chunk.end(), null, accumulator);
+                } else {
+                    aggregateTextCDRFile(chunk.file(), chunk.start(), chunk.end(), null, accumulator);
                 }
+                return accumulator;
+            }));
+        }
+
+        List<UDRMonth> udrMonths = new ArrayList<>();
+        int chunkIndex = 0;
+        for (int i = 0; i < cdrFiles.size(); i++) {
+            UDRAccumulator monthAccumulator = new UDRAccumulator(subscribers);
+            // части идут в порядке файлов, поэтому части месяца расположены подряд
+            while (chunkIndex < chunks.size() && chunks.get(chunkIndex).monthIndex() == i) {
+                monthAccumulator.add(getResult(partialAccumulators.get(chunkIndex)));
+                // накопитель части больше не нужен, его массивы можно освободить
+                partialAccumulators.set(chunkIndex, null);
+                chunkIndex++;
             }
-            br.close();
+            UDRMonth udrMonth = monthAccumulator.toUDRMonth();
+            udrMonths.add(udrMonth);
+            onMonthReady.accept(i + 1, udrMonth);
+        }
+        return udrMonths;
+    }
 
+    /**
+     * Получает записи UDR по месяцам группирующими запросами к таблице CDR.
+     *
+     * @param onMonthReady получатель записей UDR готового месяца (номер месяца, записи)
+     *
+     * @return записи UDR по месяцам в порядке CDR файлов
+     */
+    private List<UDRMonth> aggregateFromDatabase(BiConsumer<Integer, UDRMonth> onMonthReady) {
+        List<UDRMonth> udrMonths = new ArrayList<>();
+        for (int month = 1; month <= cdrFiles.size(); month++) {
+            try {
+                UDRMonth udrMonth = UDRMonth.of(subscribers, sqlAggregator.aggregateMonth(month, null));
+                udrMonths.add(udrMonth);
+                onMonthReady.accept(month, udrMonth);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Ошибка при получении CDR записей из базы данных", e);
+            }
+        }
+        return udrMonths;
+    }
 
-            Set<String> udrKeys = udrMap.keySet();
+    /**
+     * Делит CDR файлы на части для параллельной обработки.
+     * При последовательной обработке, для файлов меньше chunkSizeBytes и для сжатых файлов
+     * (которые читаются только последовательно) каждый файл - одна часть.
+     */
+    private List<CDRFileChunk> splitCDRFiles() {
+        List<CDRFileChunk> chunks = new ArrayList<>();
 
-            if (msisdn == null) {
-                // добавляем пустые UDR-записи для номеров, которые не встретились в исходных данных
-                for (String phoneNumber : subscribers) {
-                    if (!udrKeys.contains(phoneNumber)) {
-                        udrMap.put(phoneNumber, new RecordUDR(phoneNumber));
-                    }
+        for (int i = 0; i < cdrFiles.size(); i++) {
+            File cdrFile = cdrFiles.get(i);
+            long length = cdrFile.length();
+
+            if (parallelism == 1 || length <= chunkSizeBytes || CDRCodecs.forFile(cdrFile).isCompressing()) {
+                chunks.add(new CDRFileChunk(i, cdrFile, 0, Long.MAX_VALUE));
+            } else if (CDRFileFormat.fromFile(cdrFile) == CDRFileFormat.BINARY) {
+                long recordsCount = (length - BinaryCDRFormat.HEADER_SIZE) / BinaryCDRFormat.RECORD_SIZE;
+                long recordsPerChunk = Math.max(1, chunkSizeBytes / BinaryCDRFormat.RECORD_SIZE);
+                for (long start = 0; start < recordsCount; start += recordsPerChunk) {
+                    chunks.add(new CDRFileChunk(i, cdrFile, start, Math.min(recordsCount, start + recordsPerChunk)));
                 }
             } else {
-                if (!udrKeys.contains(msisdn)) {
-                    // если вызвана перегрузка по конкретному абоненту, добавляем только его
-                    udrMap.put(msisdn, new RecordUDR(msisdn));
+                for (long start = 0; start < length; start += chunkSizeBytes) {
+                    chunks.add(new CDRFileChunk(i, cdrFile, start, Math.min(length, start + chunkSizeBytes)));
                 }
             }
+        }
+        return chunks;
+    }
 
-            // сохраняем результат для каждого номера в отдельный JSON-файл
-            for (String phoneNumber : udrMap.keySet()) {
-                RecordUDR udr = udrMap.get(phoneNumber);
-                saveUDRToJson(directory, udr, phoneNumber, month);
-            }
-        } catch (IOException e) {
+    /**
+     * Дожидается результата задачи обработки CDR файла.
+     */
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработка CDR файлов прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при обработке CDR файлов", e.getCause());
+        }
+    }
+
+    /**
+     * Переключает создание отчетов на запросы к таблице CDR вместо разбора CDR файлов.
+     * Файлы по-прежнему задают количество месяцев отчета.
+     *
+     * @param sqlAggregator источник данных из базы (null - вернуться к разбору файлов)
+     */
+    public void setSQLAggregator(SQLUDRAggregator sqlAggregator) {
+        this.sqlAggregator = sqlAggregator;
+    }
+
+    /**
+     * @return количество некорректных строк CDR файлов, пропущенных при создании отчетов
+     */
+    public long getMalformedLinesCount() {
+        return malformedLinesCount.sum();
+    }
+
+    /**
+     * Обновляет отчеты по всем абонентам инкрементально: агрегаты и отметки обработки CDR файлов
+     * хранятся в базе данных, разбираются только новые записи и перезаписываются только затронутые отчеты.
+     * Директория отчетов не очищается.
+     *
+     * @param connection соединение с базой данных
+     */
+    public void updateReport(Connection connection) {
+        IncrementalUDRUpdater updater = new IncrementalUDRUpdater(new UDRAggregateStore(connection),
+                cdrFiles, subscribers, new File(reportDirectory), reportWriter);
+        try {
+            IncrementalUDRUpdater.UpdateResult result = updater.update();
+            System.out.println("Инкрементальное обновление отчетов: " + result);
+        } catch (IOException | SQLException | UncheckedIOException e) {
             e.printStackTrace();
         }
+    }
 
-        return udrMap;
+    /**
+     * Выводит количество записанных файлов отчетов и скорость их записи.
+     */
+    public void printReportStatistics() {
+        reportWriter.printStatistics();
+        if (lastAsyncWriter != null) {
+            lastAsyncWriter.printStatistics();
+        }
+        decompressionStatistics.print("Распаковка CDR файлов");
+        if (lastSpilledRunsCount > 0) {
+            System.out.printf("Агрегаты выгружены на диск: %d серий, %d байт%n", lastSpilledRunsCount, lastSpilledBytes);
+        }
     }
 
     /**
-     * Преобразует объект RecordUDR (Usage Detail Record) в формате JSON и сохраняет в указанной директории.
+     * Включает создание отчетов с ограниченным объемом памяти для агрегатов: при превышении бюджета
+     * отсортированные агрегаты выгружаются во временные файлы и затем объединяются слиянием.
+     * Действует для отчетов по CDR файлам в generateReport().
      *
-     * @param directory директория, в которой будет сохранен файл
-     * @param udr объект UDR для сохранения
-     * @param phoneNumber номер телефона абонента, для которого создается отчет
-     * @param month месяц, за который создается отчет
+     * @param memoryBudgetBytes объем памяти для агрегатов в байтах (0 - все агрегаты в памяти)
+     * @param spillDirectory директория временных файлов
      */
-    private void saveUDRToJson(File directory, RecordUDR udr, String phoneNumber, int month) {
-        String filename = phoneNumber + "_" + month + ".json";
+    public void setMemoryBudget(long memoryBudgetBytes, File spillDirectory) {
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Бюджет памяти не может быть отрицательным");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
 
-        File reportFile = new File(directory, filename);
+    /**
+     * @return количество серий агрегатов, выгруженных на диск при последнем вызове generateReport()
+     */
+    public long getLastSpilledRunsCount() {
+        return lastSpilledRunsCount;
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+    /**
+     * @return статистика распаковки сжатых CDR файлов
+     */
+    public CDRCompressionStatistics getDecompressionStatistics() {
+        return decompressionStatistics;
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(reportFile))) {
-            objectMapper.writeValue(writer, udr);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * @return время последней агрегации CDR файлов в generateReport() (в миллисекундах)
+     */
+    public double getLastAggregationMillis() {
+        return lastAggregationNanos / 1_000_000.0;
+    }
+
+    /**
+     * Добавляет в отображение UDR детали звонков одного абонента, читая из CDR файла только его записи по индексу.
+     * Если индекса нет или он устарел, индекс строится заново.
+     *
+     * @param cdrFile CDR файл
+     * @param msisdn номер абонента
+     * @param udrMap отображение UDR, в которое добавляются данные
+     *
+     * @return true, если данные получены по индексу, false - если индекс использовать не удалось
+     */
+    private boolean aggregateIndexedCDRFile(File cdrFile, String msisdn, TreeMap<String, RecordUDR> udrMap) {
+        CDRBuffer records = new CDRBuffer(64);
+        try {
+            CDRFileIndex.open(cdrFile).readRecords(Long.parseLong(msisdn), records);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Не удалось использовать индекс для " + cdrFile + ", файл будет прочитан целиком: " + e.getMessage());
+            return false;
+        }
+
+        for (int i = 0; i < records.size(); i++) {
+            RecordUDR udr = udrMap.computeIfAbsent(msisdn, RecordUDR::new);
+            long seconds = records.endTime(i) - records.startTime(i);
+            if (records.callType(i) == CDRBuffer.CALL_TYPE_OUTGOING) {
+                udr.getOutgoingCall().addSeconds(seconds);
+            } else if (records.callType(i) == CDRBuffer.CALL_TYPE_INCOMING) {
+                udr.getIncomingCall().addSeconds(seconds);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Добавляет в отображение UDR детали звонков из текстового CDR файла.
+     * Обрабатываются строки, которые начинаются в диапазоне байт [start, end),
+     * поэтому соседние части файла не пересекаются и не теряют строки на границах.
+     * Строки разбираются на уровне байт без создания объектов на строку, некорректные строки пропускаются.
+     * Сжатый файл читается целиком (диапазон не учитывается) и распаковывается в отдельном потоке
+     * одновременно с разбором строк.
+     *
+     * @param cdrFile текстовый CDR файл
+     * @param start начало диапазона (в байтах)
+     * @param end конец диапазона (в байтах), Long.MAX_VALUE - до конца файла
+     * @param msisdn номер абонента, для которого создан накопитель (null - все абоненты), для события JFR
+     * @param accumulator накопитель, в который добавляются данные
+     *
+     * @throws IOException если чтение файла не удалось
+     */
+    private void aggregateTextCDRFile(File cdrFile, long start, long end, String msisdn,
+                                      UDRRecordSink accumulator) throws IOException {
+        long aggregationStart = System.nanoTime();
+        CDRFileAggregatedEvent event = new CDRFileAggregatedEvent();
+        event.begin();
+        long recordsBefore = accumulator.getRecordsCount();
+        CDRLineParser parser = new CDRLineParser();
+        long bytesCount;
+
+        CDRCodec codec = CDRCodecs.forFile(cdrFile);
+        if (codec.isCompressing()) {
+            try (AsyncDecompressingInputStream input =
+                         new AsyncDecompressingInputStream(cdrFile, codec, decompressionStatistics)) {
+                parser.parse(input, accumulator);
+            }
+            bytesCount = cdrFile.length();
+        } else {
+            try (FileChannel channel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+                parser.parse(channel, start, end, accumulator);
+                bytesCount = Math.min(end, channel.size()) - Math.min(start, channel.size());
+            }
+        }
+        long recordsCount = accumulator.getRecordsCount() - recordsBefore;
+        AGGREGATED_BYTES.add(bytesCount);
+        AGGREGATED_RECORDS.add(recordsCount);
+        FILE_AGGREGATION_TIME.record(System.nanoTime() - aggregationStart);
+        commitAggregationEvent(event, cdrFile, msisdn, start, recordsCount, bytesCount);
+
+        if (parser.getMalformedLinesCount() > 0) {
+            malformedLinesCount.add(parser.getMalformedLinesCount());
+            System.err.println("Пропущено некорректных строк в файле " + cdrFile.getName() + ": "
+                    + parser.getMalformedLinesCount());
+        }
+    }
+
+    /**
+     * Добавляет в отображение UDR детали звонков из двоичного CDR файла.
+     * Записи читаются напрямую из отображенного в память файла, без разбора строк.
+     *
+     * @param cdrFile двоичный CDR файл
+     * @param firstRecord номер первой обрабатываемой записи
+     * @param endRecord номер записи, следующей за последней обрабатываемой, Long.MAX_VALUE - до конца файла
+     * @param msisdn номер абонента, для которого создан накопитель (null - все абоненты), для события JFR
+     * @param accumulator накопитель, в который добавляются данные
+     *
+     * @throws IOException если чтение файла не удалось
+     */
+    private void aggregateBinaryCDRFile(File cdrFile, long firstRecord, long endRecord, String msisdn,
+                                        UDRRecordSink accumulator) throws IOException {
+        long aggregationStart = System.nanoTime();
+        CDRFileAggregatedEvent event = new CDRFileAggregatedEvent();
+        event.begin();
+        long recordsBefore = accumulator.getRecordsCount();
+        long bytesCount;
+
+        try (BinaryCDRReader reader = new BinaryCDRReader(cdrFile)) {
+            long lastRecord = Math.min(endRecord, reader.getRecordsCount());
+            bytesCount = Math.max(0, lastRecord - firstRecord) * BinaryCDRFormat.RECORD_SIZE;
+
+            for (long first = firstRecord; first < lastRecord; first += BinaryCDRReader.MAX_SEGMENT_RECORDS) {
+                int segmentRecords = (int) Math.min(BinaryCDRReader.MAX_SEGMENT_RECORDS, lastRecord - first);
+                ByteBuffer segment = reader.mapRecords(first, segmentRecords);
+
+                accumulator.acceptSegment(segment, segmentRecords);
+            }
+        }
+        long recordsCount = accumulator.getRecordsCount() - recordsBefore;
+        AGGREGATED_BYTES.add(bytesCount);
+        AGGREGATED_RECORDS.add(recordsCount);
+        FILE_AGGREGATION_TIME.record(System.nanoTime() - aggregationStart);
+        commitAggregationEvent(event, cdrFile, msisdn, firstRecord, recordsCount, bytesCount);
+    }
+
+    /**
+     * Заполняет и записывает событие JFR об агрегации CDR файла, если запись событий включена.
+     */
+    private static void commitAggregationEvent(CDRFileAggregatedEvent event, File cdrFile, String msisdn,
+                                               long rangeStart, long recordsCount, long bytesCount) {
+        if (event.shouldCommit()) {
+            event.month = CDRFormatConverter.monthFromFileName(cdrFile);
+            event.fileName = cdrFile.getName();
+            event.msisdn = msisdn;
+            event.rangeStart = rangeStart;
+            event.recordsCount = recordsCount;
+            event.bytesCount = bytesCount;
+            event.commit();
         }
     }
 
@@ -234,6 +823,7 @@ public class GeneratorUDR {
      * @param udrs список UDR-файлов по абоненту
      */
     private void printReport(String phoneNumber, List<RecordUDR> udrs, Integer month) {
+        long renderStart = System.nanoTime();
         System.out.println("Отчет по абоненту " + phoneNumber);
         System.out.println("-----------------------------------------------");
         System.out.println("| Абонент     | Месяц  | Исходящие | Входящие |");
@@ -250,6 +840,7 @@ public class GeneratorUDR {
         }
 
         System.out.println("-----------------------------------------------\n");
+        CONSOLE_RENDER_TIME.record(System.nanoTime() - renderStart);
     }
 
     private void printReportRow(String phoneNumber, int month, RecordUDR monthUDR) {
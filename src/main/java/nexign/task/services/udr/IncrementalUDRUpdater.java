@@ -0,0 +1,289 @@
+package nexign.task.services.udr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import nexign.task.services.cdr.AsyncDecompressingInputStream;
+import nexign.task.services.cdr.BinaryCDRFormat;
+import nexign.task.services.cdr.BinaryCDRReader;
+import nexign.task.services.cdr.CDRCodec;
+import nexign.task.services.cdr.CDRCodecs;
+import nexign.task.services.cdr.CDRFileFormat;
+import nexign.task.services.cdr.CDRLineParser;
+import nexign.task.utilities.SubscriberRegistry;
+
+/**
+ * IncrementalUDRUpdater - инкрементальное обновление UDR отчетов.
+ * Для каждого месяца в базе хранятся агрегаты абонентов и отметка, до какого места обработан CDR файл.
+ * Неизмененный файл (тот же размер и время изменения) пропускается без чтения. Если файл только дописывался
+ * (совпадает контрольная сумма последних байт перед отметкой), разбираются только новые записи,
+ * их длительности прибавляются к агрегатам и перезаписываются отчеты затронутых абонентов.
+ * Иначе (новый, замененный или усеченный файл) месяц пересчитывается полностью.
+ * Сжатый файл нельзя дочитать с отметки, поэтому при любом изменении он пересчитывается полностью.
+ */
+public class IncrementalUDRUpdater {
+    /** количество последних байт перед отметкой, по которым проверяется, что файл только дописывался */
+    static final int CHECKSUM_WINDOW = 64 * 1024;
+
+    /**
+     * Итог обновления.
+     *
+     * @param unchangedMonths месяцы, файлы которых не изменились
+     * @param appendedMonths месяцы, в файлы которых дописаны записи
+     * @param recomputedMonths месяцы, пересчитанные полностью
+     * @param processedBytes объем разобранных данных CDR файлов
+     * @param rewrittenReports количество перезаписанных отчетов абонентов
+     */
+    public record UpdateResult(int unchangedMonths, int appendedMonths, int recomputedMonths,
+                               long processedBytes, long rewrittenReports) {
+        @Override
+        public String toString() {
+            return String.format("месяцев без изменений: %d, дополнено: %d, пересчитано: %d, " +
+                            "разобрано байт: %d, перезаписано отчетов: %d",
+                    unchangedMonths, appendedMonths, recomputedMonths, processedBytes, rewrittenReports);
+        }
+    }
+
+    private final UDRAggregateStore store;
+    private final List<File> cdrFiles;
+    private final SubscriberRegistry subscribers;
+    private final File directory;
+    private final UDRReportWriter reportWriter;
+
+    private long malformedLinesCount;
+
+    /**
+     * @param store хранилище агрегатов и отметок
+     * @param cdrFiles CDR файлы по месяцам
+     * @param subscribers реестр всех абонентов
+     * @param directory директория отчетов
+     * @param reportWriter запись отчетов
+     */
+    public IncrementalUDRUpdater(UDRAggregateStore store, List<File> cdrFiles, SubscriberRegistry subscribers,
+                                 File directory, UDRReportWriter reportWriter) {
+        this.store = store;
+        this.cdrFiles = cdrFiles;
+        this.subscribers = subscribers;
+        this.directory = directory;
+        this.reportWriter = reportWriter;
+    }
+
+    /**
+     * Обновляет агрегаты и отчеты по всем CDR файлам.
+     *
+     * @return итог обновления
+     *
+     * @throws IOException если чтение CDR файла не удалось
+     * @throws SQLException если обновление базы данных не удалось
+     */
+    public UpdateResult update() throws IOException, SQLException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        int unchanged = 0;
+        int appended = 0;
+        int recomputed = 0;
+        long processedBytes = 0;
+        long rewrittenReports = 0;
+
+        for (int i = 0; i < cdrFiles.size(); i++) {
+            int month = i + 1;
+            File cdrFile = cdrFiles.get(i);
+            UDRAggregateStore.CDRFileWatermark watermark = store.findWatermark(month);
+
+            // размер и время изменения запоминаются до чтения: записи, дописанные во время разбора,
+            // изменят их и будут учтены при следующем обновлении
+            long fileSize = cdrFile.length();
+            long lastModified = cdrFile.lastModified();
+            boolean sameFile = watermark != null && watermark.fileName().equals(cdrFile.getName());
+            if (sameFile && watermark.fileSize() == fileSize && watermark.lastModified() == lastModified) {
+                unchanged++;
+                continue;
+            }
+
+            CDRFileFormat format = CDRFileFormat.fromFile(cdrFile);
+            long dataStart = (format == CDRFileFormat.BINARY) ? BinaryCDRFormat.HEADER_SIZE : 0;
+            long dataEnd = findDataEnd(cdrFile, format);
+
+            boolean append = sameFile && !CDRCodecs.forFile(cdrFile).isCompressing() && watermark.lastOffset() <= dataEnd
+                    && checksum(cdrFile, dataStart, watermark.lastOffset()) == watermark.checksum();
+            long from = append ? watermark.lastOffset() : dataStart;
+
+            UDRAccumulator accumulator = new UDRAccumulator(-1);
+            malformedLinesCount += scan(cdrFile, format, from, dataEnd, accumulator);
+            TreeMap<String, RecordUDR> deltas = new TreeMap<>();
+            accumulator.mergeInto(deltas);
+            processedBytes += dataEnd - from;
+
+            UDRAggregateStore.CDRFileWatermark newWatermark = new UDRAggregateStore.CDRFileWatermark(month,
+                    cdrFile.getName(), fileSize, lastModified, dataEnd,
+                    checksum(cdrFile, dataStart, dataEnd));
+            applyDeltas(month, !append, deltas, newWatermark);
+
+            rewrittenReports += rewriteReports(month, !append, deltas);
+            if (append) {
+                appended++;
+            } else {
+                recomputed++;
+            }
+        }
+
+        if (malformedLinesCount > 0) {
+            System.err.println("Пропущено некорректных строк CDR файлов: " + malformedLinesCount);
+        }
+        return new UpdateResult(unchanged, appended, recomputed, processedBytes, rewrittenReports);
+    }
+
+    /**
+     * Сохраняет изменения агрегатов месяца и новую отметку в одной транзакции.
+     */
+    private void applyDeltas(int month, boolean recompute, TreeMap<String, RecordUDR> deltas,
+                             UDRAggregateStore.CDRFileWatermark watermark) throws SQLException {
+        Connection connection = store.getConnection();
+        boolean initialAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            if (recompute) {
+                store.deleteMonth(month);
+            }
+            store.addDeltas(month, deltas.values());
+            store.saveWatermark(watermark);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(initialAutoCommit);
+        }
+    }
+
+    /**
+     * Перезаписывает отчеты месяца: после полного пересчета или в NDJSON файле - все, иначе только затронутые.
+     *
+     * @return количество записанных отчетов абонентов
+     */
+    private long rewriteReports(int month, boolean recompute, TreeMap<String, RecordUDR> deltas) throws SQLException {
+        TreeMap<String, RecordUDR> aggregates = store.loadMonth(month);
+
+        if (recompute || reportWriter.getLayout() == UDRReportLayout.NDJSON) {
+            // абоненты без записей дополняются пустыми по идентификаторам реестра
+            List<RecordUDR> records = UDRMonth.of(subscribers, aggregates).records();
+            reportWriter.writeMonth(directory, month, records);
+            return records.size();
+        }
+
+        List<RecordUDR> affected = new ArrayList<>();
+        for (String phoneNumber : deltas.keySet()) {
+            affected.add(aggregates.get(phoneNumber));
+        }
+        reportWriter.writeMonth(directory, month, affected);
+        return affected.size();
+    }
+
+    /**
+     * Определяет конец полностью записанных данных: для текстового файла - позиция после последнего
+     * перевода строки (незавершенная строка будет учтена при следующем обновлении),
+     * для двоичного - конец записей, указанных в заголовке, для сжатого - размер файла.
+     */
+    static long findDataEnd(File cdrFile, CDRFileFormat format) throws IOException {
+        if (CDRCodecs.forFile(cdrFile).isCompressing()) {
+            return cdrFile.length();
+        }
+        if (format == CDRFileFormat.BINARY) {
+            try (BinaryCDRReader reader = new BinaryCDRReader(cdrFile)) {
+                return BinaryCDRFormat.HEADER_SIZE + reader.getRecordsCount() * BinaryCDRFormat.RECORD_SIZE;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > 0) {
+                long start = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - start));
+                readFully(channel, buffer, start);
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Разбирает записи CDR файла в диапазоне [from, to) байт (сжатый файл разбирается целиком).
+     *
+     * @return количество пропущенных некорректных строк
+     */
+    static long scan(File cdrFile, CDRFileFormat format, long from, long to, UDRAccumulator accumulator)
+            throws IOException {
+        if (from >= to) {
+            return 0;
+        }
+        if (format == CDRFileFormat.BINARY) {
+            try (BinaryCDRReader reader = new BinaryCDRReader(cdrFile)) {
+                long firstRecord = (from - BinaryCDRFormat.HEADER_SIZE) / BinaryCDRFormat.RECORD_SIZE;
+                long endRecord = (to - BinaryCDRFormat.HEADER_SIZE) / BinaryCDRFormat.RECORD_SIZE;
+                for (long first = firstRecord; first < endRecord; first += BinaryCDRReader.MAX_SEGMENT_RECORDS) {
+                    int segmentRecords = (int) Math.min(BinaryCDRReader.MAX_SEGMENT_RECORDS, endRecord - first);
+                    accumulator.acceptSegment(reader.mapRecords(first, segmentRecords), segmentRecords);
+                }
+            }
+        } else {
+            CDRLineParser parser = new CDRLineParser();
+            CDRCodec codec = CDRCodecs.forFile(cdrFile);
+            if (codec.isCompressing()) {
+                try (AsyncDecompressingInputStream input = new AsyncDecompressingInputStream(cdrFile, codec, null)) {
+                    parser.parse(input, accumulator);
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+                    parser.parse(channel, from, to, accumulator);
+                }
+            }
+            return parser.getMalformedLinesCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Вычисляет CRC32 последних CHECKSUM_WINDOW байт данных перед позицией end.
+     */
+    static long checksum(File cdrFile, long dataStart, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        long start = Math.max(dataStart, end - CHECKSUM_WINDOW);
+        if (start >= end) {
+            return crc.getValue();
+        }
+        try (FileChannel channel = FileChannel.open(cdrFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            readFully(channel, buffer, start);
+            buffer.flip();
+            crc.update(buffer);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Читает из канала в буфер, начиная с позиции position, пока буфер не заполнится или не кончится файл.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                return;
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package nexign.task.services.udr;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.Duration;
 
 
@@ -27,6 +29,16 @@ public class RecordUDR {
         return outgoingCall;
     }
 
+    /**
+     * Добавляет к этой записи длительности звонков другой записи того же абонента.
+     *
+     * @param other частичная UDR запись того же абонента
+     */
+    public void merge(RecordUDR other) {
+        incomingCall.totalTimeSeconds += other.incomingCall.totalTimeSeconds;
+        outgoingCall.totalTimeSeconds += other.outgoingCall.totalTimeSeconds;
+    }
+
     public static class CallDetails {
         private long totalTimeSeconds;
 
@@ -34,6 +46,18 @@ public class RecordUDR {
             totalTimeSeconds += duration.getSeconds();
         }
 
+        public void addSeconds(long seconds) {
+            totalTimeSeconds += seconds;
+        }
+
+        /**
+         * @return суммарная длительность звонков в секундах (не выводится в JSON отчет)
+         */
+        @JsonIgnore
+        public long getTotalSeconds() {
+            return totalTimeSeconds;
+        }
+
         public String getTotalTime() {
             long seconds = totalTimeSeconds % 60;
             long minutes = (totalTimeSeconds / 60) % 60;
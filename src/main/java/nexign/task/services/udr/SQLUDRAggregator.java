@@ -0,0 +1,92 @@
+package nexign.task.services.udr;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TreeMap;
+
+import nexign.task.database.DatabaseInitializer;
+
+/**
+ * SQLUDRAggregator - получение данных для UDR отчетов из таблиц CDR месяцев (CDR_01..CDR_12).
+ * Суммарная длительность звонков считается в базе данных запросом с группировкой по абоненту и типу звонка
+ * за диапазон времени начала звонков, поэтому CDR файлы не читаются, а запрос за месяц читает только таблицу месяца.
+ * Месяц определяется по времени начала звонка в UTC, так же как при генерации CDR файлов.
+ */
+public class SQLUDRAggregator {
+
+    /** суммы длительностей звонков всех абонентов за диапазон времени (%s - таблица месяца) */
+    static final String MONTH_TOTALS_SQL =
+            "select msisdn, call_type, sum(end_time_unix - start_time_unix) from %s " +
+            "where start_time_unix >= ? and start_time_unix < ? " +
+            "group by msisdn, call_type";
+
+    /** суммы длительностей звонков одного абонента за диапазон времени (%s - таблица месяца) */
+    static final String SUBSCRIBER_MONTH_TOTALS_SQL =
+            "select msisdn, call_type, sum(end_time_unix - start_time_unix) from %s " +
+            "where msisdn = ? and start_time_unix >= ? and start_time_unix < ? " +
+            "group by msisdn, call_type";
+
+    private final Connection connection;
+    private final int year;
+
+    /**
+     * Создает недостающие индексы таблиц CDR месяцев, по которым выполняются запросы.
+     *
+     * @param connection соединение с базой данных
+     * @param year год, за который строятся отчеты
+     */
+    public SQLUDRAggregator(Connection connection, int year) {
+        this.connection = connection;
+        this.year = year;
+        DatabaseInitializer.createCDRIndexes(connection);
+    }
+
+    /**
+     * Вычисляет UDR записи за месяц.
+     *
+     * @param month месяц (1-12)
+     * @param msisdn номер абонента (если null - все абоненты)
+     *
+     * @return отображение UDR по номерам абонентов, встретившихся в таблице CDR за месяц
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public TreeMap<String, RecordUDR> aggregateMonth(int month, String msisdn) throws SQLException {
+        LocalDateTime startOfMonth = LocalDateTime.of(year, month, 1, 0, 0);
+        long startUnixTime = startOfMonth.toInstant(ZoneOffset.UTC).getEpochSecond();
+        long endUnixTime = startOfMonth.plusMonths(1).toInstant(ZoneOffset.UTC).getEpochSecond();
+
+        TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
+        String sql = String.format((msisdn == null) ? MONTH_TOTALS_SQL : SUBSCRIBER_MONTH_TOTALS_SQL,
+                DatabaseInitializer.cdrTableName(month));
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int parameter = 1;
+            if (msisdn != null) {
+                statement.setString(parameter++, msisdn);
+            }
+            statement.setLong(parameter++, startUnixTime);
+            statement.setLong(parameter, endUnixTime);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String phoneNumber = resultSet.getString(1);
+                    String callType = resultSet.getString(2);
+                    long seconds = resultSet.getLong(3);
+
+                    RecordUDR udr = udrMap.computeIfAbsent(phoneNumber, RecordUDR::new);
+                    if (callType.equals("01")) {
+                        udr.getOutgoingCall().addSeconds(seconds);
+                    } else if (callType.equals("02")) {
+                        udr.getIncomingCall().addSeconds(seconds);
+                    }
+                }
+            }
+        }
+        return udrMap;
+    }
+}
@@ -0,0 +1,545 @@
+package nexign.task.services.udr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+import nexign.task.services.cdr.CDRBuffer;
+
+/**
+ * SpillingUDRAggregator - накопитель длительностей звонков всех абонентов за все месяцы
+ * с ограниченным объемом памяти.
+ * Длительности складываются в хеш-таблицу на примитивных массивах по ключу (номер, месяц). Когда количество
+ * ключей достигает предела, заданного бюджетом памяти, таблица сортируется по ключу и выгружается
+ * во временный файл (отсортированную серию), после чего заполняется заново. В конце серии объединяются
+ * k-путевым слиянием, и записи выдаются по возрастанию номера, а для номера - по возрастанию месяца,
+ * поэтому отчеты можно записывать по одному абоненту, не держа в памяти агрегаты всех абонентов.
+ * Если серий больше, чем можно одновременно открыть в рамках бюджета, слияние выполняется в несколько проходов.
+ * Объект не потокобезопасен.
+ */
+class SpillingUDRAggregator implements UDRRecordSink, Closeable {
+    /** размер записи серии: ключ, исходящие и входящие секунды */
+    private static final int RUN_RECORD_SIZE = 3 * Long.BYTES;
+    /** байт памяти на ячейку хеш-таблицы: три массива long */
+    private static final int SLOT_SIZE = 3 * Long.BYTES;
+    /** размер буфера чтения и записи серии */
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_RUN_BUFFER_SIZE = 256;
+    private static final int MAX_MERGE_FAN_IN = 1024;
+    /** месяц занимает младшие 4 бита ключа */
+    private static final int MONTH_BITS = 4;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Counter SPILLED_RUNS = Metrics.counter("udr_spilled_runs_total",
+            "Выгружено на диск отсортированных серий агрегатов UDR");
+    private static final Counter SPILLED_BYTES = Metrics.counter("udr_spilled_bytes_total",
+            "Записано байт серий агрегатов UDR на диск (вместе с промежуточными слияниями)");
+
+    /**
+     * Отсортированная серия во временном файле.
+     *
+     * @param file временный файл
+     * @param recordsCount количество записей
+     */
+    private record SpillRun(File file, long recordsCount) {}
+
+    private final File spillDirectory;
+    /** наибольшее количество ячеек хеш-таблицы (степень двойки) */
+    private final int maxCapacity;
+    /** размер буфера одной серии при слиянии */
+    private final int runBufferSize;
+    /** наибольшее количество серий, объединяемых за один проход */
+    private final int mergeFanIn;
+
+    private long[] keys;
+    private long[] outgoingSeconds;
+    private long[] incomingSeconds;
+    /** ячейка занята, если ключ не равен нулю (номер абонента не бывает нулевым) */
+    private int size;
+
+    private final List<SpillRun> runs = new ArrayList<>();
+    private int month;
+    private long recordsCount;
+    private long spilledRunsCount;
+    private long spilledBytes;
+    private boolean merging;
+
+    /**
+     * Бюджет соблюдается, если он не меньше трех минимальных буферов слияния (768 байт):
+     * при меньшем бюджете слияние все равно использует две входные серии и одну выходную.
+     *
+     * @param memoryBudgetBytes объем памяти для хеш-таблицы и буферов слияния (в байтах)
+     * @param spillDirectory директория временных файлов серий
+     */
+    SpillingUDRAggregator(long memoryBudgetBytes, File spillDirectory) {
+        if (memoryBudgetBytes < 1) {
+            throw new IllegalArgumentException("Бюджет памяти должен быть положительным");
+        }
+        this.spillDirectory = spillDirectory;
+        // половина бюджета - хеш-таблица, заполняемая не более чем наполовину
+        long slots = Math.max(16, memoryBudgetBytes / 2 / SLOT_SIZE);
+        this.maxCapacity = Integer.highestOneBit((int) Math.min(slots, 1 << 30));
+        // при слиянии таблица уже освобождена, бюджет делится между буферами входных серий и выходной серии
+        this.runBufferSize = (int) Math.max(MIN_RUN_BUFFER_SIZE, Math.min(RUN_BUFFER_SIZE, memoryBudgetBytes / 16));
+        this.mergeFanIn = (int) Math.max(2, Math.min(MAX_MERGE_FAN_IN, memoryBudgetBytes / runBufferSize - 1));
+        allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+    }
+
+    /**
+     * Задает месяц, к которому относятся следующие записи.
+     *
+     * @param month месяц (1-12)
+     */
+    void setMonth(int month) {
+        if (month < 1 || month >= 1 << MONTH_BITS) {
+            throw new IllegalArgumentException("Недопустимый номер месяца: " + month);
+        }
+        this.month = month;
+    }
+
+    @Override
+    public void accept(byte callType, long msisdn, long startTime, long endTime) {
+        if (merging) {
+            throw new IllegalStateException("Записи нельзя добавлять после начала слияния");
+        }
+        if (month == 0) {
+            throw new IllegalStateException("Месяц записей не задан");
+        }
+        recordsCount++;
+        long seconds = endTime - startTime;
+        int slot = slot((msisdn << MONTH_BITS) | month);
+        if (callType == CDRBuffer.CALL_TYPE_OUTGOING) {
+            outgoingSeconds[slot] += seconds;
+        } else if (callType == CDRBuffer.CALL_TYPE_INCOMING) {
+            incomingSeconds[slot] += seconds;
+        }
+    }
+
+    @Override
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+
+    /**
+     * @return количество серий, выгруженных на диск при накоплении
+     */
+    long getSpilledRunsCount() {
+        return spilledRunsCount;
+    }
+
+    /**
+     * @return объем записанных на диск серий (вместе с промежуточными слияниями)
+     */
+    long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Возвращает ячейку ключа, добавляя ключ при первом обращении.
+     * Если таблица заполнена, она выгружается на диск и ключ добавляется в пустую таблицу.
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size >= keys.length / 2) {
+            if (keys.length < maxCapacity) {
+                grow();
+            } else {
+                spill();
+            }
+            return slot(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        outgoingSeconds = new long[capacity];
+        incomingSeconds = new long[capacity];
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldOutgoing = outgoingSeconds;
+        long[] oldIncoming = incomingSeconds;
+        allocate(oldKeys.length * 2);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                outgoingSeconds[slot] = oldOutgoing[i];
+                incomingSeconds[slot] = oldIncoming[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Сортирует записи таблицы по ключу и записывает их в новую серию, затем очищает таблицу.
+     */
+    private void spill() {
+        int count = compactAndSort();
+        try {
+            File file = createRunFile();
+            try (DataOutputStream out = openRunOutput(file)) {
+                for (int i = 0; i < count; i++) {
+                    writeRecord(out, keys[i], outgoingSeconds[i], incomingSeconds[i]);
+                }
+            }
+            addRun(file, count);
+            spilledRunsCount++;
+            SPILLED_RUNS.increment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось выгрузить агрегаты UDR на диск", e);
+        }
+
+        Arrays.fill(keys, 0);
+        Arrays.fill(outgoingSeconds, 0);
+        Arrays.fill(incomingSeconds, 0);
+        size = 0;
+    }
+
+    /**
+     * Переносит занятые ячейки в начало массивов и сортирует их по ключу.
+     *
+     * @return количество записей
+     */
+    private int compactAndSort() {
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                keys[count] = keys[i];
+                outgoingSeconds[count] = outgoingSeconds[i];
+                incomingSeconds[count] = incomingSeconds[i];
+                if (count != i) {
+                    keys[i] = 0;
+                    outgoingSeconds[i] = 0;
+                    incomingSeconds[i] = 0;
+                }
+                count++;
+            }
+        }
+        sort(0, count - 1);
+        return count;
+    }
+
+    /**
+     * Быстрая сортировка диапазона [low, high] по ключу с перестановкой значений вместе с ключами.
+     * Рекурсия идет в меньшую часть, поэтому глубина стека логарифмическая.
+     */
+    private void sort(int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            // медиана трех в качестве опорного элемента
+            if (keys[middle] < keys[low]) swap(middle, low);
+            if (keys[high] < keys[low]) swap(high, low);
+            if (keys[high] < keys[middle]) swap(high, middle);
+            long pivot = keys[middle];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        // короткие диапазоны - сортировка вставками
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && keys[j] < keys[j - 1]; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long outgoing = outgoingSeconds[i];
+        outgoingSeconds[i] = outgoingSeconds[j];
+        outgoingSeconds[j] = outgoing;
+        long incoming = incomingSeconds[i];
+        incomingSeconds[i] = incomingSeconds[j];
+        incomingSeconds[j] = incoming;
+    }
+
+    /**
+     * Завершает накопление и начинает слияние серий. Если выгрузок не было, записи выдаются прямо из памяти.
+     * После вызова добавлять записи нельзя.
+     *
+     * @return курсор по агрегатам в порядке возрастания номера и месяца
+     *
+     * @throws IOException если не удалось записать или прочитать серии
+     */
+    Cursor merge() throws IOException {
+        merging = true;
+        if (runs.isEmpty()) {
+            return new MemoryCursor(compactAndSort());
+        }
+
+        if (size > 0) {
+            try {
+                spill();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        // таблица больше не нужна, память отдается буферам слияния
+        keys = null;
+        outgoingSeconds = null;
+        incomingSeconds = null;
+
+        // промежуточные проходы, пока серий больше, чем можно открыть одновременно
+        while (runs.size() > mergeFanIn) {
+            List<SpillRun> group = new ArrayList<>(runs.subList(0, mergeFanIn));
+
+            File file = createRunFile();
+            long count = 0;
+            try (MergeCursor cursor = new MergeCursor(group);
+                 DataOutputStream out = openRunOutput(file)) {
+                while (cursor.next()) {
+                    writeRecord(out, cursor.key, cursor.outgoingSeconds, cursor.incomingSeconds);
+                    count++;
+                }
+            } catch (IOException | RuntimeException e) {
+                // серии группы остаются в списке и будут удалены в close(), недописанная серия удаляется сразу
+                if (!file.delete() && file.exists()) {
+                    System.err.println("Не удалось удалить временный файл " + file);
+                }
+                throw e;
+            }
+            // серии группы заменяются результатом слияния только после его успешной записи
+            addRun(file, count);
+            runs.subList(0, mergeFanIn).clear();
+            for (SpillRun run : group) {
+                if (!run.file().delete() && run.file().exists()) {
+                    System.err.println("Не удалось удалить временный файл " + run.file());
+                }
+            }
+        }
+        return new MergeCursor(new ArrayList<>(runs));
+    }
+
+    private File createRunFile() throws IOException {
+        spillDirectory.mkdirs();
+        return Files.createTempFile(spillDirectory.toPath(), "udr_spill_", ".run").toFile();
+    }
+
+    private DataOutputStream openRunOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), runBufferSize));
+    }
+
+    private void addRun(File file, long count) {
+        runs.add(new SpillRun(file, count));
+        spilledBytes += count * RUN_RECORD_SIZE;
+        SPILLED_BYTES.add(count * RUN_RECORD_SIZE);
+    }
+
+    private static void writeRecord(DataOutputStream out, long key, long outgoing, long incoming) throws IOException {
+        out.writeLong(key);
+        out.writeLong(outgoing);
+        out.writeLong(incoming);
+    }
+
+    /**
+     * Удаляет временные файлы серий.
+     */
+    @Override
+    public void close() {
+        for (SpillRun run : runs) {
+            if (!run.file().delete() && run.file().exists()) {
+                System.err.println("Не удалось удалить временный файл " + run.file());
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Курсор по агрегатам (номер, месяц) в порядке возрастания. Каждая пара встречается один раз.
+     */
+    abstract static class Cursor implements Closeable {
+        long key;
+        long outgoingSeconds;
+        long incomingSeconds;
+
+        /**
+         * Переходит к следующему агрегату.
+         *
+         * @return false, если агрегатов больше нет
+         *
+         * @throws IOException если не удалось прочитать серию
+         */
+        abstract boolean next() throws IOException;
+
+        long msisdn() {
+            return key >>> MONTH_BITS;
+        }
+
+        int month() {
+            return (int) (key & ((1 << MONTH_BITS) - 1));
+        }
+
+        long outgoingSeconds() {
+            return outgoingSeconds;
+        }
+
+        long incomingSeconds() {
+            return incomingSeconds;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /** курсор по отсортированной таблице в памяти, если выгрузок не было */
+    private final class MemoryCursor extends Cursor {
+        private final int count;
+        private int position;
+
+        private MemoryCursor(int count) {
+            this.count = count;
+        }
+
+        @Override
+        boolean next() {
+            if (position >= count) {
+                return false;
+            }
+            key = keys[position];
+            outgoingSeconds = SpillingUDRAggregator.this.outgoingSeconds[position];
+            incomingSeconds = SpillingUDRAggregator.this.incomingSeconds[position];
+            position++;
+            return true;
+        }
+    }
+
+    /** чтение одной серии */
+    private final class RunReader implements Closeable {
+        private final DataInputStream input;
+        private long remaining;
+        private long key;
+        private long outgoing;
+        private long incoming;
+
+        private RunReader(SpillRun run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file()), runBufferSize));
+            this.remaining = run.recordsCount();
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            key = input.readLong();
+            outgoing = input.readLong();
+            incoming = input.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /** k-путевое слияние серий: одинаковые ключи разных серий складываются */
+    private final class MergeCursor extends Cursor {
+        private final List<RunReader> readers = new ArrayList<>();
+        private final PriorityQueue<RunReader> queue =
+                new PriorityQueue<>((first, second) -> Long.compare(first.key, second.key));
+
+        private MergeCursor(List<SpillRun> mergedRuns) throws IOException {
+            try {
+                for (SpillRun run : mergedRuns) {
+                    RunReader reader = new RunReader(run);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                return false;
+            }
+            key = reader.key;
+            outgoingSeconds = reader.outgoing;
+            incomingSeconds = reader.incoming;
+            requeue(reader);
+
+            while (!queue.isEmpty() && queue.peek().key == key) {
+                reader = queue.poll();
+                outgoingSeconds += reader.outgoing;
+                incomingSeconds += reader.incoming;
+                requeue(reader);
+            }
+            return true;
+        }
+
+        private void requeue(RunReader reader) throws IOException {
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package nexign.task.services.udr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.utilities.SubscriberRegistry;
+
+/**
+ * UDRAccumulator - накопитель длительностей звонков по номерам абонентов.
+ * Записи ищутся в хеш-таблице с открытой адресацией по числовому номеру, поэтому на звонок
+ * не создается ни строки с номером, ни временных объектов; новая запись RecordUDR создается
+ * только при первой встрече абонента.
+ * Если задан реестр абонентов, длительности складываются в массивы, индексированные идентификатором
+ * абонента из реестра, а в хеш-таблицу попадают только номера, которых нет в реестре.
+ */
+class UDRAccumulator implements UDRRecordSink {
+    private long[] keys;
+    private RecordUDR[] values;
+    private int size;
+
+    /** реестр абонентов (null - все номера учитываются в хеш-таблице) */
+    private final SubscriberRegistry registry;
+    /** длительности исходящих и входящих звонков по идентификаторам абонентов из реестра */
+    private final long[] outgoingSeconds;
+    private final long[] incomingSeconds;
+
+    /** номер абонента, звонки которого учитываются (-1 - все абоненты) */
+    private final long msisdnFilter;
+    /** количество учтенных звонков */
+    private long recordsCount;
+
+    /**
+     * @param msisdnFilter номер абонента, звонки которого нужно учесть (-1 - все абоненты)
+     */
+    UDRAccumulator(long msisdnFilter) {
+        this.msisdnFilter = msisdnFilter;
+        this.registry = null;
+        this.outgoingSeconds = null;
+        this.incomingSeconds = null;
+        this.keys = new long[1024];
+        this.values = new RecordUDR[1024];
+    }
+
+    /**
+     * Создает накопитель звонков всех абонентов с массивами по идентификаторам из реестра.
+     *
+     * @param registry реестр абонентов
+     */
+    UDRAccumulator(SubscriberRegistry registry) {
+        this.msisdnFilter = -1;
+        this.registry = registry;
+        this.outgoingSeconds = new long[registry.size()];
+        this.incomingSeconds = new long[registry.size()];
+        this.keys = new long[16];
+        this.values = new RecordUDR[16];
+    }
+
+    @Override
+    public void accept(byte callType, long msisdn, long startTime, long endTime) {
+        if (msisdnFilter != -1 && msisdnFilter != msisdn) {
+            return;
+        }
+        recordsCount++;
+        if (registry != null) {
+            int id = registry.idOf(msisdn);
+            if (id >= 0) {
+                if (callType == CDRBuffer.CALL_TYPE_OUTGOING) {
+                    outgoingSeconds[id] += endTime - startTime;
+                } else if (callType == CDRBuffer.CALL_TYPE_INCOMING) {
+                    incomingSeconds[id] += endTime - startTime;
+                }
+                return;
+            }
+        }
+        RecordUDR udr = get(msisdn);
+        if (callType == CDRBuffer.CALL_TYPE_OUTGOING) {
+            udr.getOutgoingCall().addSeconds(endTime - startTime);
+        } else if (callType == CDRBuffer.CALL_TYPE_INCOMING) {
+            udr.getIncomingCall().addSeconds(endTime - startTime);
+        }
+    }
+
+    /**
+     * @return количество учтенных звонков
+     */
+    @Override
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+
+    /**
+     * @return количество абонентов, по которым накоплены записи
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает запись абонента, создавая ее при первом обращении.
+     */
+    private RecordUDR get(long msisdn) {
+        int mask = keys.length - 1;
+        int slot = hash(msisdn) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == msisdn) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        RecordUDR udr = new RecordUDR(Long.toString(msisdn));
+        keys[slot] = msisdn;
+        values[slot] = udr;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return udr;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        RecordUDR[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new RecordUDR[oldValues.length * 2];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long msisdn) {
+        long h = msisdn * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Прибавляет к этому накопителю записи другого накопителя с тем же реестром (например, другой части файла).
+     *
+     * @param other накопитель части данных
+     */
+    void add(UDRAccumulator other) {
+        if (registry != other.registry) {
+            throw new IllegalArgumentException("Накопители должны использовать один реестр абонентов");
+        }
+        if (registry != null) {
+            for (int id = 0; id < outgoingSeconds.length; id++) {
+                outgoingSeconds[id] += other.outgoingSeconds[id];
+                incomingSeconds[id] += other.incomingSeconds[id];
+            }
+        }
+        for (RecordUDR udr : other.values) {
+            if (udr != null) {
+                get(Long.parseLong(udr.getMsisdn())).merge(udr);
+            }
+        }
+        recordsCount += other.recordsCount;
+    }
+
+    /**
+     * Создает записи UDR за месяц для всех абонентов реестра (в том числе без звонков)
+     * и номеров, которых нет в реестре. Записи реестра раскладываются по идентификаторам абонентов.
+     *
+     * @return записи UDR за месяц
+     */
+    UDRMonth toUDRMonth() {
+        if (registry == null) {
+            throw new IllegalStateException("Накопитель создан без реестра абонентов");
+        }
+        RecordUDR[] subscriberUDRs = new RecordUDR[outgoingSeconds.length];
+        for (int id = 0; id < outgoingSeconds.length; id++) {
+            RecordUDR udr = new RecordUDR(registry.phoneNumber(id));
+            udr.getOutgoingCall().addSeconds(outgoingSeconds[id]);
+            udr.getIncomingCall().addSeconds(incomingSeconds[id]);
+            subscriberUDRs[id] = udr;
+        }
+        List<RecordUDR> otherUDRs = new ArrayList<>(size);
+        for (RecordUDR udr : values) {
+            if (udr != null) {
+                otherUDRs.add(udr);
+            }
+        }
+        return new UDRMonth(registry, subscriberUDRs, otherUDRs);
+    }
+
+    /**
+     * Переносит накопленные записи в отображение UDR, складывая их с уже имеющимися.
+     * Из массивов реестра переносятся только абоненты со звонками.
+     *
+     * @param udrMap отображение UDR по номерам абонентов
+     */
+    void mergeInto(TreeMap<String, RecordUDR> udrMap) {
+        if (registry != null) {
+            for (int id = 0; id < outgoingSeconds.length; id++) {
+                if (outgoingSeconds[id] != 0 || incomingSeconds[id] != 0) {
+                    RecordUDR udr = udrMap.computeIfAbsent(registry.phoneNumber(id), RecordUDR::new);
+                    udr.getOutgoingCall().addSeconds(outgoingSeconds[id]);
+                    udr.getIncomingCall().addSeconds(incomingSeconds[id]);
+                }
+            }
+        }
+        mergeHashInto(udrMap);
+    }
+
+    private void mergeHashInto(TreeMap<String, RecordUDR> udrMap) {
+        for (RecordUDR udr : values) {
+            if (udr != null) {
+                RecordUDR existing = udrMap.putIfAbsent(udr.getMsisdn(), udr);
+                if (existing != null) {
+                    existing.merge(udr);
+                }
+            }
+        }
+    }
+}
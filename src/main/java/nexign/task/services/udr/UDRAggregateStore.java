@@ -0,0 +1,168 @@
+package nexign.task.services.udr;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.TreeMap;
+
+import nexign.task.database.DatabaseInitializer;
+
+/**
+ * UDRAggregateStore - хранение UDR агрегатов и отметок обработки CDR файлов в базе данных.
+ * Таблицы UDR_AGGREGATES и CDR_FILE_WATERMARKS создаются при первом обращении и не удаляются между запусками.
+ */
+public class UDRAggregateStore {
+
+    /** прибавляет длительности звонков к агрегату абонента за месяц или создает его */
+    static final String ADD_AGGREGATE_SQL =
+            "merge into UDR_AGGREGATES t using (values (cast(? as VARCHAR(11)), cast(? as INT), " +
+            "cast(? as BIGINT), cast(? as BIGINT))) s(msisdn, report_month, incoming_seconds, outgoing_seconds) " +
+            "on t.msisdn = s.msisdn and t.report_month = s.report_month " +
+            "when matched then update set t.incoming_seconds = t.incoming_seconds + s.incoming_seconds, " +
+            "t.outgoing_seconds = t.outgoing_seconds + s.outgoing_seconds " +
+            "when not matched then insert values (s.msisdn, s.report_month, s.incoming_seconds, s.outgoing_seconds)";
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Отметка обработки CDR файла месяца.
+     *
+     * @param month месяц
+     * @param fileName имя CDR файла
+     * @param fileSize размер файла при обработке
+     * @param lastModified время изменения файла при обработке
+     * @param lastOffset позиция в файле, до которой записи учтены в агрегатах
+     * @param checksum CRC32 последних байт перед lastOffset, по которой проверяется, что файл только дописывался
+     */
+    public record CDRFileWatermark(int month, String fileName, long fileSize, long lastModified,
+                                   long lastOffset, long checksum) {}
+
+    private final Connection connection;
+
+    /**
+     * @param connection соединение с базой данных
+     */
+    public UDRAggregateStore(Connection connection) {
+        this.connection = connection;
+        DatabaseInitializer.createUDRTables(connection);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @param month месяц
+     *
+     * @return отметка обработки CDR файла месяца или null, если файл еще не обрабатывался
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public CDRFileWatermark findWatermark(int month) throws SQLException {
+        String sql = "select file_name, file_size, last_modified, last_offset, checksum " +
+                "from CDR_FILE_WATERMARKS where report_month = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, month);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                return new CDRFileWatermark(month, resultSet.getString(1), resultSet.getLong(2),
+                        resultSet.getLong(3), resultSet.getLong(4), resultSet.getLong(5));
+            }
+        }
+    }
+
+    /**
+     * Сохраняет отметку обработки CDR файла (в текущей транзакции).
+     *
+     * @param watermark отметка обработки
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public void saveWatermark(CDRFileWatermark watermark) throws SQLException {
+        String sql = "merge into CDR_FILE_WATERMARKS " +
+                "(report_month, file_name, file_size, last_modified, last_offset, checksum) key (report_month) " +
+                "values (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, watermark.month());
+            statement.setString(2, watermark.fileName());
+            statement.setLong(3, watermark.fileSize());
+            statement.setLong(4, watermark.lastModified());
+            statement.setLong(5, watermark.lastOffset());
+            statement.setLong(6, watermark.checksum());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Удаляет агрегаты месяца перед полным пересчетом (в текущей транзакции).
+     *
+     * @param month месяц
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public void deleteMonth(int month) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("delete from UDR_AGGREGATES where report_month = ?")) {
+            statement.setInt(1, month);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Прибавляет длительности звонков к агрегатам месяца пакетами (в текущей транзакции).
+     *
+     * @param month месяц
+     * @param deltas UDR записи с длительностями новых звонков
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public void addDeltas(int month, Collection<RecordUDR> deltas) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(ADD_AGGREGATE_SQL)) {
+            int batched = 0;
+            for (RecordUDR delta : deltas) {
+                statement.setString(1, delta.getMsisdn());
+                statement.setInt(2, month);
+                statement.setLong(3, delta.getIncomingCall().getTotalSeconds());
+                statement.setLong(4, delta.getOutgoingCall().getTotalSeconds());
+                statement.addBatch();
+                if (++batched == BATCH_SIZE) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Загружает агрегаты месяца.
+     *
+     * @param month месяц
+     *
+     * @return отображение UDR по номерам абонентов
+     *
+     * @throws SQLException если запрос не удался
+     */
+    public TreeMap<String, RecordUDR> loadMonth(int month) throws SQLException {
+        TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
+        String sql = "select msisdn, incoming_seconds, outgoing_seconds from UDR_AGGREGATES where report_month = ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, month);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    RecordUDR udr = new RecordUDR(resultSet.getString(1));
+                    udr.getIncomingCall().addSeconds(resultSet.getLong(2));
+                    udr.getOutgoingCall().addSeconds(resultSet.getLong(3));
+                    udrMap.put(udr.getMsisdn(), udr);
+                }
+            }
+        }
+        return udrMap;
+    }
+}
@@ -0,0 +1,28 @@
+package nexign.task.services.udr;
+
+/**
+ * Способы получения данных для UDR отчетов.
+ */
+public enum UDREngine {
+    /** разбор CDR файлов */
+    FILE,
+    /** группирующие SQL запросы к таблице CDR в базе данных */
+    SQL;
+
+    /**
+     * Определяет способ по названию из настроек (без учета регистра).
+     *
+     * @param name название способа
+     * @param defaultEngine способ, возвращаемый при неизвестном названии
+     *
+     * @return способ получения данных для отчетов
+     */
+    public static UDREngine fromString(String name, UDREngine defaultEngine) {
+        for (UDREngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        return defaultEngine;
+    }
+}
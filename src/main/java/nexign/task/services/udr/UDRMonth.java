@@ -0,0 +1,123 @@
+package nexign.task.services.udr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nexign.task.utilities.SubscriberRegistry;
+
+/**
+ * UDRMonth - записи UDR всех абонентов за один месяц.
+ * Записи абонентов реестра хранятся в массиве, индексированном идентификатором абонента,
+ * поэтому вывод отчетов по абонентам не требует поиска по строковому номеру.
+ * Отдельно хранится список всех записей (в том числе номеров, которых нет в реестре) в порядке номеров
+ * для записи файлов отчетов.
+ */
+final class UDRMonth {
+    /** записи абонентов реестра по идентификаторам */
+    private final RecordUDR[] subscriberUDRs;
+    /** все записи месяца в порядке номеров */
+    private final List<RecordUDR> records;
+
+    /**
+     * @param registry реестр абонентов
+     * @param subscriberUDRs записи абонентов реестра по идентификаторам (без пропусков)
+     * @param otherUDRs записи номеров, которых нет в реестре
+     */
+    UDRMonth(SubscriberRegistry registry, RecordUDR[] subscriberUDRs, List<RecordUDR> otherUDRs) {
+        this.subscriberUDRs = subscriberUDRs;
+        this.records = mergeRecords(registry, subscriberUDRs, otherUDRs);
+    }
+
+    /**
+     * Создает записи месяца по отображению UDR: записи абонентов реестра раскладываются по идентификаторам,
+     * для абонентов без записей создаются пустые.
+     *
+     * @param registry реестр абонентов
+     * @param udrMap отображение UDR за месяц
+     */
+    static UDRMonth of(SubscriberRegistry registry, Map<String, RecordUDR> udrMap) {
+        RecordUDR[] subscriberUDRs = new RecordUDR[registry.size()];
+        List<RecordUDR> otherUDRs = new ArrayList<>();
+        for (RecordUDR udr : udrMap.values()) {
+            int id = registry.idOf(udr.getMsisdn());
+            if (id >= 0) {
+                subscriberUDRs[id] = udr;
+            } else {
+                otherUDRs.add(udr);
+            }
+        }
+        for (int id = 0; id < subscriberUDRs.length; id++) {
+            if (subscriberUDRs[id] == null) {
+                subscriberUDRs[id] = new RecordUDR(registry.phoneNumber(id));
+            }
+        }
+        return new UDRMonth(registry, subscriberUDRs, otherUDRs);
+    }
+
+    /**
+     * @param id идентификатор абонента в реестре
+     * @return запись UDR абонента за месяц
+     */
+    RecordUDR get(int id) {
+        return subscriberUDRs[id];
+    }
+
+    /**
+     * @return все записи месяца в порядке номеров
+     */
+    List<RecordUDR> records() {
+        return records;
+    }
+
+    /**
+     * Создает отображение UDR за месяц по номерам абонентов (для получателей, которым нужен поиск по номеру).
+     */
+    TreeMap<String, RecordUDR> toUDRMap() {
+        TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
+        for (RecordUDR udr : records) {
+            udrMap.put(udr.getMsisdn(), udr);
+        }
+        return udrMap;
+    }
+
+    /**
+     * Сливает записи реестра (упорядочены по идентификаторам, то есть по номерам)
+     * с отсортированными записями номеров, которых нет в реестре.
+     */
+    private static List<RecordUDR> mergeRecords(SubscriberRegistry registry, RecordUDR[] subscriberUDRs,
+                                                List<RecordUDR> otherUDRs) {
+        if (otherUDRs.isEmpty()) {
+            return Collections.unmodifiableList(Arrays.asList(subscriberUDRs));
+        }
+        List<RecordUDR> sortedOthers = new ArrayList<>(otherUDRs);
+        sortedOthers.sort(Comparator.comparingLong(UDRMonth::numberOf));
+
+        List<RecordUDR> merged = new ArrayList<>(subscriberUDRs.length + sortedOthers.size());
+        int j = 0;
+        for (int id = 0; id < subscriberUDRs.length; id++) {
+            long number = registry.msisdn(id);
+            while (j < sortedOthers.size() && numberOf(sortedOthers.get(j)) < number) {
+                merged.add(sortedOthers.get(j++));
+            }
+            merged.add(subscriberUDRs[id]);
+        }
+        merged.addAll(sortedOthers.subList(j, sortedOthers.size()));
+        return Collections.unmodifiableList(merged);
+    }
+
+    /**
+     * @return номер записи как число (нечисловые номера - в конце)
+     */
+    private static long numberOf(RecordUDR udr) {
+        try {
+            return Long.parseLong(udr.getMsisdn());
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package nexign.task.services.udr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nexign.task.metrics.Metrics;
+import nexign.task.utilities.LatencyHistogram;
+import nexign.task.utilities.UtilFunctions;
+
+/**
+ * UDRQueryServer - HTTP сервер, отвечающий на запросы UDR отчетов из памяти.
+ * Агрегаты всех абонентов вычисляются один раз при запуске, после чего запросы
+ * не обращаются ни к CDR файлам, ни к базе данных.
+ * <p>
+ * GET /report?msisdn=N - отчет абонента за все месяцы (как generateReport(msisdn)),
+ * GET /report?msisdn=N&amp;month=M - отчет за месяц (как generateReport(msisdn, month)),
+ * GET /stats - количество запросов и процентили времени их обработки (в наносекундах),
+ * GET /metrics - снимок общих метрик (Metrics) в текстовом формате Prometheus.
+ * Запросы обрабатываются пулом потоков фиксированного размера.
+ */
+public class UDRQueryServer implements AutoCloseable {
+    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writer();
+
+    /** UDR записи абонентов по месяцам: индекс массива - номер месяца минус 1 */
+    private final Map<String, RecordUDR[]> reports = new HashMap<>();
+    private final int monthsCount;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param udrMaps отображения UDR по месяцам (результат GeneratorUDR.aggregateReport())
+     * @param port порт (0 - любой свободный)
+     * @param threads количество потоков обработки запросов
+     *
+     * @throws IOException если порт занят
+     */
+    public UDRQueryServer(List<TreeMap<String, RecordUDR>> udrMaps, int port, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+        this.monthsCount = udrMaps.size();
+        for (int i = 0; i < monthsCount; i++) {
+            for (RecordUDR udr : udrMaps.get(i).values()) {
+                reports.computeIfAbsent(udr.getMsisdn(), msisdn -> new RecordUDR[monthsCount])[i] = udr;
+            }
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "udr-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/report", this::handleReport);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Начинает прием запросов.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return порт, на котором принимаются запросы
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return снимок времени обработки запросов (в наносекундах)
+     */
+    public LatencyHistogram.Snapshot getLatencySnapshot() {
+        return latency.snapshot();
+    }
+
+    /**
+     * Останавливает прием запросов и завершает потоки обработки.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleReport(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Поддерживается только метод GET");
+                return;
+            }
+
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String msisdn = parameters.get("msisdn");
+            String month = parameters.get("month");
+
+            if (msisdn == null || !UtilFunctions.isValidMobilePhoneNumber(msisdn)) {
+                sendError(exchange, 400, "Неверный формат для номера телефона");
+                return;
+            }
+            if (month != null && !UtilFunctions.isValidMonth(month)) {
+                sendError(exchange, 400, "Недопустимый номер месяца");
+                return;
+            }
+
+            RecordUDR[] subscriberReports = reports.get(msisdn);
+            if (subscriberReports == null) {
+                sendError(exchange, 404, "Абонент с номером " + msisdn + " не найден");
+                return;
+            }
+
+            if (month != null) {
+                int monthNumber = Integer.parseInt(month);
+                if (monthNumber > monthsCount) {
+                    sendError(exchange, 404, "Нет данных за месяц " + monthNumber);
+                    return;
+                }
+                sendJson(exchange, 200, subscriberReports[monthNumber - 1]);
+            } else {
+                // ключ - номер месяца, как в таблице отчета generateReport(msisdn)
+                Map<Integer, RecordUDR> byMonth = new LinkedHashMap<>();
+                for (int i = 0; i < monthsCount; i++) {
+                    byMonth.put(i + 1, subscriberReports[i]);
+                }
+                sendJson(exchange, 200, byMonth);
+            }
+        } finally {
+            exchange.close();
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            sendJson(exchange, 200, latency.snapshot());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", message));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+        byte[] body = JSON_WRITER.writeValueAsBytes(value);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Разбирает параметры строки запроса (повторяющиеся параметры - последнее значение).
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,34 @@
+package nexign.task.services.udr;
+
+import java.nio.ByteBuffer;
+
+import nexign.task.services.cdr.BinaryCDRFormat;
+import nexign.task.services.cdr.CDRLineParser;
+
+/**
+ * UDRRecordSink - получатель записей о звонках при агрегации CDR файлов:
+ * накопитель в памяти (UDRAccumulator) или накопитель с выгрузкой на диск (SpillingUDRAggregator).
+ */
+interface UDRRecordSink extends CDRLineParser.RecordConsumer {
+
+    /**
+     * Добавляет записи двоичного CDR файла из отображенного в память сегмента.
+     *
+     * @param segment сегмент с записями фиксированной длины (порядок байт little-endian)
+     * @param recordsCount количество записей в сегменте
+     */
+    default void acceptSegment(ByteBuffer segment, int recordsCount) {
+        for (int i = 0; i < recordsCount; i++) {
+            int offset = i * BinaryCDRFormat.RECORD_SIZE;
+            accept(segment.get(offset + BinaryCDRFormat.CALL_TYPE_OFFSET),
+                    segment.getLong(offset + BinaryCDRFormat.MSISDN_OFFSET),
+                    segment.getLong(offset + BinaryCDRFormat.START_TIME_OFFSET),
+                    segment.getLong(offset + BinaryCDRFormat.END_TIME_OFFSET));
+        }
+    }
+
+    /**
+     * @return количество учтенных звонков
+     */
+    long getRecordsCount();
+}
@@ -0,0 +1,28 @@
+package nexign.task.services.udr;
+
+/**
+ * Способы размещения UDR отчетов в директории.
+ */
+public enum UDRReportLayout {
+    /** отдельный JSON-файл с отступами для каждого абонента и месяца: msisdn_month.json */
+    PER_SUBSCRIBER,
+    /** один файл на месяц, по одной компактной JSON-записи на строку: udr_month.ndjson */
+    NDJSON;
+
+    /**
+     * Определяет способ по названию из настроек (без учета регистра).
+     *
+     * @param name название способа
+     * @param defaultLayout способ, возвращаемый при неизвестном названии
+     *
+     * @return способ размещения отчетов
+     */
+    public static UDRReportLayout fromString(String name, UDRReportLayout defaultLayout) {
+        for (UDRReportLayout layout : values()) {
+            if (layout.name().equalsIgnoreCase(name)) {
+                return layout;
+            }
+        }
+        return defaultLayout;
+    }
+}
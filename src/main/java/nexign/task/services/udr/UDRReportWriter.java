@@ -0,0 +1,303 @@
+package nexign.task.services.udr;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Metrics;
+import nexign.task.metrics.UDRReportFlushEvent;
+import nexign.task.utilities.LatencyHistogram;
+
+/**
+ * UDRReportWriter - запись UDR отчетов в JSON.
+ * Сериализаторы Jackson (ObjectWriter) неизменяемы и потокобезопасны, поэтому создаются один раз
+ * и используются всеми потоками. Поддерживает два способа размещения отчетов (UDRReportLayout)
+ * и считает количество и объем записанных файлов.
+ */
+public class UDRReportWriter {
+    /** размер буфера записи NDJSON файла */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Counter REPORT_FILES = Metrics.counter("udr_report_files_total", "Записано файлов UDR отчетов");
+    private static final Counter REPORT_BYTES = Metrics.counter("udr_report_bytes_total", "Записано байт UDR отчетов");
+    private static final LatencyHistogram MONTH_WRITE_TIME =
+            Metrics.timer("udr_report_write_seconds", "Время записи отчетов месяца (или части месяца)");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /** JSON с отступами, как в отдельных файлах отчетов */
+    private static final ObjectWriter INDENTED_WRITER = OBJECT_MAPPER.writerWithDefaultPrettyPrinter();
+    /** компактный JSON для NDJSON файлов, без сброса буфера после каждой записи */
+    private static final ObjectWriter COMPACT_WRITER =
+            OBJECT_MAPPER.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final UDRReportLayout layout;
+    /** сбрасывать ли каждый файл на диск (fsync) перед закрытием */
+    private final boolean fsync;
+
+    private final LongAdder filesCount = new LongAdder();
+    private final LongAdder recordsCount = new LongAdder();
+    private final LongAdder bytesCount = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+
+    /**
+     * @param layout способ размещения отчетов
+     */
+    public UDRReportWriter(UDRReportLayout layout) {
+        this(layout, false);
+    }
+
+    /**
+     * @param layout способ размещения отчетов
+     * @param fsync true - каждый файл сбрасывается на диск перед закрытием
+     */
+    public UDRReportWriter(UDRReportLayout layout, boolean fsync) {
+        this.layout = layout;
+        this.fsync = fsync;
+    }
+
+    public UDRReportLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Сохраняет UDR записи за месяц. Метод можно вызывать одновременно из разных потоков для разных месяцев.
+     *
+     * @param directory директория для сохранения отчетов
+     * @param month месяц, за который создается отчет
+     * @param udrs UDR записи абонентов
+     *
+     * @throws UncheckedIOException если запись файла отчета не удалась
+     */
+    public void writeMonth(File directory, int month, Collection<RecordUDR> udrs) {
+        long start = System.nanoTime();
+        UDRReportFlushEvent event = new UDRReportFlushEvent();
+        event.begin();
+        long filesWritten = 0;
+        long bytesWritten = 0;
+        try {
+            if (layout == UDRReportLayout.NDJSON) {
+                bytesWritten = writeNdjson(directory, month, udrs);
+                filesWritten = 1;
+            } else {
+                for (RecordUDR udr : udrs) {
+                    bytesWritten += writeSubscriberFile(directory, month, udr);
+                    filesWritten++;
+                }
+            }
+        } catch (IOException e) {
+            // ошибка передается вызывающему, чтобы AsyncUDRReportWriter мог сообщить о ней в flush()/close()
+            throw new UncheckedIOException("Не удалось записать отчеты за месяц " + month, e);
+        } finally {
+            long writeNanos = System.nanoTime() - start;
+            elapsedNanos.add(writeNanos);
+            MONTH_WRITE_TIME.record(writeNanos);
+            if (event.shouldCommit()) {
+                event.month = month;
+                event.layout = layout.name().toLowerCase();
+                event.msisdn = (udrs.size() == 1) ? udrs.iterator().next().getMsisdn() : null;
+                event.reportsCount = udrs.size();
+                event.filesCount = filesWritten;
+                event.bytesCount = bytesWritten;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Записывает отчет абонента в отдельный файл msisdn_month.json одной операцией записи.
+     *
+     * @return количество записанных байт
+     */
+    private long writeSubscriberFile(File directory, int month, RecordUDR udr) throws IOException {
+        File reportFile = new File(directory, udr.getMsisdn() + "_" + month + ".json");
+        byte[] json = INDENTED_WRITER.writeValueAsBytes(udr);
+
+        try (FileOutputStream out = new FileOutputStream(reportFile)) {
+            out.write(json);
+            if (fsync) {
+                out.getFD().sync();
+            }
+        }
+        filesCount.increment();
+        recordsCount.increment();
+        bytesCount.add(json.length);
+        REPORT_FILES.increment();
+        REPORT_BYTES.add(json.length);
+        return json.length;
+    }
+
+    /**
+     * Записывает отчеты всех абонентов за месяц в файл udr_month.ndjson потоковым сериализатором.
+     *
+     * @return количество записанных байт
+     */
+    private long writeNdjson(File directory, int month, Collection<RecordUDR> udrs) throws IOException {
+        File reportFile = new File(directory, "udr_" + month + ".ndjson");
+
+        try (FileOutputStream fileOut = new FileOutputStream(reportFile);
+             JsonGenerator generator = createNdjsonGenerator(fileOut)) {
+            for (RecordUDR udr : udrs) {
+                COMPACT_WRITER.writeValue(generator, udr);
+                generator.writeRaw('\n');
+            }
+            if (fsync) {
+                generator.flush();
+                fileOut.getFD().sync();
+            }
+        }
+        return countNdjsonFile(reportFile, udrs.size());
+    }
+
+    private static JsonGenerator createNdjsonGenerator(FileOutputStream fileOut) throws IOException {
+        OutputStream out = new BufferedOutputStream(fileOut, BUFFER_SIZE);
+        JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(out);
+        // записи разделяются только переводом строки
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private long countNdjsonFile(File reportFile, long records) {
+        long fileLength = reportFile.length();
+        filesCount.increment();
+        recordsCount.add(records);
+        bytesCount.add(fileLength);
+        REPORT_FILES.increment();
+        REPORT_BYTES.add(fileLength);
+        return fileLength;
+    }
+
+    /**
+     * Открывает потоковую запись отчетов, при которой отчеты передаются по одному абоненту за все месяцы,
+     * а не месяцами целиком. Для NDJSON файлы всех месяцев остаются открытыми до закрытия записи.
+     *
+     * @param directory директория для сохранения отчетов
+     * @param monthsCount количество месяцев
+     *
+     * @return потоковая запись отчетов (не потокобезопасна)
+     *
+     * @throws IOException если не удалось создать файлы месяцев
+     */
+    public StreamingWriter openStream(File directory, int monthsCount) throws IOException {
+        return new StreamingWriter(directory, monthsCount);
+    }
+
+    /**
+     * Потоковая запись отчетов: отдельные файлы абонентов записываются сразу,
+     * строки NDJSON добавляются в открытые файлы месяцев.
+     */
+    public final class StreamingWriter implements Closeable {
+        private final File directory;
+        private final File[] monthFiles;
+        private final FileOutputStream[] monthOutputs;
+        private final JsonGenerator[] monthGenerators;
+        private final long[] monthRecords;
+
+        private StreamingWriter(File directory, int monthsCount) throws IOException {
+            this.directory = directory;
+            this.monthFiles = new File[monthsCount];
+            this.monthOutputs = new FileOutputStream[monthsCount];
+            this.monthGenerators = new JsonGenerator[monthsCount];
+            this.monthRecords = new long[monthsCount];
+            if (layout == UDRReportLayout.NDJSON) {
+                try {
+                    for (int i = 0; i < monthsCount; i++) {
+                        monthFiles[i] = new File(directory, "udr_" + (i + 1) + ".ndjson");
+                        monthOutputs[i] = new FileOutputStream(monthFiles[i]);
+                        monthGenerators[i] = createNdjsonGenerator(monthOutputs[i]);
+                    }
+                } catch (IOException e) {
+                    close();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Записывает отчет абонента за месяц.
+         *
+         * @param month месяц (от 1 до количества месяцев)
+         * @param udr UDR запись абонента
+         *
+         * @throws IOException если запись не удалась
+         */
+        public void write(int month, RecordUDR udr) throws IOException {
+            long start = System.nanoTime();
+            if (layout == UDRReportLayout.NDJSON) {
+                COMPACT_WRITER.writeValue(monthGenerators[month - 1], udr);
+                monthGenerators[month - 1].writeRaw('\n');
+                monthRecords[month - 1]++;
+            } else {
+                writeSubscriberFile(directory, month, udr);
+            }
+            elapsedNanos.add(System.nanoTime() - start);
+        }
+
+        /**
+         * Закрывает файлы месяцев NDJSON и учитывает их в статистике записи.
+         */
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            IOException error = null;
+            for (int i = 0; i < monthGenerators.length; i++) {
+                if (monthGenerators[i] == null) {
+                    if (monthOutputs[i] != null) {
+                        monthOutputs[i].close();
+                    }
+                    continue;
+                }
+                try (FileOutputStream fileOut = monthOutputs[i]; JsonGenerator generator = monthGenerators[i]) {
+                    if (fsync) {
+                        generator.flush();
+                        fileOut.getFD().sync();
+                    }
+                } catch (IOException e) {
+                    error = (error == null) ? e : error;
+                }
+                countNdjsonFile(monthFiles[i], monthRecords[i]);
+                monthGenerators[i] = null;
+            }
+            elapsedNanos.add(System.nanoTime() - start);
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    public long getFilesCount() {
+        return filesCount.sum();
+    }
+
+    public long getRecordsCount() {
+        return recordsCount.sum();
+    }
+
+    public long getBytesCount() {
+        return bytesCount.sum();
+    }
+
+    /**
+     * Выводит количество записанных файлов и скорость записи отчетов.
+     * Время суммируется по всем потокам, поэтому скорость указана в расчете на один поток.
+     */
+    public void printStatistics() {
+        double seconds = elapsedNanos.sum() / 1_000_000_000.0;
+        double filesPerSecond = seconds > 0 ? getFilesCount() / seconds : 0;
+        double megabytesPerSecond = seconds > 0 ? getBytesCount() / seconds / (1024 * 1024) : 0;
+
+        System.out.printf("Записано отчетов: %d файлов, %d записей, %d байт (%.0f файлов/с, %.1f МБ/с)%n",
+                getFilesCount(), getRecordsCount(), getBytesCount(), filesPerSecond, megabytesPerSecond);
+    }
+}
@@ -0,0 +1,90 @@
+package nexign.task.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Класс для чтения настроек приложения из файла application.properties.
+ * Значение, переданное через системное свойство (-Dключ=значение), имеет приоритет над значением из файла.
+ */
+public class ApplicationProperties {
+    private static final String PROPERTIES_FILE = "application.properties";
+    private static Properties properties;
+
+    private static synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            try (InputStream inputStream = ApplicationProperties.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+                if (inputStream != null) {
+                    properties.load(inputStream);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Возвращает строковое значение настройки.
+     *
+     * @param key ключ настройки
+     * @param defaultValue значение по умолчанию, если настройка не задана
+     *
+     * @return значение настройки
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = getProperties().getProperty(key);
+        }
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Возвращает целочисленное значение настройки.
+     *
+     * @param key ключ настройки
+     * @param defaultValue значение по умолчанию, если настройка не задана или задана неверно
+     *
+     * @return значение настройки
+     */
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.err.println("Неверное значение настройки " + key + ", используется " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Возвращает значение настройки типа long.
+     *
+     * @param key ключ настройки
+     * @param defaultValue значение по умолчанию, если настройка не задана или задана неверно
+     *
+     * @return значение настройки
+     */
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.err.println("Неверное значение настройки " + key + ", используется " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Возвращает логическое значение настройки.
+     *
+     * @param key ключ настройки
+     * @param defaultValue значение по умолчанию, если настройка не задана
+     *
+     * @return значение настройки
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,127 @@
+package nexign.task.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - потокобезопасная гистограмма задержек для оценки процентилей (p50, p99).
+ * Значения раскладываются по логарифмическим интервалам, каждый из которых делится на 16 равных частей,
+ * поэтому погрешность процентиля не превышает 1/16 значения, а объем памяти постоянный (960 счетчиков).
+ * Запись - одно атомарное увеличение счетчика, без блокировок.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** интервалы от 2^4 до 2^63 плюс первые 16 значений */
+    private static final int BUCKETS_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Снимок гистограммы.
+     *
+     * @param count количество значений
+     * @param mean среднее значение
+     * @param p50 медиана
+     * @param p99 99-й процентиль
+     * @param p999 99.9-й процентиль
+     * @param max наибольшее значение
+     */
+    public record Snapshot(long count, double mean, long p50, long p99, long p999, long max) {}
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Добавляет значение (отрицательные значения считаются нулем).
+     *
+     * @param value значение, например задержка в наносекундах
+     */
+    public void record(long value) {
+        long nonNegative = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(nonNegative));
+        count.increment();
+        sum.add(nonNegative);
+        max.accumulate(nonNegative);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return сумма всех значений
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Удаляет все значения (одновременные вызовы record() могут быть учтены частично).
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Оценивает процентиль: верхнюю границу интервала, в который попадает значение с нужным рангом.
+     *
+     * @param percentile процентиль от 0 до 100
+     *
+     * @return оценка значения процентиля (0, если значений нет)
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS_COUNT];
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return снимок основных показателей гистограммы
+     */
+    public Snapshot snapshot() {
+        long currentCount = getCount();
+        double mean = currentCount > 0 ? (double) sum.sum() / currentCount : 0;
+        return new Snapshot(currentCount, mean, percentile(50), percentile(99), percentile(99.9), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package nexign.task.utilities;
+
+/**
+ * MsisdnBitmap - битовая карта номеров вида 79XXXXXXXXX для проверки уникальности.
+ * Каждому из 10^9 возможных номеров соответствует один бит. Карта разбита на страницы,
+ * страница выделяется при добавлении первого номера из её диапазона,
+ * поэтому для небольшого количества номеров карта занимает мало памяти, а полностью заполненная - около 125 МБ.
+ */
+public class MsisdnBitmap {
+    public static final long MIN_MSISDN = 79_000_000_000L;
+    public static final long MAX_MSISDN = 79_999_999_999L;
+
+    private static final long CAPACITY = MAX_MSISDN - MIN_MSISDN + 1;
+    /** 2^20 бит на странице (128 КБ) */
+    private static final int PAGE_BITS_SHIFT = 20;
+    private static final int PAGE_SIZE_BITS = 1 << PAGE_BITS_SHIFT;
+    private static final int PAGE_WORDS = PAGE_SIZE_BITS / Long.SIZE;
+
+    private final long[][] pages = new long[(int) ((CAPACITY + PAGE_SIZE_BITS - 1) >>> PAGE_BITS_SHIFT)][];
+    private long size;
+
+    /**
+     * Добавляет номер в карту.
+     *
+     * @param msisdn номер телефона вида 79XXXXXXXXX
+     *
+     * @return true, если номера ещё не было в карте
+     *
+     * @throws IllegalArgumentException если номер не соответствует формату
+     */
+    public boolean add(long msisdn) {
+        long index = toIndex(msisdn);
+        int pageIndex = (int) (index >>> PAGE_BITS_SHIFT);
+        long[] page = pages[pageIndex];
+        if (page == null) {
+            page = new long[PAGE_WORDS];
+            pages[pageIndex] = page;
+        }
+
+        int bit = (int) (index & (PAGE_SIZE_BITS - 1));
+        long mask = 1L << bit;
+        int word = bit >>> 6;
+        if ((page[word] & mask) != 0) {
+            return false;
+        }
+        page[word] |= mask;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param msisdn номер телефона
+     *
+     * @return true, если номер есть в карте
+     */
+    public boolean contains(long msisdn) {
+        if (msisdn < MIN_MSISDN || msisdn > MAX_MSISDN) {
+            return false;
+        }
+        long index = msisdn - MIN_MSISDN;
+        long[] page = pages[(int) (index >>> PAGE_BITS_SHIFT)];
+        if (page == null) {
+            return false;
+        }
+        int bit = (int) (index & (PAGE_SIZE_BITS - 1));
+        return (page[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return количество номеров в карте
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return все номера из карты в порядке возрастания
+     */
+    public long[] toSortedArray() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Слишком много номеров для одного массива: " + size);
+        }
+        long[] result = new long[(int) size];
+        int position = 0;
+
+        for (int pageIndex = 0; pageIndex < pages.length; pageIndex++) {
+            long[] page = pages[pageIndex];
+            if (page == null) {
+                continue;
+            }
+            long pageStart = MIN_MSISDN + ((long) pageIndex << PAGE_BITS_SHIFT);
+            for (int word = 0; word < page.length; word++) {
+                long bits = page[word];
+                while (bits != 0) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    result[position++] = pageStart + ((long) word << 6) + bit;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long toIndex(long msisdn) {
+        if (msisdn < MIN_MSISDN || msisdn > MAX_MSISDN) {
+            throw new IllegalArgumentException("Номер не соответствует формату 79XXXXXXXXX: " + msisdn);
+        }
+        return msisdn - MIN_MSISDN;
+    }
+}
@@ -0,0 +1,160 @@
+package nexign.task.utilities;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * SubscriberRegistry - неизменяемый реестр номеров абонентов.
+ * Номера хранятся в отсортированном массиве long без повторов, и индекс номера в массиве служит
+ * плотным идентификатором абонента (от 0 до size() - 1): по нему индексируются массивы агрегатов,
+ * а порядок идентификаторов совпадает с порядком номеров. Поиск идентификатора по номеру - двоичный поиск,
+ * номер по идентификатору - обращение к массиву. Реестр загружается один раз и используется
+ * и генерацией CDR, и созданием отчетов; объект потокобезопасен.
+ */
+public class SubscriberRegistry {
+    private final long[] msisdns;
+
+    private SubscriberRegistry(long[] sortedUniqueMsisdns) {
+        this.msisdns = sortedUniqueMsisdns;
+    }
+
+    /**
+     * Создает реестр из номеров (порядок и повторы не важны).
+     *
+     * @param msisdns номера абонентов
+     *
+     * @return реестр абонентов
+     */
+    public static SubscriberRegistry of(long[] msisdns) {
+        long[] sorted = msisdns.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new SubscriberRegistry(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * Создает реестр из строковых номеров (порядок и повторы не важны).
+     *
+     * @param phoneNumbers номера абонентов
+     *
+     * @return реестр абонентов
+     *
+     * @throws NumberFormatException если номер не является числом
+     */
+    public static SubscriberRegistry of(Collection<String> phoneNumbers) {
+        long[] msisdns = new long[phoneNumbers.size()];
+        int i = 0;
+        for (String phoneNumber : phoneNumbers) {
+            msisdns[i++] = Long.parseLong(phoneNumber);
+        }
+        return of(msisdns);
+    }
+
+    /**
+     * @return количество абонентов
+     */
+    public int size() {
+        return msisdns.length;
+    }
+
+    /**
+     * @param id идентификатор абонента (от 0 до size() - 1)
+     *
+     * @return номер абонента
+     */
+    public long msisdn(int id) {
+        return msisdns[id];
+    }
+
+    /**
+     * @param id идентификатор абонента (от 0 до size() - 1)
+     *
+     * @return номер абонента строкой
+     */
+    public String phoneNumber(int id) {
+        return Long.toString(msisdns[id]);
+    }
+
+    /**
+     * @param msisdn номер абонента
+     *
+     * @return идентификатор абонента или -1, если номера нет в реестре
+     */
+    public int idOf(long msisdn) {
+        int id = Arrays.binarySearch(msisdns, msisdn);
+        return id >= 0 ? id : -1;
+    }
+
+    /**
+     * @param phoneNumber номер абонента строкой
+     *
+     * @return идентификатор абонента или -1, если номера нет в реестре или он не является числом
+     */
+    public int idOf(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.isEmpty() || phoneNumber.length() > 18) {
+            return -1;
+        }
+        long msisdn = 0;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char digit = phoneNumber.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            msisdn = msisdn * 10 + (digit - '0');
+        }
+        // номер с ведущими нулями записан в реестре без них, поэтому строки не совпадают
+        return phoneNumber.charAt(0) == '0' && phoneNumber.length() > 1 ? -1 : idOf(msisdn);
+    }
+
+    /**
+     * @param phoneNumber номер абонента строкой
+     *
+     * @return true, если абонент есть в реестре
+     */
+    public boolean contains(String phoneNumber) {
+        return idOf(phoneNumber) >= 0;
+    }
+
+    /**
+     * @return неизменяемый список номеров в порядке идентификаторов; строки создаются при обращении
+     */
+    public List<String> asList() {
+        return new PhoneNumberList();
+    }
+
+    /** представление реестра списком строковых номеров */
+    private final class PhoneNumberList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return phoneNumber(index);
+        }
+
+        @Override
+        public int size() {
+            return msisdns.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String phoneNumber && SubscriberRegistry.this.contains(phoneNumber);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof String phoneNumber ? idOf(phoneNumber) : -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+    }
+}
@@ -8,11 +8,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 import java.util.regex.Pattern;
 
+import nexign.task.metrics.Gauge;
+import nexign.task.metrics.Metrics;
+
 public class UtilFunctions {
+    private static final LatencyHistogram SUBSCRIBERS_LOAD_TIME =
+            Metrics.timer("subscribers_load_seconds", "Время загрузки списка абонентов из базы");
+    private static final Gauge SUBSCRIBERS_COUNT =
+            Metrics.gauge("subscribers_count", "Количество абонентов при последней загрузке");
 
     public static boolean isValidMobilePhoneNumber(String phoneNumber) {
         try {
@@ -42,12 +52,23 @@ public class UtilFunctions {
     }
 
     public static String generateRandomDigits(int length) {
-        StringBuilder digits = new StringBuilder();
-        Random random = new Random();
+        char[] digits = new char[length];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         for (int i = 0; i < length; i++) {
-            digits.append(random.nextInt(10));
+            digits[i] = (char) ('0' + random.nextInt(10));
         }
-        return digits.toString();
+        return new String(digits);
+    }
+
+    /**
+     * Генерирует случайный номер мобильного телефона вида 79XXXXXXXXX без промежуточных строк.
+     *
+     * @param random генератор случайных чисел
+     *
+     * @return номер телефона в виде числа
+     */
+    public static long generateMsisdn(RandomGenerator random) {
+        return MsisdnBitmap.MIN_MSISDN + random.nextLong(MsisdnBitmap.MAX_MSISDN - MsisdnBitmap.MIN_MSISDN + 1);
     }
 
     public static void updateReportDirectory(File directory){
@@ -64,22 +85,69 @@ public class UtilFunctions {
     }
 
     public static List<String> getAllSubscribers(Connection connection) {
-        List<String> phoneNumbers = new ArrayList<>();
+        return new ArrayList<>(getSubscriberRegistry(connection).asList());
+    }
+
+    /**
+     * Загружает номера всех абонентов из таблицы Subscribers в реестр с плотными идентификаторами.
+     * Реестр загружается один раз и передается и генератору CDR, и генератору UDR.
+     * Номера, которые нельзя хранить числом (не цифры, ведущие нули), пропускаются по одному,
+     * их количество выводится в System.err; остальные абоненты загружаются полностью.
+     *
+     * @param connection соединение с базой данных
+     *
+     * @return реестр абонентов (пустой, если загрузить номера не удалось)
+     */
+    public static SubscriberRegistry getSubscriberRegistry(Connection connection) {
+        long start = System.nanoTime();
+        long[] msisdns = new long[1024];
+        int count = 0;
+        int skipped = 0;
 
         try {
-            String sql = "select msisdn from Subscribers";
+            String sql = "select msisdn from Subscribers order by msisdn";
             try (PreparedStatement statement = connection.prepareStatement(sql)) {
                 try (ResultSet resultSet = statement.executeQuery()) {
                     while (resultSet.next()) {
-                        String phoneNumber = resultSet.getString("MSISDN");
-                        phoneNumbers.add(phoneNumber);
+                        long msisdn = parseMsisdn(resultSet.getString("MSISDN"));
+                        if (msisdn < 0) {
+                            skipped++;
+                            continue;
+                        }
+                        if (count == msisdns.length) {
+                            msisdns = Arrays.copyOf(msisdns, count * 2);
+                        }
+                        msisdns[count++] = msisdn;
                     }
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        if (skipped > 0) {
+            System.err.println("Пропущено абонентов с некорректным номером: " + skipped);
+        }
 
-        return phoneNumbers;
+        SubscriberRegistry registry = SubscriberRegistry.of(Arrays.copyOf(msisdns, count));
+        SUBSCRIBERS_LOAD_TIME.record(System.nanoTime() - start);
+        SUBSCRIBERS_COUNT.set(registry.size());
+        return registry;
+    }
+
+    /**
+     * @param phoneNumber номер абонента из таблицы Subscribers
+     *
+     * @return номер числом или -1, если номер не совпадает со своей числовой записью
+     */
+    private static long parseMsisdn(String phoneNumber) {
+        if (phoneNumber == null) {
+            return -1;
+        }
+        try {
+            long msisdn = Long.parseLong(phoneNumber);
+            return (msisdn > 0 && Long.toString(msisdn).equals(phoneNumber)) ? msisdn : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
-}
\ No newline at end of file
+}
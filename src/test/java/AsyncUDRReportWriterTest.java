@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import nexign.task.services.udr.AsyncUDRReportWriter;
+import nexign.task.services.udr.RecordUDR;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.services.udr.UDRReportWriter;
+
+class AsyncUDRReportWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void close_WaitsForAllReportsWithBoundedQueue() throws Exception {
+        List<RecordUDR> udrs = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            RecordUDR udr = new RecordUDR(Long.toString(79_000_000_000L + i));
+            udr.getOutgoingCall().addSeconds(i);
+            udrs.add(udr);
+        }
+
+        UDRReportWriter reportWriter = new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER);
+        AsyncUDRReportWriter asyncWriter = new AsyncUDRReportWriter(reportWriter, 3, 1);
+        try (asyncWriter) {
+            for (int month = 1; month <= 4; month++) {
+                asyncWriter.submit(tempDir.toFile(), month, udrs);
+            }
+        }
+
+        File[] reports = tempDir.toFile().listFiles();
+        assertNotNull(reports);
+        assertEquals(4 * udrs.size(), reports.length);
+        assertEquals(4 * udrs.size(), reportWriter.getFilesCount());
+        assertTrue(asyncWriter.getPeakQueueDepth() <= 1);
+        assertTrue(Files.readString(tempDir.resolve("79000002999_4.json")).contains("00:49:59"));
+        assertThrows(IllegalStateException.class, () -> asyncWriter.submit(tempDir.toFile(), 5, udrs));
+    }
+
+    @Test
+    void close_RethrowsWriteFailureInsteadOfHanging() {
+        List<RecordUDR> udrs = List.of(new RecordUDR("79000000001"));
+        UDRReportWriter failingWriter = new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER) {
+            @Override
+            public void writeMonth(File directory, int month, Collection<RecordUDR> records) {
+                throw new IllegalArgumentException("ошибка записи месяца " + month);
+            }
+        };
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            AsyncUDRReportWriter asyncWriter = new AsyncUDRReportWriter(failingWriter, 1, 1);
+            // поток записи продолжает работу после ошибки, поэтому очередь не блокирует отправку
+            for (int month = 1; month <= 12; month++) {
+                asyncWriter.submit(tempDir.toFile(), month, udrs);
+            }
+            IllegalStateException flushError = assertThrows(IllegalStateException.class, asyncWriter::flush);
+            assertInstanceOf(IllegalArgumentException.class, flushError.getCause());
+            assertThrows(IllegalStateException.class, asyncWriter::close);
+        });
+    }
+
+    @Test
+    void close_RethrowsDiskWriteFailure() throws Exception {
+        // вместо директории отчетов - обычный файл, поэтому создать файлы отчетов нельзя
+        File notDirectory = Files.writeString(tempDir.resolve("reports"), "").toFile();
+        List<RecordUDR> udrs = List.of(new RecordUDR("79000000001"));
+
+        for (UDRReportLayout layout : UDRReportLayout.values()) {
+            AsyncUDRReportWriter asyncWriter = new AsyncUDRReportWriter(new UDRReportWriter(layout), 1, 1);
+            asyncWriter.submit(notDirectory, 1, udrs);
+
+            IllegalStateException error = assertThrows(IllegalStateException.class, asyncWriter::close, layout.name());
+            assertInstanceOf(UncheckedIOException.class, error.getCause());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.services.cdr.RecordCDR;
+
+class CDRBufferTest {
+
+    @Test
+    void appendLine_MatchesRecordToString() {
+        CDRBuffer buffer = new CDRBuffer(1);
+        RecordCDR record = new RecordCDR("02", "79996667755", 1710716673, 1710718467);
+        buffer.add(record);
+
+        byte[] line = new byte[CDRBuffer.MAX_LINE_LENGTH];
+        int length = buffer.appendLine(0, line, 0);
+
+        assertEquals(record + "\n", new String(line, 0, length, StandardCharsets.US_ASCII));
+        assertEquals(record, buffer.get(0));
+    }
+
+    @Test
+    void sortByStartTime_SortsStablyLikeRecordComparator() {
+        SplittableRandom random = new SplittableRandom(3);
+        CDRBuffer buffer = new CDRBuffer(16);
+        List<RecordCDR> expected = new ArrayList<>();
+
+        for (int i = 0; i < 50_000; i++) {
+            long start = 1704067200L + random.nextInt(2_678_400);
+            RecordCDR record = new RecordCDR(random.nextBoolean() ? "01" : "02",
+                    Long.toString(79_000_000_000L + i), start, start + random.nextInt(3600) + 1);
+            buffer.add(record);
+            expected.add(record);
+        }
+        // List.sort устойчива, как и поразрядная сортировка буфера
+        expected.sort(Comparator.naturalOrder());
+
+        buffer.sortByStartTime();
+
+        assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(expected.get(i), buffer.get(i));
+        }
+    }
+
+    @Test
+    void parseCallType_RejectsInvalidValues() {
+        assertEquals(CDRBuffer.CALL_TYPE_OUTGOING, CDRBuffer.parseCallType("01"));
+        assertEquals(CDRBuffer.CALL_TYPE_INCOMING, CDRBuffer.parseCallType("02"));
+        assertThrows(IllegalArgumentException.class, () -> CDRBuffer.parseCallType("1"));
+        assertThrows(IllegalArgumentException.class, () -> CDRBuffer.parseCallType("ab"));
+    }
+}
@@ -0,0 +1,137 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import nexign.task.services.cdr.AsyncDecompressingInputStream;
+import nexign.task.services.cdr.CDRCodec;
+import nexign.task.services.cdr.CDRCodecs;
+import nexign.task.services.cdr.CDRCompressionStatistics;
+import nexign.task.services.udr.GeneratorUDR;
+
+class CDRCompressionTest {
+
+    private static final String CDR_TEXT =
+            "01, 79876543221, 1709798657, 1709799601\n" +
+            "02, 79996667755, 1709899870, 1709905806\n" +
+            "02, 79876543221, 1709900000, 1709900100\n" +
+            "01, 79996667755, 1709910000, 1709910030\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void forFile_SelectsCodecByExtension() {
+        assertSame(CDRCodecs.GZIP, CDRCodecs.forFile(new File("cdr_1.txt.gz")));
+        assertSame(CDRCodecs.IDENTITY, CDRCodecs.forFile(new File("cdr_1.txt")));
+        assertSame(CDRCodecs.GZIP, CDRCodecs.fromString("GZIP", CDRCodecs.IDENTITY));
+        assertSame(CDRCodecs.IDENTITY, CDRCodecs.fromString("unknown", CDRCodecs.IDENTITY));
+    }
+
+    @Test
+    void asyncDecompression_ReturnsOriginalBytesAcrossManyBlocks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            text.append(CDR_TEXT);
+        }
+        byte[] original = text.toString().getBytes(StandardCharsets.US_ASCII);
+        File file = writeGzipFile("cdr_1.txt.gz", original);
+
+        CDRCompressionStatistics statistics = new CDRCompressionStatistics();
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        try (InputStream input = new AsyncDecompressingInputStream(file, CDRCodecs.GZIP, statistics)) {
+            input.transferTo(restored);
+        }
+
+        assertArrayEquals(original, restored.toByteArray());
+        assertEquals(1, statistics.getFilesCount());
+        assertEquals(original.length, statistics.getUncompressedBytes());
+        assertEquals(file.length(), statistics.getCompressedBytes());
+        assertTrue(statistics.getRatio() > 1);
+    }
+
+    @Test
+    void asyncDecompression_ReportsCorruptedFile() throws IOException {
+        File file = tempDir.resolve("cdr_1.txt.gz").toFile();
+        Files.writeString(file.toPath(), CDR_TEXT);
+
+        try (InputStream input = new AsyncDecompressingInputStream(file, CDRCodecs.GZIP, null)) {
+            assertThrows(IOException.class, input::read);
+        }
+    }
+
+    @Test
+    void asyncDecompression_ReportsCodecRuntimeException() throws IOException {
+        File file = tempDir.resolve("cdr_1.txt.gz").toFile();
+        Files.writeString(file.toPath(), CDR_TEXT);
+        CDRCodec failingCodec = new CDRCodec() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public String getExtension() {
+                return ".failing";
+            }
+
+            @Override
+            public OutputStream compress(OutputStream out) {
+                return out;
+            }
+
+            @Override
+            public InputStream decompress(InputStream in) {
+                throw new IllegalStateException("ошибка кодека");
+            }
+        };
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (InputStream input = new AsyncDecompressingInputStream(file, failingCodec, null)) {
+                IOException error = assertThrows(IOException.class, input::read);
+                assertInstanceOf(IllegalStateException.class, error.getCause().getCause());
+            }
+        });
+    }
+
+    @Test
+    void generateReport_GivesSameReportsForPlainAndGzipFiles() throws IOException {
+        File textFile = tempDir.resolve("cdr_1.txt").toFile();
+        Files.writeString(textFile.toPath(), CDR_TEXT);
+        File gzipFile = writeGzipFile("cdr_1.txt.gz", CDR_TEXT.getBytes(StandardCharsets.US_ASCII));
+
+        List<String> subscribers = List.of("79876543221", "79996667755");
+        Path textReports = tempDir.resolve("text_reports");
+        Path gzipReports = tempDir.resolve("gzip_reports");
+
+        new GeneratorUDR(List.of(textFile), subscribers, textReports.toString()).generateReport();
+        GeneratorUDR gzipGenerator = new GeneratorUDR(List.of(gzipFile), subscribers, gzipReports.toString());
+        gzipGenerator.generateReport();
+
+        for (String subscriber : subscribers) {
+            String reportName = subscriber + "_1.json";
+            assertEquals(Files.readString(textReports.resolve(reportName)),
+                    Files.readString(gzipReports.resolve(reportName)));
+        }
+        assertEquals(1, gzipGenerator.getDecompressionStatistics().getFilesCount());
+    }
+
+    private File writeGzipFile(String name, byte[] content) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        try (OutputStream output = CDRCodecs.GZIP.compress(new FileOutputStream(file))) {
+            output.write(content);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import nexign.task.services.cdr.CDRFileFormat;
+import nexign.task.services.udr.CDRDirectoryWatcher;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.services.udr.UDRReportWriter;
+import nexign.task.utilities.SubscriberRegistry;
+
+class CDRDirectoryWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void run_UpdatesReportsWhenFilesAppearAndGrow() throws Exception {
+        Path cdrDir = Files.createDirectories(tempDir.resolve("cdr_files"));
+        File reportDir = tempDir.resolve("reports").toFile();
+        CDRDirectoryWatcher watcher = new CDRDirectoryWatcher(cdrDir.toFile(), CDRFileFormat.TEXT,
+                SubscriberRegistry.of(List.of("79000000001", "79000000002")), reportDir,
+                new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER), 50);
+
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            Path cdrFile = cdrDir.resolve("cdr_3.txt");
+            Files.writeString(cdrFile, "01, 79000000001, 1709300000, 1709300060\n");
+            // индексы и файлы другого формата не обрабатываются
+            Files.writeString(cdrDir.resolve("cdr_3.txt.idx"), "01, 79000000002, 1709300000, 1709300060\n");
+
+            File report = new File(reportDir, "79000000001_3.json");
+            awaitContains(report, "00:01:00");
+            awaitContains(new File(reportDir, "79000000002_3.json"), "00:00:00");
+
+            Files.writeString(cdrFile, "01, 79000000001, 1709400000, 1709400060\n01, 790", StandardOpenOption.APPEND);
+            awaitContains(report, "00:02:00");
+            assertEquals(2, watcher.getStatistics().recordsCount());
+        } finally {
+            watcher.stop();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+        assertTrue(Files.readString(tempDir.resolve("reports/79000000002_3.json")).contains("00:00:00"));
+    }
+
+    @Test
+    void run_RecountsMonthWhenFileIsReplacedWithSameOrLargerSize() throws Exception {
+        Path cdrDir = Files.createDirectories(tempDir.resolve("cdr_files"));
+        File reportDir = tempDir.resolve("reports").toFile();
+        CDRDirectoryWatcher watcher = new CDRDirectoryWatcher(cdrDir.toFile(), CDRFileFormat.TEXT,
+                SubscriberRegistry.of(List.of("79000000001", "79000000002")), reportDir,
+                new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER), 50);
+
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            Path cdrFile = cdrDir.resolve("cdr_3.txt");
+            File firstReport = new File(reportDir, "79000000001_3.json");
+            File secondReport = new File(reportDir, "79000000002_3.json");
+            Files.writeString(cdrFile, "01, 79000000001, 1709300000, 1709300060\n");
+            awaitContains(firstReport, "00:01:00");
+
+            // файл заменен файлом того же размера: звонок другого абонента
+            Files.writeString(cdrFile, "01, 79000000002, 1709300000, 1709300120\n");
+            awaitContains(secondReport, "00:02:00");
+            awaitNotContains(firstReport, "00:01:00");
+
+            // файл заменен файлом большего размера, начало которого отличается от прежнего файла
+            Files.writeString(cdrFile, "01, 79000000001, 1709300000, 1709300180\n" +
+                    "01, 79000000001, 1709400000, 1709400060\n");
+            awaitContains(firstReport, "00:04:00");
+            awaitNotContains(secondReport, "00:02:00");
+        } finally {
+            watcher.stop();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    private static void awaitContains(File file, String text) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (file.isFile() && Files.readString(file.toPath()).contains(text)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Отчет " + file.getName() + " не обновлен: ожидалось " + text);
+    }
+
+    private static void awaitNotContains(File file, String text) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (file.isFile() && !Files.readString(file.toPath()).contains(text)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Отчет " + file.getName() + " не обновлен: осталось " + text);
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.services.cdr.CDRFileIndex;
+import nexign.task.services.cdr.CDRFormatConverter;
+
+class CDRFileIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void open_BuildsMissingIndexAndFindsSubscriberRecords() throws IOException {
+        File cdrFile = tempDir.resolve("cdr_1.txt").toFile();
+        Files.writeString(cdrFile.toPath(),
+                "01, 79876543221, 1709798657, 1709799601\n" +
+                "02, 79996667755, 1709899870, 1709905806\n" +
+                "02, 79876543221, 1709900000, 1709900100\n");
+
+        CDRFileIndex index = CDRFileIndex.open(cdrFile);
+        assertTrue(CDRFileIndex.indexFileFor(cdrFile).exists());
+        assertEquals(2, index.getSubscribersCount());
+        assertEquals(2, index.getRecordsCount(79876543221L));
+        assertEquals(0, index.getRecordsCount(79000000000L));
+
+        CDRBuffer records = new CDRBuffer(4);
+        index.readRecords(79876543221L, records);
+
+        assertEquals(2, records.size());
+        assertEquals("01, 79876543221, 1709798657, 1709799601", records.get(0).toString());
+        assertEquals("02, 79876543221, 1709900000, 1709900100", records.get(1).toString());
+    }
+
+    @Test
+    void open_RebuildsStaleIndex() throws IOException {
+        File cdrFile = tempDir.resolve("cdr_2.txt").toFile();
+        Files.writeString(cdrFile.toPath(), "01, 79876543221, 1709798657, 1709799601\n");
+        CDRFileIndex.open(cdrFile);
+
+        Files.writeString(cdrFile.toPath(),
+                "02, 79996667755, 1709899870, 1709905806\n" +
+                "01, 79876543221, 1709900000, 1709900100\n");
+        cdrFile.setLastModified(cdrFile.lastModified() + 2000);
+
+        CDRBuffer records = new CDRBuffer(4);
+        CDRFileIndex.open(cdrFile).readRecords(79876543221L, records);
+
+        assertEquals(1, records.size());
+        assertEquals(1709900000L, records.startTime(0));
+    }
+
+    @Test
+    void open_IndexesBinaryFiles() throws IOException {
+        File textFile = tempDir.resolve("cdr_3.txt").toFile();
+        Files.writeString(textFile.toPath(),
+                "01, 79876543221, 1709798657, 1709799601\n" +
+                "02, 79996667755, 1709899870, 1709905806\n");
+        File binaryFile = tempDir.resolve("cdr_3.bin").toFile();
+        CDRFormatConverter.textToBinary(textFile, binaryFile, 3);
+
+        CDRBuffer records = new CDRBuffer(4);
+        CDRFileIndex.open(binaryFile).readRecords(79996667755L, records);
+
+        assertEquals(1, records.size());
+        assertEquals("02, 79996667755, 1709899870, 1709905806", records.get(0).toString());
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import nexign.task.services.cdr.BinaryCDRFormat;
+import nexign.task.services.cdr.BinaryCDRReader;
+import nexign.task.services.cdr.CDRFormatConverter;
+import nexign.task.services.udr.GeneratorUDR;
+
+class CDRFormatConverterTest {
+
+    private static final String CDR_TEXT =
+            "01, 79876543221, 1709798657, 1709799601\n" +
+            "02, 79996667755, 1709899870, 1709905806\n" +
+            "02, 79876543221, 1709900000, 1709900100\n" +
+            "01, 79996667755, 1709910000, 1709910030\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void textToBinaryToText_KeepsFileIdentical() throws IOException {
+        File textFile = writeTextFile("cdr_3.txt");
+        File binaryFile = tempDir.resolve("cdr_3.bin").toFile();
+        File restoredFile = tempDir.resolve("restored.txt").toFile();
+
+        assertEquals(4, CDRFormatConverter.textToBinary(textFile, binaryFile, 3));
+        assertEquals(BinaryCDRFormat.HEADER_SIZE + 4 * BinaryCDRFormat.RECORD_SIZE, binaryFile.length());
+
+        try (BinaryCDRReader reader = new BinaryCDRReader(binaryFile)) {
+            BinaryCDRFormat.Header header = reader.getHeader();
+            assertEquals(3, header.month());
+            assertEquals(4, header.recordsCount());
+            assertEquals(1709798657, header.minStartTime());
+            assertEquals(1709910030, header.maxEndTime());
+        }
+
+        assertEquals(4, CDRFormatConverter.binaryToText(binaryFile, restoredFile));
+        assertEquals(CDR_TEXT, Files.readString(restoredFile.toPath()));
+    }
+
+    @Test
+    void binaryReader_RejectsTruncatedFile() throws IOException {
+        File binaryFile = tempDir.resolve("cdr_1.bin").toFile();
+        CDRFormatConverter.textToBinary(writeTextFile("cdr_1.txt"), binaryFile, 1);
+
+        byte[] content = Files.readAllBytes(binaryFile.toPath());
+        Files.write(binaryFile.toPath(), Arrays.copyOf(content, content.length - 1));
+
+        assertThrows(IOException.class, () -> new BinaryCDRReader(binaryFile));
+    }
+
+    @Test
+    void generateReport_GivesSameReportsForTextAndBinaryFiles() throws IOException {
+        File textFile = writeTextFile("cdr_1.txt");
+        File binaryFile = tempDir.resolve("cdr_1.bin").toFile();
+        CDRFormatConverter.textToBinary(textFile, binaryFile, 1);
+
+        List<String> subscribers = List.of("79876543221", "79996667755");
+        Path textReports = tempDir.resolve("text_reports");
+        Path binaryReports = tempDir.resolve("binary_reports");
+
+        new GeneratorUDR(List.of(textFile), subscribers, textReports.toString()).generateReport();
+        new GeneratorUDR(List.of(binaryFile), subscribers, binaryReports.toString()).generateReport();
+
+        for (String subscriber : subscribers) {
+            String reportName = subscriber + "_1.json";
+            assertEquals(Files.readString(textReports.resolve(reportName)),
+                    Files.readString(binaryReports.resolve(reportName)));
+        }
+    }
+
+    private File writeTextFile(String name) throws IOException {
+        File textFile = tempDir.resolve(name).toFile();
+        Files.writeString(textFile.toPath(), CDR_TEXT);
+        return textFile;
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import nexign.task.services.cdr.CDRBuffer;
+import nexign.task.services.cdr.CDRLineParser;
+import nexign.task.services.cdr.RecordCDR;
+
+class CDRLineParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parseLine_ReadsFieldsAndRejectsMalformedLines() {
+        CDRLineParser parser = new CDRLineParser();
+        CDRBuffer records = new CDRBuffer(4);
+
+        assertTrue(parse(parser, "01, 79876543221, 1709798657, 1709799601", records));
+        assertTrue(parse(parser, "02, 79996667755, 1709899870, 1709905806\r", records));
+        assertFalse(parse(parser, "03, 79996667755, 1709899870, 1709905806", records));
+        assertFalse(parse(parser, "01,79996667755, 1709899870, 1709905806", records));
+        assertFalse(parse(parser, "01, 79996667755, 1709899870", records));
+        assertFalse(parse(parser, "01, 79996667755, 1709899870, 1709905806 ", records));
+        assertFalse(parse(parser, "01, 79996667755, 1709905806, 1709899870", records));
+        assertFalse(parse(parser, "", records));
+
+        assertEquals(2, records.size());
+        assertEquals(new RecordCDR("01", "79876543221", 1709798657, 1709799601), records.get(0));
+        assertEquals(new RecordCDR("02", "79996667755", 1709899870, 1709905806), records.get(1));
+        assertEquals(8, parser.getLinesCount());
+        assertEquals(6, parser.getMalformedLinesCount());
+    }
+
+    @Test
+    void parse_ChunksCoverEveryLineExactlyOnce() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<RecordCDR> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            RecordCDR record = new RecordCDR(i % 2 == 0 ? "01" : "02",
+                    Long.toString(79_000_000_000L + i * 7919L), 1709798657L + i, 1709798657L + i * 2L);
+            expected.add(record);
+            text.append(record).append('\n');
+            if (i % 100 == 0) {
+                // некорректные строки, в том числе длиннее буфера парсера
+                text.append("x".repeat(i % 200 == 0 ? 300 : 5)).append('\n');
+            }
+        }
+        // последняя строка без перевода строки
+        text.setLength(text.length() - 1);
+        Path file = Files.writeString(tempDir.resolve("cdr_1.txt"), text, StandardCharsets.US_ASCII);
+        long length = Files.size(file);
+
+        for (long chunkSize : new long[] {1, 13, 41, 1000, length}) {
+            CDRLineParser parser = new CDRLineParser(CDRBuffer.MAX_LINE_LENGTH);
+            CDRBuffer records = new CDRBuffer(16);
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (long start = 0; start < length; start += chunkSize) {
+                    parser.parse(channel, start, Math.min(length, start + chunkSize), records::add);
+                }
+            }
+
+            assertEquals(expected.size(), records.size(), "chunkSize = " + chunkSize);
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(expected.get(i), records.get(i));
+            }
+            assertEquals(5, parser.getMalformedLinesCount(), "chunkSize = " + chunkSize);
+        }
+    }
+
+    private static boolean parse(CDRLineParser parser, String line, CDRBuffer records) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return parser.parseLine(bytes, 0, bytes.length, records::add);
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.services.cdr.CDRBatchInserter;
+import nexign.task.services.cdr.RecordCDR;
+
+class CDRStorageTest {
+
+    /** 2024-03-10 00:00:00 UTC */
+    private static final long MARCH = 1710028800L;
+    /** 2024-06-01 00:00:00 UTC */
+    private static final long JUNE = 1717200000L;
+
+    @Test
+    void batchInserter_SplitsMonthsAndUpsertsDuplicates() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:cdr_storage_upsert", "sa", "")) {
+            createSubscribers(connection);
+            DatabaseInitializer.createCDRTables(connection);
+
+            try (CDRBatchInserter inserter = new CDRBatchInserter(connection, 10)) {
+                inserter.accept(new RecordCDR("01", "79000000001", MARCH, MARCH + 60));
+                inserter.accept(new RecordCDR("02", "79000000001", JUNE, JUNE + 30));
+                // тот же ключ (абонент и время начала) заменяет прежнюю запись
+                inserter.accept(new RecordCDR("01", "79000000001", MARCH, MARCH + 90));
+                inserter.flush();
+                assertEquals(3, inserter.getInsertedCount());
+                assertEquals(0, inserter.getRejectedCount());
+            }
+
+            assertEquals(1, count(connection, "CDR_03"));
+            assertEquals(1, count(connection, "CDR_06"));
+            assertEquals(2, count(connection, "CDR"));
+            assertEquals(90, queryLong(connection, "select end_time_unix - start_time_unix from CDR_03"));
+        }
+    }
+
+    @Test
+    void batchInserter_SkipsRejectedRecordsAndKeepsRestOfBatch() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:cdr_storage_rejected", "sa", "")) {
+            createSubscribers(connection);
+            DatabaseInitializer.createCDRTables(connection);
+
+            try (CDRBatchInserter inserter = new CDRBatchInserter(connection, 10)) {
+                inserter.accept(new RecordCDR("01", "79000000001", MARCH, MARCH + 60));
+                // абонента нет в таблице Subscribers
+                inserter.accept(new RecordCDR("01", "79999999999", MARCH + 100, MARCH + 160));
+                inserter.accept(new RecordCDR("02", "79000000002", MARCH + 200, MARCH + 230));
+                inserter.flush();
+                assertEquals(2, inserter.getInsertedCount());
+                assertEquals(1, inserter.getRejectedCount());
+            }
+            assertEquals(2, count(connection, "CDR_03"));
+        }
+    }
+
+    @Test
+    void truncateCDRMonth_KeepsOtherMonthsAndReplacesLegacyTable() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:cdr_storage_truncate", "sa", "")) {
+            createSubscribers(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("create table CDR (call_type VARCHAR(2), msisdn VARCHAR(11), " +
+                        "start_time_unix BIGINT, end_time_unix BIGINT)");
+            }
+            DatabaseInitializer.createCDRTables(connection);
+
+            try (CDRBatchInserter inserter = new CDRBatchInserter(connection, 10)) {
+                inserter.accept(new RecordCDR("01", "79000000001", MARCH, MARCH + 60));
+                inserter.accept(new RecordCDR("02", "79000000002", JUNE, JUNE + 30));
+            }
+
+            DatabaseInitializer.truncateCDRMonth(connection, 3);
+            assertEquals(0, count(connection, "CDR_03"));
+            assertEquals(1, count(connection, "CDR"));
+
+            // повторное создание таблиц не удаляет записи
+            DatabaseInitializer.createCDRTables(connection);
+            assertEquals(1, count(connection, "CDR_06"));
+        }
+    }
+
+    private static void createSubscribers(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create table Subscribers (msisdn VARCHAR(11) PRIMARY KEY)");
+            statement.executeUpdate("insert into Subscribers values ('79000000001'), ('79000000002')");
+        }
+    }
+
+    private static long count(Connection connection, String table) throws SQLException {
+        return queryLong(connection, "select count(*) from " + table);
+    }
+
+    private static long queryLong(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+
+import nexign.task.services.cdr.CallScheduler;
+
+class CallSchedulerTest {
+
+    @Test
+    void next_ExactCountWithoutOverlapsAtHighDensity() {
+        long start = 1_700_000_000L;
+        long range = 86_400;
+        int subscribersCount = 3;
+        // в среднем 20000 звонков на абонента в сутки - длительности ограничиваются, чтобы звонки поместились
+        CallScheduler schedule = new CallScheduler(start, range, 60_000, 3600, subscribersCount, new SplittableRandom(11));
+
+        long[] lastEndTimes = new long[subscribersCount];
+        long previousStart = Long.MIN_VALUE;
+        int count = 0;
+        while (schedule.hasNext()) {
+            int subscriber = schedule.next();
+            assertTrue(schedule.getStartTime() >= previousStart);
+            assertTrue(schedule.getStartTime() >= lastEndTimes[subscriber]);
+            assertTrue(schedule.getEndTime() > schedule.getStartTime());
+            assertTrue(schedule.getEndTime() <= start + range);
+            previousStart = schedule.getStartTime();
+            lastEndTimes[subscriber] = schedule.getEndTime();
+            count++;
+        }
+        assertEquals(60_000, count);
+    }
+}
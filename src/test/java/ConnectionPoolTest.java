@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import nexign.task.database.ConnectionPool;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool("jdbc:h2:mem:pool_test;DB_CLOSE_DELAY=-1", "sa", "",
+                2, 60_000, 200, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void getConnection_ReusesReturnedConnection() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        assertTrue(first.isClosed());
+
+        Connection second = pool.getConnection();
+        assertFalse(second.isClosed());
+        second.close();
+
+        ConnectionPool.Statistics statistics = pool.getStatistics();
+        assertEquals(1, statistics.createdCount());
+        assertEquals(2, statistics.borrowCount());
+        assertEquals(0, statistics.activeCount());
+        assertEquals(1, statistics.idleCount());
+    }
+
+    @Test
+    void getConnection_ThrowsWhenPoolExhausted() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        assertEquals(1.0, pool.getStatistics().utilization());
+        assertThrows(SQLException.class, () -> pool.getConnection());
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void release_RollsBackAndRestoresAutoCommit() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    void closedConnection_CannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    void getConnection_GivesSeparateConnectionsToParallelWorkers() throws Exception {
+        pool.close();
+        pool = new ConnectionPool("jdbc:h2:mem:pool_test;DB_CLOSE_DELAY=-1", "sa", "",
+                2, 60_000, 10_000, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(() -> {
+                try (Connection connection = pool.getConnection()) {
+                    return connection.createStatement().executeQuery("select 1").next() ? 1 : 0;
+                }
+            }));
+        }
+        int succeeded = 0;
+        for (Future<Integer> result : results) {
+            succeeded += result.get();
+        }
+        executor.shutdown();
+
+        assertEquals(20, succeeded);
+        assertTrue(pool.getStatistics().peakActiveCount() <= 2);
+        assertTrue(pool.getStatistics().createdCount() <= 2);
+    }
+}
@@ -1,26 +1,40 @@
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.mockito.Mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
+import nexign.task.database.ConnectionPool;
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.services.cdr.CDRInsertMode;
 import nexign.task.services.cdr.GeneratorCDR;
 import nexign.task.services.cdr.RecordCDR;
 
 @ExtendWith(MockitoExtension.class)
 public class GeneratorCDRTest {
 
+    /** директория CDR файлов, чтобы тесты не записывали файлы в рабочую директорию cdr_files */
+    @TempDir
+    Path tempDir;
+
     @Test
     public void generateMonthCDR_CreatesFile() throws Exception {
         GeneratorCDR generator = new GeneratorCDR();
+        generator.setCDRDirectory(tempDir.toFile());
         Connection mockConnection = mock(Connection.class);
 
         PreparedStatement mockStatement = mock(PreparedStatement.class);
@@ -49,4 +63,86 @@ public class GeneratorCDRTest {
 
         verify(mockStatement, times(1)).executeUpdate();
     }
+
+    @Test
+    public void loadCDRFileIntoDatabase_insertsInBatches() throws Exception {
+        GeneratorCDR generator = new GeneratorCDR(CDRInsertMode.FILE, 2);
+
+        File cdrFile = File.createTempFile("cdr", ".txt");
+        cdrFile.deleteOnExit();
+        Files.writeString(cdrFile.toPath(),
+                "01, 79123456789, 1717245455, 1717248904\n" +
+                "02, 79123456789, 1717249000, 1717249100\n" +
+                "01, 79123456780, 1717250000, 1717250060\n");
+
+        Connection mockConnection = mock(Connection.class);
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        when(mockConnection.getAutoCommit()).thenReturn(true);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStatement);
+
+        long loaded = generator.loadCDRFileIntoDatabase(cdrFile, mockConnection);
+
+        assertEquals(3, loaded);
+        assertEquals(3, generator.getInsertedRecordsCount());
+        verify(mockStatement, times(3)).addBatch();
+        verify(mockStatement, times(2)).executeBatch();
+        verify(mockConnection, times(2)).commit();
+        verify(mockConnection).setAutoCommit(true);
+        verify(mockConnection, times(1)).prepareStatement(anyString());
+    }
+
+    @Test
+    public void generateCDRs_SameSeedGivesSameFilesForAnyParallelism() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:cdr_parallel_test;DB_CLOSE_DELAY=-1", "sa", "",
+                6, 60_000, 10_000, 1)) {
+            try (Connection connection = pool.getConnection()) {
+                DatabaseInitializer.initializeSubscribers(connection, 10);
+                DatabaseInitializer.createCDRTable(connection);
+            }
+
+            GeneratorCDR generator = new GeneratorCDR(CDRInsertMode.BATCH, 100);
+            generator.setCDRDirectory(tempDir.toFile());
+            List<File> sequentialFiles = generator.generateCDRs(pool, 2024, 42L, 1);
+            List<String> sequentialContents = new ArrayList<>();
+            for (File file : sequentialFiles) {
+                sequentialContents.add(Files.readString(file.toPath()));
+            }
+
+            try (Connection connection = pool.getConnection()) {
+                DatabaseInitializer.createCDRTable(connection);
+            }
+            List<File> parallelFiles = generator.generateCDRs(pool, 2024, 42L, 4);
+
+            assertEquals(12, parallelFiles.size());
+            for (int i = 0; i < parallelFiles.size(); i++) {
+                assertEquals("cdr_" + (i + 1) + ".txt", parallelFiles.get(i).getName());
+                assertEquals(sequentialContents.get(i), Files.readString(parallelFiles.get(i).toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void generateMonthCDR_WritesChronologicalRecordsWithoutOverlaps() throws Exception {
+        GeneratorCDR generator = new GeneratorCDR(CDRInsertMode.FILE, 100);
+        generator.setCDRDirectory(tempDir.toFile());
+        Connection mockConnection = mock(Connection.class);
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStatement);
+
+        Method privateMethod = GeneratorCDR.class.getDeclaredMethod("generateMonthCDR", int.class, int.class, int.class, int.class, List.class, List.class, Random.class, Connection.class);
+        privateMethod.setAccessible(true);
+        File file = (File) privateMethod.invoke(generator, 2, 2024, 5000, 3600, List.of("79123456789", "79123456780"), List.of("01", "02"), new Random(7), mockConnection);
+
+        long previousStart = Long.MIN_VALUE;
+        Map<String, Long> lastEndTimes = new HashMap<>();
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(5000, lines.size());
+        for (String line : lines) {
+            RecordCDR record = RecordCDR.fromString(line);
+            assertTrue(record.startTimeUnix() >= previousStart);
+            assertTrue(record.startTimeUnix() >= lastEndTimes.getOrDefault(record.phoneNumber(), Long.MIN_VALUE));
+            previousStart = record.startTimeUnix();
+            lastEndTimes.put(record.phoneNumber(), record.endTimeUnix());
+        }
+    }
 }
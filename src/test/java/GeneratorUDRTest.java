@@ -1,8 +1,11 @@
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 import java.io.*;
@@ -10,18 +13,30 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.services.cdr.CDRInsertMode;
+import nexign.task.services.cdr.GeneratorCDR;
 import nexign.task.services.udr.GeneratorUDR;
 import nexign.task.services.udr.RecordUDR;
+import nexign.task.services.udr.SQLUDRAggregator;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.utilities.UtilFunctions;
 
 public class GeneratorUDRTest {
 
     private static String testCdrDir;
     private static String testUdrDir;
 
+    /** директория CDR файлов, сгенерированных в тестах */
+    @TempDir
+    Path tempDir;
+
     @BeforeAll
     public static void setUp() throws IOException {
         testCdrDir = "test_cdr_files";
@@ -72,7 +87,7 @@ public class GeneratorUDRTest {
             testRecordUDRs.add(new RecordUDR("79123456789"));
         }
 
-        Method privateMethod = GeneratorUDR.class.getDeclaredMethod("printReport", String.class, List.class);
+        Method privateMethod = GeneratorUDR.class.getDeclaredMethod("printReport", String.class, List.class, Integer.class);
         privateMethod.setAccessible(true);
 
         File outputFile = File.createTempFile("output", ".txt");
@@ -82,7 +97,7 @@ public class GeneratorUDRTest {
         PrintStream printStream = new PrintStream(fileOutputStream);
         System.setOut(printStream);
 
-        privateMethod.invoke(generatorUDR, "79123456789", testRecordUDRs);
+        privateMethod.invoke(generatorUDR, "79123456789", testRecordUDRs, null);
 
         System.setOut(originalOut);
 
@@ -123,6 +138,87 @@ public class GeneratorUDRTest {
 
     }
 
+    @Test
+    public void generateReport_ParallelChunksGiveSameReports() throws IOException {
+        List<File> cdrFiles = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            cdrFiles.add(new File(testCdrDir, "cdr_" + i + ".txt"));
+        }
+        List<String> subscribers = List.of("79876543221", "79996667755", "79000000000");
+
+        String serialDir = testUdrDir + "_serial";
+        String parallelDir = testUdrDir + "_parallel";
+        new GeneratorUDR(cdrFiles, subscribers, serialDir, 1, Long.MAX_VALUE).generateReport();
+        // размер части меньше строки, поэтому каждая строка попадает на границу частей
+        new GeneratorUDR(cdrFiles, subscribers, parallelDir, 4, 7).generateReport();
+
+        assertSameReports(serialDir, parallelDir, 12 * subscribers.size());
+    }
+
+    @Test
+    public void generateReport_SQLAggregatorGivesSameReportsAsFiles() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:udr_sql_test", "sa", "")) {
+            DatabaseInitializer.initializeSubscribers(connection, 5);
+            DatabaseInitializer.createCDRTable(connection);
+            GeneratorCDR generatorCDR = new GeneratorCDR(CDRInsertMode.BATCH, 100);
+            generatorCDR.setCDRDirectory(tempDir.toFile());
+            List<File> cdrFiles = generatorCDR.generateCDRs(connection, 2024, 11L);
+            List<String> subscribers = UtilFunctions.getAllSubscribers(connection);
+
+            String fileDir = testUdrDir + "_file";
+            String sqlDir = testUdrDir + "_sql";
+            GeneratorUDR fileGenerator = new GeneratorUDR(cdrFiles, subscribers, fileDir, 2, Long.MAX_VALUE);
+            GeneratorUDR sqlGenerator = new GeneratorUDR(cdrFiles, subscribers, sqlDir, 2, Long.MAX_VALUE);
+            sqlGenerator.setSQLAggregator(new SQLUDRAggregator(connection, 2024));
+
+            fileGenerator.generateReport();
+            sqlGenerator.generateReport();
+            assertSameReports(fileDir, sqlDir, 12 * subscribers.size());
+
+            fileGenerator.generateReport(subscribers.get(0), 3);
+            sqlGenerator.generateReport(subscribers.get(0), 3);
+            assertSameReports(fileDir, sqlDir, 1);
+        }
+    }
+
+    @Test
+    public void generateReport_NdjsonLayoutWritesOneLinePerSubscriber() throws IOException {
+        List<File> cdrFiles = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            cdrFiles.add(new File(testCdrDir, "cdr_" + i + ".txt"));
+        }
+        List<String> subscribers = List.of("79876543221", "79996667755", "79000000000");
+
+        String filesDir = testUdrDir + "_file";
+        String ndjsonDir = testUdrDir + "_ndjson";
+        new GeneratorUDR(cdrFiles, subscribers, filesDir, 2, Long.MAX_VALUE, UDRReportLayout.PER_SUBSCRIBER).generateReport();
+        new GeneratorUDR(cdrFiles, subscribers, ndjsonDir, 2, Long.MAX_VALUE, UDRReportLayout.NDJSON).generateReport();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        File[] ndjsonFiles = new File(ndjsonDir).listFiles();
+        assertNotNull(ndjsonFiles);
+        assertEquals(12, ndjsonFiles.length);
+        for (int month = 1; month <= 12; month++) {
+            List<String> lines = Files.readAllLines(Path.of(ndjsonDir, "udr_" + month + ".ndjson"));
+            assertEquals(subscribers.size(), lines.size());
+            for (String line : lines) {
+                JsonNode udr = objectMapper.readTree(line);
+                File subscriberFile = new File(filesDir, udr.get("msisdn").asText() + "_" + month + ".json");
+                assertEquals(objectMapper.readTree(subscriberFile), udr);
+            }
+        }
+    }
+
+    private static void assertSameReports(String expectedDir, String actualDir, int expectedCount) throws IOException {
+        File[] expectedFiles = new File(expectedDir).listFiles();
+        assertNotNull(expectedFiles);
+        assertEquals(expectedCount, expectedFiles.length);
+        for (File expectedFile : expectedFiles) {
+            File actualFile = new File(actualDir, expectedFile.getName());
+            assertEquals(Files.readString(expectedFile.toPath()), Files.readString(actualFile.toPath()));
+        }
+    }
+
     private List<File> getFilesFromDirectory(String directoryPath) {
         List<File> files = new ArrayList<>();
         File directory = new File(directoryPath);
@@ -143,6 +239,11 @@ public class GeneratorUDRTest {
     public static void clearUp() throws IOException {
         deleteDirectory(new File(testCdrDir));
         deleteDirectory(new File(testUdrDir));
+        deleteDirectory(new File(testUdrDir + "_serial"));
+        deleteDirectory(new File(testUdrDir + "_parallel"));
+        deleteDirectory(new File(testUdrDir + "_file"));
+        deleteDirectory(new File(testUdrDir + "_sql"));
+        deleteDirectory(new File(testUdrDir + "_ndjson"));
     }
 
     private static void deleteDirectory(File directory) {
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import nexign.task.services.udr.GeneratorUDR;
+import nexign.task.services.udr.IncrementalUDRUpdater;
+import nexign.task.services.udr.UDRAggregateStore;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.services.udr.UDRReportWriter;
+import nexign.task.utilities.SubscriberRegistry;
+
+class IncrementalUDRUpdaterTest {
+
+    private static final SubscriberRegistry SUBSCRIBERS =
+            SubscriberRegistry.of(List.of("79000000001", "79000000002", "79000000003"));
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void update_ProcessesOnlyChangedFilesAndMatchesFullReport() throws Exception {
+        Path cdr1 = Files.writeString(tempDir.resolve("cdr_1.txt"),
+                "01, 79000000001, 1704067300, 1704067400\n" +
+                "02, 79000000002, 1704067500, 1704067560\n");
+        Path cdr2 = Files.writeString(tempDir.resolve("cdr_2.txt"),
+                "02, 79000000001, 1706745700, 1706745730\n");
+        List<File> cdrFiles = List.of(cdr1.toFile(), cdr2.toFile());
+        File reports = tempDir.resolve("reports").toFile();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:udr_incremental_test", "sa", "")) {
+            UDRReportWriter reportWriter = new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER);
+            IncrementalUDRUpdater updater = new IncrementalUDRUpdater(new UDRAggregateStore(connection),
+                    cdrFiles, SUBSCRIBERS, reports, reportWriter);
+
+            IncrementalUDRUpdater.UpdateResult first = updater.update();
+            assertEquals(2, first.recomputedMonths());
+            assertEquals(6, first.rewrittenReports());
+            assertSameAsFullReport(cdrFiles, reports);
+
+            IncrementalUDRUpdater.UpdateResult unchanged = updater.update();
+            assertEquals(2, unchanged.unchangedMonths());
+            assertEquals(0, unchanged.processedBytes());
+
+            // дописываем звонки в февраль, последняя строка еще не завершена
+            Files.writeString(cdr2, "01, 79000000003, 1706745800, 1706745900\n" +
+                    "01, 79000000001, 1706746000, 1706746090\n" +
+                    "01, 7900", StandardOpenOption.APPEND);
+            IncrementalUDRUpdater.UpdateResult appended = updater.update();
+            assertEquals(1, appended.unchangedMonths());
+            assertEquals(1, appended.appendedMonths());
+            assertEquals(2, appended.rewrittenReports());
+            assertSameAsFullReport(cdrFiles, reports);
+
+            // завершаем строку - учитывается только она
+            Files.writeString(cdr2, "00001, 1706747000, 1706747005\n", StandardOpenOption.APPEND);
+            IncrementalUDRUpdater.UpdateResult completed = updater.update();
+            assertEquals(1, completed.appendedMonths());
+            assertEquals(1, completed.rewrittenReports());
+            assertSameAsFullReport(cdrFiles, reports);
+
+            // файл января заменен - месяц пересчитывается полностью
+            Files.writeString(cdr1, "02, 79000000003, 1704067300, 1704067310\n");
+            IncrementalUDRUpdater.UpdateResult replaced = updater.update();
+            assertEquals(1, replaced.recomputedMonths());
+            assertSameAsFullReport(cdrFiles, reports);
+        }
+    }
+
+    private void assertSameAsFullReport(List<File> cdrFiles, File reports) throws IOException {
+        File fullReports = tempDir.resolve("full_reports").toFile();
+        new GeneratorUDR(cdrFiles, SUBSCRIBERS, fullReports.getPath(), 1, Long.MAX_VALUE,
+                UDRReportLayout.PER_SUBSCRIBER).generateReport();
+
+        File[] expectedFiles = fullReports.listFiles();
+        assertNotNull(expectedFiles);
+        assertEquals(expectedFiles.length, reports.listFiles().length);
+        for (File expected : expectedFiles) {
+            assertEquals(Files.readString(expected.toPath()), Files.readString(new File(reports, expected.getName()).toPath()),
+                    expected.getName());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import nexign.task.services.udr.RecordUDR;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.services.udr.UDRReportWriter;
+
+class JFREventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeMonth_RecordsReportFlushEvent() throws Exception {
+        Path recordingFile = tempDir.resolve("udr.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("nexign.task.UDRReportFlush").withThreshold(Duration.ZERO);
+            recording.start();
+
+            RecordUDR udr = new RecordUDR("79000000001");
+            udr.getIncomingCall().addSeconds(90);
+            new UDRReportWriter(UDRReportLayout.PER_SUBSCRIBER).writeMonth(tempDir.toFile(), 4, List.of(udr));
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(4, event.getInt("month"));
+        assertEquals("per_subscriber", event.getString("layout"));
+        assertEquals("79000000001", event.getString("msisdn"));
+        assertEquals(1, event.getLong("filesCount"));
+        assertEquals(tempDir.resolve("79000000001_4.json").toFile().length(), event.getLong("bytesCount"));
+    }
+}
@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import nexign.task.utilities.LatencyHistogram;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentile_WithinOneSixteenthOfExactValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.count());
+        assertEquals(100_000_000, snapshot.max());
+        assertEquals(50_000_500.0, snapshot.mean(), 1e-6);
+        assertEquals(50_000_000, snapshot.p50(), 50_000_000 / 16.0);
+        assertEquals(99_000_000, snapshot.p99(), 99_000_000 / 16.0);
+        assertTrue(snapshot.p50() >= 50_000_000 && snapshot.p99() >= 99_000_000);
+        assertEquals(snapshot.max(), histogram.percentile(100));
+    }
+
+    @Test
+    void record_AcceptsLargestValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 62);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().max());
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        long p50 = histogram.percentile(50);
+        assertTrue(p50 >= 1L << 62 && p50 - (1L << 62) <= (1L << 62) / 16, Long.toString(p50));
+    }
+}
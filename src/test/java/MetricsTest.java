@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import nexign.task.metrics.Counter;
+import nexign.task.metrics.Gauge;
+import nexign.task.metrics.Metrics;
+import nexign.task.utilities.LatencyHistogram;
+
+class MetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void export_JsonAndPrometheusSnapshots() throws Exception {
+        Counter counter = Metrics.counter("test_records_total", "Тестовый счетчик");
+        assertSame(counter, Metrics.counter("test_records_total", "Тестовый счетчик"));
+        assertThrows(IllegalArgumentException.class, () -> Metrics.gauge("test_records_total", "Другой тип"));
+
+        counter.add(5);
+        counter.increment();
+        Gauge gauge = Metrics.gauge("test_queue_depth", "Тестовое значение");
+        gauge.setSupplier(() -> 7);
+        LatencyHistogram timer = Metrics.timer("test_stage_seconds", "Тестовый таймер");
+        timer.record(2_000_000_000L);
+
+        String prometheus = Metrics.toPrometheus();
+        assertTrue(prometheus.contains("# TYPE test_records_total counter\ntest_records_total 6\n"));
+        assertTrue(prometheus.contains("test_queue_depth 7\n"));
+        assertTrue(prometheus.contains("test_stage_seconds{quantile=\"0.5\"} 2.000000000\n"));
+        assertTrue(prometheus.contains("test_stage_seconds_count 1\n"));
+
+        Path jsonFile = tempDir.resolve("metrics.json");
+        Metrics.writeTo(jsonFile.toFile());
+        JsonNode json = new ObjectMapper().readTree(jsonFile.toFile());
+        assertEquals(6, json.get("test_records_total").asLong());
+        assertEquals(2_000_000_000L, json.get("test_stage_seconds").get("max").asLong());
+
+        Path promFile = tempDir.resolve("metrics.prom");
+        Metrics.writeTo(promFile.toFile());
+        assertTrue(Files.readString(promFile).contains("test_records_total 6"));
+
+        Metrics.reset();
+        assertEquals(0, counter.get());
+        assertEquals(0, timer.getCount());
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import nexign.task.utilities.MsisdnBitmap;
+import nexign.task.utilities.UtilFunctions;
+
+class MsisdnBitmapTest {
+
+    @Test
+    void add_DetectsDuplicates() {
+        MsisdnBitmap bitmap = new MsisdnBitmap();
+
+        assertTrue(bitmap.add(79123456789L));
+        assertFalse(bitmap.add(79123456789L));
+        assertTrue(bitmap.contains(79123456789L));
+        assertFalse(bitmap.contains(79123456788L));
+        assertEquals(1, bitmap.size());
+    }
+
+    @Test
+    void add_RejectsNumbersOutOfRange() {
+        MsisdnBitmap bitmap = new MsisdnBitmap();
+
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(71123456789L));
+        assertFalse(bitmap.contains(123456789L));
+    }
+
+    @Test
+    void toSortedArray_ReturnsAllNumbersInOrder() {
+        MsisdnBitmap bitmap = new MsisdnBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        SplittableRandom random = new SplittableRandom(1);
+
+        bitmap.add(MsisdnBitmap.MIN_MSISDN);
+        bitmap.add(MsisdnBitmap.MAX_MSISDN);
+        expected.add(MsisdnBitmap.MIN_MSISDN);
+        expected.add(MsisdnBitmap.MAX_MSISDN);
+        for (int i = 0; i < 10_000; i++) {
+            long msisdn = UtilFunctions.generateMsisdn(random);
+            assertTrue(UtilFunctions.isValidMobilePhoneNumber(Long.toString(msisdn)));
+            bitmap.add(msisdn);
+            expected.add(msisdn);
+        }
+
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), bitmap.toSortedArray());
+    }
+}
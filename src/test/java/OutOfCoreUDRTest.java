@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import nexign.task.database.DatabaseInitializer;
+import nexign.task.services.cdr.CDRInsertMode;
+import nexign.task.services.cdr.GeneratorCDR;
+import nexign.task.services.udr.GeneratorUDR;
+import nexign.task.services.udr.UDRReportLayout;
+import nexign.task.utilities.UtilFunctions;
+
+class OutOfCoreUDRTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void generateReport_SpillsToDiskAndGivesSameReports() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:udr_out_of_core_test", "sa", "")) {
+            DatabaseInitializer.initializeSubscribers(connection, 300, 300);
+            DatabaseInitializer.createCDRTables(connection);
+            GeneratorCDR generatorCDR = new GeneratorCDR(CDRInsertMode.BATCH, 1000);
+            generatorCDR.setCDRDirectory(tempDir.resolve("cdr").toFile());
+            generatorCDR.setCallsPerMonth(2000);
+            List<File> cdrFiles = generatorCDR.generateCDRs(connection, 2024, 5L);
+
+            // часть номеров из CDR файлов отсутствует в списке абонентов: их отчеты тоже должны совпасть
+            List<String> subscribers = UtilFunctions.getAllSubscribers(connection).subList(10, 300);
+
+            for (UDRReportLayout layout : UDRReportLayout.values()) {
+                Path memoryReports = tempDir.resolve(layout + "_memory");
+                Path spilledReports = tempDir.resolve(layout + "_spilled");
+                File spillDirectory = tempDir.resolve(layout + "_spill").toFile();
+
+                new GeneratorUDR(cdrFiles, subscribers, memoryReports.toString(), 2, Long.MAX_VALUE, layout)
+                        .generateReport();
+
+                GeneratorUDR spillingGenerator =
+                        new GeneratorUDR(cdrFiles, subscribers, spilledReports.toString(), 2, Long.MAX_VALUE, layout);
+                // бюджета хватает на несколько десятков агрегатов, поэтому нужны выгрузки и несколько проходов слияния
+                spillingGenerator.setMemoryBudget(4096, spillDirectory);
+                spillingGenerator.generateReport();
+
+                assertTrue(spillingGenerator.getLastSpilledRunsCount() > 2);
+                assertSameReports(memoryReports, spilledReports);
+                String[] leftFiles = spillDirectory.list();
+                assertNotNull(leftFiles);
+                assertEquals(0, leftFiles.length);
+            }
+        }
+    }
+
+    @Test
+    void generateReport_KeepsAggregatesInMemoryWithinBudget() throws IOException {
+        File cdrFile = tempDir.resolve("cdr_1.txt").toFile();
+        Files.writeString(cdrFile.toPath(),
+                "01, 79876543221, 1709798657, 1709799601\n" +
+                "02, 79996667755, 1709899870, 1709905806\n" +
+                "02, 79876543221, 1709900000, 1709900100\n");
+        List<String> subscribers = List.of("79876543221", "79996667755", "79000000000");
+
+        Path memoryReports = tempDir.resolve("memory");
+        Path budgetReports = tempDir.resolve("budget");
+        new GeneratorUDR(List.of(cdrFile), subscribers, memoryReports.toString()).generateReport();
+        GeneratorUDR budgetGenerator = new GeneratorUDR(List.of(cdrFile), subscribers, budgetReports.toString());
+        budgetGenerator.setMemoryBudget(1024 * 1024, tempDir.resolve("spill").toFile());
+        budgetGenerator.generateReport();
+
+        assertEquals(0, budgetGenerator.getLastSpilledRunsCount());
+        assertSameReports(memoryReports, budgetReports);
+    }
+
+    private static void assertSameReports(Path expectedDir, Path actualDir) throws IOException {
+        File[] expectedFiles = expectedDir.toFile().listFiles();
+        File[] actualFiles = actualDir.toFile().listFiles();
+        assertNotNull(expectedFiles);
+        assertNotNull(actualFiles);
+        assertEquals(expectedFiles.length, actualFiles.length);
+        for (File expectedFile : expectedFiles) {
+            File actualFile = actualDir.resolve(expectedFile.getName()).toFile();
+            assertEquals(Files.readString(expectedFile.toPath()), Files.readString(actualFile.toPath()),
+                    expectedFile.getName());
+        }
+    }
+}
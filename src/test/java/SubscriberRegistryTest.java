@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import nexign.task.utilities.SubscriberRegistry;
+
+class SubscriberRegistryTest {
+
+    @Test
+    void of_SortsNumbersAndRemovesDuplicates() {
+        SubscriberRegistry registry = SubscriberRegistry.of(new long[] {79996667755L, 79000000000L, 79996667755L});
+
+        assertEquals(2, registry.size());
+        assertEquals(79000000000L, registry.msisdn(0));
+        assertEquals("79996667755", registry.phoneNumber(1));
+    }
+
+    @Test
+    void idOf_ReturnsDenseIdentifiers() {
+        SubscriberRegistry registry = SubscriberRegistry.of(List.of("79876543221", "79996667755", "79000000000"));
+
+        assertEquals(0, registry.idOf(79000000000L));
+        assertEquals(1, registry.idOf("79876543221"));
+        assertEquals(2, registry.idOf("79996667755"));
+    }
+
+    @Test
+    void idOf_ReturnsMinusOneForUnknownOrInvalidNumbers() {
+        SubscriberRegistry registry = SubscriberRegistry.of(List.of("79876543221"));
+
+        assertEquals(-1, registry.idOf(79876543222L));
+        assertEquals(-1, registry.idOf("7987654322a"));
+        assertEquals(-1, registry.idOf("079876543221"));
+        assertEquals(-1, registry.idOf(""));
+        assertEquals(-1, registry.idOf((String) null));
+        assertFalse(registry.contains("79876543222"));
+        assertTrue(registry.contains("79876543221"));
+    }
+
+    @Test
+    void asList_ReturnsNumbersInIdentifierOrder() {
+        SubscriberRegistry registry = SubscriberRegistry.of(List.of("79996667755", "79876543221"));
+        List<String> phoneNumbers = registry.asList();
+
+        assertEquals(List.of("79876543221", "79996667755"), phoneNumbers);
+        assertTrue(phoneNumbers.contains("79996667755"));
+        assertEquals(1, phoneNumbers.indexOf("79996667755"));
+        assertEquals(-1, phoneNumbers.indexOf("79000000000"));
+        assertThrows(UnsupportedOperationException.class, () -> phoneNumbers.add("79000000000"));
+    }
+}
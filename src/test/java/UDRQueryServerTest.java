@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import nexign.task.services.udr.RecordUDR;
+import nexign.task.services.udr.UDRQueryServer;
+
+class UDRQueryServerTest {
+
+    @Test
+    void report_AnswersFromMemoryAndCountsLatency() throws Exception {
+        List<TreeMap<String, RecordUDR>> udrMaps = new ArrayList<>();
+        for (int month = 1; month <= 3; month++) {
+            TreeMap<String, RecordUDR> udrMap = new TreeMap<>();
+            RecordUDR udr = new RecordUDR("79000000001");
+            udr.getOutgoingCall().addSeconds(month * 60L);
+            udrMap.put(udr.getMsisdn(), udr);
+            udrMaps.add(udrMap);
+        }
+
+        try (UDRQueryServer server = new UDRQueryServer(udrMaps, 0, 4)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort();
+
+            HttpResponse<String> month = get(client, base + "/report?msisdn=79000000001&month=2");
+            assertEquals(200, month.statusCode());
+            assertTrue(month.body().contains("\"totalTime\":\"00:02:00\""));
+
+            HttpResponse<String> year = get(client, base + "/report?msisdn=79000000001");
+            assertEquals(200, year.statusCode());
+            assertTrue(year.body().contains("\"3\":"));
+            assertTrue(year.body().contains("00:03:00"));
+
+            assertEquals(400, get(client, base + "/report?msisdn=123").statusCode());
+            assertEquals(400, get(client, base + "/report?msisdn=79000000001&month=13").statusCode());
+            assertEquals(404, get(client, base + "/report?msisdn=79000000002").statusCode());
+            assertEquals(404, get(client, base + "/report?msisdn=79000000001&month=4").statusCode());
+
+            HttpResponse<String> stats = get(client, base + "/stats");
+            assertEquals(200, stats.statusCode());
+            assertTrue(stats.body().contains("\"count\":6"));
+            assertEquals(6, server.getLatencySnapshot().count());
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -13,6 +13,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
+import nexign.task.utilities.SubscriberRegistry;
 import nexign.task.utilities.UtilFunctions;
 
 class UtilFunctionsTest {
@@ -103,4 +104,16 @@ class UtilFunctionsTest {
 
         assertEquals(expectedSubscribers, actualSubscribers);
     }
+
+    @Test
+    void getSubscriberRegistry_SkipsInvalidNumbersAndLoadsTheRest() throws SQLException {
+        when(mockResultSet.next()).thenReturn(true, true, true, true, false);
+        when(mockResultSet.getString("MSISDN")).thenReturn("79000000000", "7912345678a", "079123456789", "79996667755");
+
+        SubscriberRegistry registry = UtilFunctions.getSubscriberRegistry(mockConnection);
+
+        assertEquals(2, registry.size());
+        assertTrue(registry.contains("79000000000"));
+        assertTrue(registry.contains("79996667755"));
+    }
 }